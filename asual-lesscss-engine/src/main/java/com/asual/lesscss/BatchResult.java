@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The outcome of a batch compilation. A failed file does not abort the batch,
+ * every input ends up either in {@link #getResults()} or in
+ * {@link #getFailures()}.
+ */
+public class BatchResult {
+
+	private final Map<Path, CompileResult> results = new LinkedHashMap<Path, CompileResult>();
+	private final Map<Path, LessException> failures = new LinkedHashMap<Path, LessException>();
+	private long elapsedTime;
+
+	BatchResult() {
+	}
+
+	synchronized void success(Path input, CompileResult result) {
+		results.put(input, result);
+	}
+
+	synchronized void failure(Path input, LessException e) {
+		failures.put(input, e);
+	}
+
+	void setElapsedTime(long elapsedTime) {
+		this.elapsedTime = elapsedTime;
+	}
+
+	/**
+	 * Returns the results of the successfully compiled files, keyed by input.
+	 */
+	public synchronized Map<Path, CompileResult> getResults() {
+		return Collections.unmodifiableMap(results);
+	}
+
+	/**
+	 * Returns the errors of the files that failed to compile, keyed by input.
+	 */
+	public synchronized Map<Path, LessException> getFailures() {
+		return Collections.unmodifiableMap(failures);
+	}
+
+	public synchronized boolean isSuccessful() {
+		return failures.isEmpty();
+	}
+
+	/**
+	 * Returns the time spent in the given phase summed over all successfully
+	 * compiled files, in nanoseconds.
+	 */
+	public synchronized long getTime(CompileResult.Phase phase) {
+		long time = 0;
+		for (CompileResult result : results.values()) {
+			time += result.getTime(phase);
+		}
+		return time;
+	}
+
+	/**
+	 * Returns the time spent in all phases summed over all successfully
+	 * compiled files, in nanoseconds.
+	 */
+	public synchronized long getTotalTime() {
+		long time = 0;
+		for (CompileResult result : results.values()) {
+			time += result.getTotalTime();
+		}
+		return time;
+	}
+
+	/**
+	 * Returns the wall-clock time of the whole batch, in nanoseconds.
+	 */
+	public long getElapsedTime() {
+		return elapsedTime;
+	}
+
+	/**
+	 * Returns the number of files served from the {@link OutputCache}.
+	 */
+	public synchronized int getCachedCount() {
+		int count = 0;
+		for (CompileResult result : results.values()) {
+			if (result.isCached()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+}
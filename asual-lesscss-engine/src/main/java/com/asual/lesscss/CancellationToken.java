@@ -0,0 +1,101 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aborts a compilation when it is cancelled or when its deadline passes.
+ *
+ * A token is passed to one of the {@code compileWithResult} methods of
+ * {@link LessEngine} and may be cancelled from any thread. The running
+ * compilation checks the token every few thousand script instructions and
+ * before every import, and fails with a {@link LessCancelledException}. The
+ * engine stays usable afterwards.
+ *
+ * <pre>
+ * CancellationToken token = new CancellationToken().cancelAfter(5, TimeUnit.SECONDS);
+ * engine.compileWithResult(file, false, token);
+ * </pre>
+ */
+public class CancellationToken {
+
+	private volatile boolean cancelled;
+	private volatile long deadline;
+	private volatile boolean hasDeadline;
+
+	/**
+	 * Cancels the compilation using this token.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Sets a deadline the given time from now.
+	 *
+	 * @return this token.
+	 */
+	public CancellationToken cancelAfter(long timeout, TimeUnit unit) {
+		deadline = System.nanoTime() + unit.toNanos(timeout);
+		hasDeadline = true;
+		return this;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns {@code true} if the deadline of the token has passed.
+	 */
+	public boolean isExpired() {
+		return hasDeadline && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * Aborts the running compilation if the token is cancelled or expired.
+	 */
+	void check() {
+		if (cancelled) {
+			throw new Cancellation(false);
+		}
+		if (isExpired()) {
+			throw new Cancellation(true);
+		}
+	}
+
+	/**
+	 * Unwinds the script stack. It is an {@link Error}, so that neither
+	 * Rhino nor script code catches it.
+	 */
+	static class Cancellation extends Error {
+
+		private static final long serialVersionUID = 1L;
+
+		private final boolean timedOut;
+
+		Cancellation(boolean timedOut) {
+			super(timedOut ? "The compilation timed out."
+					: "The compilation was cancelled.", null, false, false);
+			this.timedOut = timedOut;
+		}
+
+		LessCancelledException toException() {
+			return new LessCancelledException(getMessage(), timedOut);
+		}
+	}
+
+}
@@ -0,0 +1,274 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+
+import com.asual.lesscss.loader.LoadedResource;
+import com.asual.lesscss.loader.ResourceLoader;
+
+/**
+ * Per-compile state shared with {@code engine.js} as
+ * {@code lessenv.compilation}. Besides the methods called by
+ * {@code engine.js}, it is the contract between the engine and a
+ * {@link LessRuntime.Scope}: a scope calls {@link #check()} before it runs
+ * the compiler and reports any failure of the compiler as
+ * {@link #getFailure(Throwable)}.
+ */
+public final class Compilation {
+
+	private final ResourceLoader loader;
+	private final String charset;
+	private final ImportCache importCache;
+	private final Object scope;
+	private final ImportPrefetcher prefetcher;
+	private final Map<String, String> hashes = new LinkedHashMap<String, String>();
+	private final Map<String, String> versions = new HashMap<String, String>();
+	private final long[] times = new long[CompileResult.Phase.values().length];
+	private final long[] starts = new long[times.length];
+	private long importLoadTime;
+	private long inputLength;
+	private int importDepth;
+	private CancellationToken token;
+	private CancellationToken.Cancellation cancellation;
+	private LessException error;
+
+	Compilation(ResourceLoader loader, String charset, ImportCache importCache,
+			Object scope) {
+		this(loader, charset, importCache, scope, null);
+	}
+
+	/**
+	 * @param scope
+	 *            the runtime scope the stylesheet is compiled in, which owns
+	 *            the parse trees put into the import cache.
+	 * @param executor
+	 *            the executor imports are prefetched on, or {@code null}.
+	 */
+	Compilation(ResourceLoader loader, String charset,
+			ImportCache importCache, Object scope, ExecutorService executor) {
+		this.loader = loader;
+		this.charset = charset;
+		this.importCache = importCache;
+		this.scope = scope;
+		this.prefetcher = executor != null ? new ImportPrefetcher(loader,
+				charset, executor) : null;
+	}
+
+	/**
+	 * Starts loading the imports of the entry stylesheet in the background.
+	 */
+	void prefetch(String source, String location) {
+		if (prefetcher != null) {
+			prefetcher.prefetch(source, location);
+		}
+	}
+
+	/**
+	 * Cancels the prefetched loads the compilation did not use.
+	 */
+	void finish() {
+		if (prefetcher != null) {
+			prefetcher.cancel();
+		}
+	}
+
+	CancellationToken getToken() {
+		return token;
+	}
+
+	void setToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	/**
+	 * Aborts the compilation if its token is cancelled or expired, by
+	 * throwing an {@link Error} that a runtime must let propagate. The
+	 * cancellation is remembered, so that it is reported even by a runtime
+	 * that lets scripts catch it.
+	 */
+	public void check() {
+		if (token != null) {
+			try {
+				token.check();
+			} catch (CancellationToken.Cancellation e) {
+				cancellation = e;
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Returns the exception for the cancellation of the compilation, or
+	 * {@code null} if it has not been aborted by {@link #check()}.
+	 */
+	public LessCancelledException getCancellation() {
+		return cancellation != null ? cancellation.toException() : null;
+	}
+
+	/**
+	 * Records the details of a LESS error thrown by the compiler.
+	 *
+	 * @param extract
+	 *            the source lines around the error separated by newlines, or
+	 *            {@code null}.
+	 */
+	public void error(String type, String message, String filename, int line,
+			int column, String extract) {
+		List<String> lines = new ArrayList<String>();
+		if (extract != null) {
+			for (String l : extract.split("\n", -1)) {
+				lines.add(l.replace("\t", " "));
+			}
+		}
+		error = new LessException(message, type + " Error",
+				filename != null ? filename : "", line, column, lines);
+	}
+
+	/**
+	 * Returns the last LESS error recorded by {@link #error}, or {@code null}.
+	 */
+	public LessException getError() {
+		return error;
+	}
+
+	/**
+	 * Returns the exception a runtime throws when the compiler fails: a
+	 * {@link LessCancelledException} if the compilation has been aborted,
+	 * the LESS error reported by the compiler if there is one, or the given
+	 * cause wrapped in a {@link LessException}.
+	 */
+	public LessException getFailure(Throwable cause) {
+		if (cause instanceof CancellationToken.Cancellation) {
+			return ((CancellationToken.Cancellation) cause).toException();
+		}
+		if (cancellation != null) {
+			return cancellation.toException();
+		}
+		return error != null ? error : new LessException(cause);
+	}
+
+	/**
+	 * Loads an imported stylesheet, unless the compilation has been aborted.
+	 */
+	public String load(String path) throws IOException {
+		check();
+		long time = System.nanoTime();
+		LoadedResource resource = prefetcher != null ? prefetcher.get(path)
+				: null;
+		if (resource == null) {
+			resource = loader.loadResource(path, charset);
+		}
+		time = System.nanoTime() - time;
+		times[CompileResult.Phase.LOAD.ordinal()] += time;
+		importLoadTime += time;
+		inputLength += resource.getContent().length();
+		hashes.put(path, resource.getFingerprint());
+		if (resource.getVersion() != null) {
+			versions.put(path, resource.getVersion());
+		}
+		return resource.getContent();
+	}
+
+	/**
+	 * Returns the cached parse tree of a stylesheet previously returned by
+	 * {@link #load(String)}, or {@code null}.
+	 */
+	public Object getParsed(String path) {
+		String hash = hashes.get(path);
+		return importCache != null && hash != null ? importCache.get(scope,
+				path, hash) : null;
+	}
+
+	public void putParsed(String path, Object root) {
+		String hash = hashes.get(path);
+		if (importCache != null && hash != null) {
+			importCache.put(scope, path, hash, root);
+		}
+	}
+
+	/**
+	 * Starts timing the given {@link CompileResult.Phase}.
+	 */
+	public void start(String phase) {
+		starts[CompileResult.Phase.valueOf(phase).ordinal()] = System
+				.nanoTime();
+	}
+
+	public void stop(String phase) {
+		int i = CompileResult.Phase.valueOf(phase).ordinal();
+		times[i] += System.nanoTime() - starts[i];
+	}
+
+	/**
+	 * Starts timing an import. Nested imports are part of the outermost one.
+	 */
+	public void startImport() {
+		if (importDepth++ == 0) {
+			start("IMPORT");
+		}
+	}
+
+	public void stopImport() {
+		if (--importDepth == 0) {
+			stop("IMPORT");
+		}
+	}
+
+	void setTime(CompileResult.Phase phase, long time) {
+		times[phase.ordinal()] = time;
+	}
+
+	/**
+	 * Counts the characters of the entry stylesheet.
+	 */
+	void addInputLength(long length) {
+		inputLength += length;
+	}
+
+	/**
+	 * Returns the content hashes of the imported stylesheets, keyed by
+	 * resolved path in the order they were loaded.
+	 */
+	Map<String, String> getImports() {
+		return new LinkedHashMap<String, String>(hashes);
+	}
+
+	/**
+	 * Returns the versions of the imported stylesheets whose loader knows
+	 * one, keyed by resolved path.
+	 */
+	Map<String, String> getVersions() {
+		return new HashMap<String, String>(versions);
+	}
+
+	CompileResult toResult(String css) {
+		long[] result = times.clone();
+		// Imports are resolved while the entry stylesheet is parsed and loaded
+		// while they are resolved
+		int parse = CompileResult.Phase.PARSE.ordinal();
+		int imports = CompileResult.Phase.IMPORT.ordinal();
+		result[parse] = Math.max(0, result[parse] - result[imports]);
+		result[imports] = Math.max(0, result[imports] - importLoadTime);
+		return new CompileResult(css, getImports(), result, inputLength, false);
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+/**
+ * Receives the outcome of every compilation, e.g. to collect metrics.
+ * Listeners are registered with
+ * {@link LessOptions#addCompileListener(CompileListener)} and called on the
+ * compiling thread, so they should return quickly. Listeners of options shared
+ * by a {@link LessEnginePool} must be safe for concurrent use.
+ *
+ * @see CompileStatistics
+ */
+public interface CompileListener {
+
+	/**
+	 * Called after a stylesheet has been compiled.
+	 *
+	 * @param location
+	 *            the location of the stylesheet, or {@code null} if it was
+	 *            compiled from a string without one.
+	 */
+	void compiled(String location, CompileResult result);
+
+	/**
+	 * Called after a compilation failed or was aborted.
+	 *
+	 * @param location
+	 *            the location of the stylesheet or {@code null}.
+	 * @param time
+	 *            the time until the failure, in nanoseconds.
+	 */
+	void failed(String location, LessException exception, long time);
+
+}
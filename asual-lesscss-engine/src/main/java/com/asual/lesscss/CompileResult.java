@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The outcome of a compilation: the generated CSS, the imports that were
+ * actually loaded and the time spent in each phase.
+ */
+public class CompileResult {
+
+	/**
+	 * Compilation phases.
+	 */
+	public enum Phase {
+		/** Loading the entry stylesheet and its imports. */
+		LOAD,
+		/** Parsing the entry stylesheet, excluding its imports. */
+		PARSE,
+		/** Resolving and parsing imported stylesheets, excluding loading. */
+		IMPORT,
+		/** Evaluating the parse tree to CSS. */
+		TO_CSS,
+		/** Compressing the CSS. */
+		MINIFY
+	}
+
+	private final String css;
+	private final Map<String, String> imports;
+	private final long[] times;
+	private final long inputLength;
+	private final boolean cached;
+
+	CompileResult(String css, Map<String, String> imports, long[] times,
+			long inputLength, boolean cached) {
+		this.css = css;
+		this.imports = Collections.unmodifiableMap(imports);
+		this.times = times;
+		this.inputLength = inputLength;
+		this.cached = cached;
+	}
+
+	public String getCss() {
+		return css;
+	}
+
+	/**
+	 * Returns the resolved locations of every stylesheet loaded by the
+	 * importer, directly or transitively, in load order.
+	 */
+	public List<String> getImports() {
+		return new ArrayList<String>(imports.keySet());
+	}
+
+	/**
+	 * Returns the SHA-1 hashes of the loaded content of the imported
+	 * stylesheets, keyed by resolved location.
+	 */
+	public Map<String, String> getImportHashes() {
+		return imports;
+	}
+
+	/**
+	 * Returns the number of stylesheets loaded by the importer.
+	 */
+	public int getImportCount() {
+		return imports.size();
+	}
+
+	/**
+	 * Returns the number of characters of the entry stylesheet and the
+	 * imports loaded for it.
+	 */
+	public long getInputLength() {
+		return inputLength;
+	}
+
+	/**
+	 * Returns the number of characters of the generated CSS.
+	 */
+	public long getOutputLength() {
+		return css.length();
+	}
+
+	/**
+	 * Returns the time spent in the given phase, in nanoseconds.
+	 */
+	public long getTime(Phase phase) {
+		return times[phase.ordinal()];
+	}
+
+	/**
+	 * Returns the total time of all phases, in nanoseconds.
+	 */
+	public long getTotalTime() {
+		long total = 0;
+		for (long time : times) {
+			total += time;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns {@code true} if the CSS was served from the
+	 * {@link OutputCache} without running the compiler.
+	 */
+	public boolean isCached() {
+		return cached;
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.beans.ConstructorProperties;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A {@link CompileListener} that aggregates compilation metrics and publishes
+ * them as a JMX MBean.
+ *
+ * <pre>
+ * CompileStatistics statistics = new CompileStatistics();
+ * options.addCompileListener(statistics);
+ * statistics.register(&quot;site&quot;);
+ * </pre>
+ */
+public class CompileStatistics implements CompileListener,
+		CompileStatisticsMXBean {
+
+	private static final long[] BOUNDS = { 1, 2, 5, 10, 20, 50, 100, 200,
+			500, 1000, 2000, 5000, 10000 };
+
+	private static final Comparator<SlowCompile> FASTEST_FIRST = new Comparator<SlowCompile>() {
+		@Override
+		public int compare(SlowCompile a, SlowCompile b) {
+			return Long.compare(a.time, b.time);
+		}
+	};
+
+	private static final CompileResult.Phase[] PHASES = CompileResult.Phase
+			.values();
+
+	private final int slowestSize;
+	private final PriorityQueue<SlowCompile> slowest = new PriorityQueue<SlowCompile>(
+			11, FASTEST_FIRST);
+	private final long[] histogram = new long[BOUNDS.length + 1];
+	private final long[][] phaseHistograms = new long[PHASES.length][BOUNDS.length + 1];
+	private final long[] phaseTimes = new long[PHASES.length];
+	private long compiles;
+	private long failures;
+	private long cached;
+	private long imports;
+	private long inputLength;
+	private long outputLength;
+	private long totalTime;
+	private long maxTime;
+	private ObjectName objectName;
+
+	public CompileStatistics() {
+		this(10);
+	}
+
+	/**
+	 * @param slowestSize
+	 *            number of slowest compilations that are kept.
+	 */
+	public CompileStatistics(int slowestSize) {
+		this.slowestSize = slowestSize;
+	}
+
+	@Override
+	public synchronized void compiled(String location, CompileResult result) {
+		long time = result.getTotalTime();
+		compiles++;
+		if (result.isCached()) {
+			cached++;
+		}
+		imports += result.getImportCount();
+		inputLength += result.getInputLength();
+		outputLength += result.getOutputLength();
+		totalTime += time;
+		maxTime = Math.max(maxTime, time);
+		histogram[bucket(time)]++;
+		for (int i = 0; i < PHASES.length; i++) {
+			long phaseTime = result.getTime(PHASES[i]);
+			phaseTimes[i] += phaseTime;
+			phaseHistograms[i][bucket(phaseTime)]++;
+		}
+		long millis = millis(time);
+		if (slowestSize > 0
+				&& (slowest.size() < slowestSize || slowest.peek().time < millis)) {
+			slowest.add(new SlowCompile(location, millis, System
+					.currentTimeMillis()));
+			if (slowest.size() > slowestSize) {
+				slowest.poll();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void failed(String location, LessException exception,
+			long time) {
+		failures++;
+	}
+
+	private static int bucket(long time) {
+		long millis = TimeUnit.NANOSECONDS.toMillis(time);
+		int i = 0;
+		while (i < BOUNDS.length && millis > BOUNDS[i]) {
+			i++;
+		}
+		return i;
+	}
+
+	private static long millis(long time) {
+		return TimeUnit.NANOSECONDS.toMillis(time);
+	}
+
+	@Override
+	public synchronized long getCompileCount() {
+		return compiles;
+	}
+
+	@Override
+	public synchronized long getFailureCount() {
+		return failures;
+	}
+
+	@Override
+	public synchronized long getCachedCount() {
+		return cached;
+	}
+
+	@Override
+	public synchronized long getImportCount() {
+		return imports;
+	}
+
+	@Override
+	public synchronized long getInputLength() {
+		return inputLength;
+	}
+
+	@Override
+	public synchronized long getOutputLength() {
+		return outputLength;
+	}
+
+	@Override
+	public synchronized long getTotalTime() {
+		return millis(totalTime);
+	}
+
+	@Override
+	public synchronized double getAverageTime() {
+		return compiles > 0 ? totalTime / 1000000d / compiles : 0;
+	}
+
+	@Override
+	public synchronized long getMaxTime() {
+		return millis(maxTime);
+	}
+
+	@Override
+	public synchronized Map<String, Long> getPhaseTimes() {
+		Map<String, Long> times = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < PHASES.length; i++) {
+			times.put(PHASES[i].name(), millis(phaseTimes[i]));
+		}
+		return times;
+	}
+
+	@Override
+	public long[] getHistogramBounds() {
+		return BOUNDS.clone();
+	}
+
+	@Override
+	public synchronized long[] getHistogram() {
+		return histogram.clone();
+	}
+
+	@Override
+	public synchronized long[] getPhaseHistogram(String phase) {
+		return phaseHistograms[CompileResult.Phase.valueOf(phase).ordinal()]
+				.clone();
+	}
+
+	@Override
+	public synchronized List<SlowCompile> getSlowestCompiles() {
+		List<SlowCompile> result = new ArrayList<SlowCompile>(slowest);
+		Collections.sort(result, Collections.reverseOrder(FASTEST_FIRST));
+		return result;
+	}
+
+	@Override
+	public synchronized void reset() {
+		slowest.clear();
+		Arrays.fill(histogram, 0);
+		for (long[] phaseHistogram : phaseHistograms) {
+			Arrays.fill(phaseHistogram, 0);
+		}
+		Arrays.fill(phaseTimes, 0);
+		compiles = failures = cached = imports = 0;
+		inputLength = outputLength = totalTime = maxTime = 0;
+	}
+
+	/**
+	 * Registers the statistics with the platform MBean server as
+	 * {@code com.asual.lesscss:type=CompileStatistics,name=<name>}.
+	 */
+	public synchronized ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName(
+				"com.asual.lesscss:type=CompileStatistics,name="
+						+ ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+				objectName);
+		this.objectName = objectName;
+		return objectName;
+	}
+
+	/**
+	 * Removes the statistics from the platform MBean server.
+	 */
+	public synchronized void unregister() throws JMException {
+		if (objectName != null) {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+			objectName = null;
+		}
+	}
+
+	/**
+	 * A slow compilation.
+	 */
+	public static class SlowCompile {
+
+		private final String location;
+		private final long time;
+		private final long timestamp;
+
+		@ConstructorProperties({ "location", "time", "timestamp" })
+		public SlowCompile(String location, long time, long timestamp) {
+			this.location = location;
+			this.time = time;
+			this.timestamp = timestamp;
+		}
+
+		/**
+		 * Returns the location of the stylesheet or {@code null}.
+		 */
+		public String getLocation() {
+			return location;
+		}
+
+		/**
+		 * Returns the compilation time in milliseconds.
+		 */
+		public long getTime() {
+			return time;
+		}
+
+		/**
+		 * Returns when the compilation finished, in milliseconds since the
+		 * epoch.
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+	}
+
+}
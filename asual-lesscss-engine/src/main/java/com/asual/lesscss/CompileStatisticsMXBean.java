@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Management interface of {@link CompileStatistics}. Times are in
+ * milliseconds, lengths in characters.
+ */
+public interface CompileStatisticsMXBean {
+
+	long getCompileCount();
+
+	long getFailureCount();
+
+	/**
+	 * Returns the number of compilations served from the {@link OutputCache}.
+	 */
+	long getCachedCount();
+
+	long getImportCount();
+
+	long getInputLength();
+
+	long getOutputLength();
+
+	long getTotalTime();
+
+	double getAverageTime();
+
+	long getMaxTime();
+
+	/**
+	 * Returns the total time spent in each {@link CompileResult.Phase}.
+	 */
+	Map<String, Long> getPhaseTimes();
+
+	/**
+	 * Returns the inclusive upper bounds of the histogram buckets. The last
+	 * bucket of a histogram counts the compilations above the last bound.
+	 */
+	long[] getHistogramBounds();
+
+	/**
+	 * Returns the histogram of the total compilation times.
+	 */
+	long[] getHistogram();
+
+	/**
+	 * Returns the histogram of the times spent in the given
+	 * {@link CompileResult.Phase}.
+	 */
+	long[] getPhaseHistogram(String phase);
+
+	/**
+	 * Returns the slowest compilations since the last reset, slowest first.
+	 */
+	List<CompileStatistics.SlowCompile> getSlowestCompiles();
+
+	void reset();
+
+}
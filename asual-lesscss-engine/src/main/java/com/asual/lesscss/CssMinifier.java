@@ -0,0 +1,799 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A Java port of {@code cssmin.js}, the YUI Compressor CSS minifier bundled
+ * with the engine, whose output it reproduces.
+ *
+ * The passes of {@code cssmin.js} are kept in their order, because their
+ * rules depend on each other, but each pass is a single scan of the text.
+ * Comments and strings are replaced with placeholders in one pass and
+ * restored in one pass rather than with a {@code replace} per token, and the
+ * string and selector patterns, which would need deep backtracking in
+ * {@code java.util.regex}, are matched by hand.
+ */
+public final class CssMinifier {
+
+	private static final String PRESERVED = "___YUICSSMIN_PRESERVED_TOKEN_";
+	private static final String COMMENT = "___YUICSSMIN_PRESERVE_CANDIDATE_COMMENT_";
+	private static final String PSEUDO_CLASS_COLON = "___YUICSSMIN_PSEUDOCLASSCOLON___";
+	private static final String PLACEHOLDER = "___YUICSSMIN_";
+
+	/**
+	 * The {@code \s} of JavaScript, which also matches Unicode spaces.
+	 */
+	private static final String WS = "[\\s\\p{Zs}\\ufeff\\u2028\\u2029]";
+
+	private static final Pattern DATA_URL = Pattern.compile("url\\(" + WS
+			+ "*([\"']?)data\\:");
+	private static final Pattern WHITESPACE = Pattern.compile(WS + "+");
+	private static final Pattern ALPHA = Pattern.compile(
+			"progid:DXImageTransform\\.Microsoft\\.Alpha\\(Opacity=",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern SPACE_BEFORE = Pattern
+			.compile("\\s+([!{};:>+\\(\\)\\],])");
+	private static final Pattern FIRST_LINE = Pattern
+			.compile(":first-(line|letter)(\\{|,)");
+	private static final Pattern CHARSET = Pattern.compile(
+			"^(.*)(@charset \"[^\"]*\";)", Pattern.CASE_INSENSITIVE
+					| Pattern.DOTALL);
+	private static final Pattern CHARSETS = Pattern.compile(
+			"^(\\s*@charset [^;]+;\\s*)+", Pattern.CASE_INSENSITIVE);
+	private static final Pattern AND = Pattern.compile(
+			"(?<![A-Za-z0-9_])and\\(", Pattern.CASE_INSENSITIVE);
+	private static final Pattern SPACE_AFTER = Pattern
+			.compile("([!{}:;>+\\(\\[,])\\s+");
+	private static final Pattern SEMICOLONS_BEFORE_BRACE = Pattern
+			.compile(";+\\}");
+	private static final Pattern ZERO_UNITS = Pattern.compile(
+			"([\\s:])(0)(px|em|%|in|cm|mm|pc|pt|ex)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern ZERO_4 = Pattern.compile(":0 0 0 0(;|\\})");
+	private static final Pattern ZERO_3 = Pattern.compile(":0 0 0(;|\\})");
+	private static final Pattern ZERO_2 = Pattern.compile(":0 0(;|\\})");
+	private static final Pattern ZERO_POSITION = Pattern.compile(
+			"(background-position|transform-origin|webkit-transform-origin"
+					+ "|moz-transform-origin|o-transform-origin"
+					+ "|ms-transform-origin):0(;|\\})",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern LEADING_ZERO = Pattern
+			.compile("(:|\\s)0+\\.(\\d+)");
+	private static final Pattern RGB = Pattern.compile(
+			"rgb\\s*\\(\\s*([0-9,\\s]+)\\s*\\)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern HEX_COLOR = Pattern.compile(
+			"(\\=\\s*?[\"']?)?#([0-9a-f])([0-9a-f])([0-9a-f])([0-9a-f])"
+					+ "([0-9a-f])([0-9a-f])(\\}|[^0-9a-f{][^{]*?\\})",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern NONE = Pattern.compile(
+			"(border|border-top|border-right|border-bottom|border-right"
+					+ "|outline|background):none(;|\\})",
+			Pattern.CASE_INSENSITIVE);
+	private static final Pattern SEMICOLONS = Pattern.compile(";;+");
+
+	private CssMinifier() {
+	}
+
+	/**
+	 * Minifies a stylesheet into a single line.
+	 */
+	public static String minify(String css) {
+		return minify(css, -1);
+	}
+
+	/**
+	 * Minifies a stylesheet.
+	 * 
+	 * @param linebreakpos
+	 *            the column after which a line is broken at the next closing
+	 *            brace, or {@code -1} to keep a single line.
+	 */
+	public static String minify(String css, int linebreakpos) {
+		// Placeholders in the input make the single pass substitutions
+		// ambiguous, cssmin.js is followed literally in that case
+		boolean literal = css.contains(PLACEHOLDER);
+		int totalLength = css.length();
+		List<String> preserved = new ArrayList<String>();
+		List<String> comments = new ArrayList<String>();
+		css = extractDataUrls(css, preserved);
+		css = extractComments(css, totalLength, comments);
+		css = preserveStrings(css, comments, preserved);
+		css = literal ? processCommentsLiterally(css, comments, preserved)
+				: processComments(css, comments, preserved);
+		css = collapseWhitespace(css);
+		css = protectPseudoClassColons(css);
+		css = SPACE_BEFORE.matcher(css).replaceAll("$1");
+		css = css.replace(PSEUDO_CLASS_COLON, ":");
+		css = FIRST_LINE.matcher(css).replaceAll(":first-$1 $2");
+		css = css.replace("*/ ", "*/");
+		if (containsIgnoreCase(css, "@charset ")) {
+			css = CHARSET.matcher(css).replaceAll("$2$1");
+			css = CHARSETS.matcher(css).replaceAll("$1");
+		}
+		css = AND.matcher(css).replaceAll("and (");
+		css = SPACE_AFTER.matcher(css).replaceAll("$1");
+		css = SEMICOLONS_BEFORE_BRACE.matcher(css).replaceAll("}");
+		css = ZERO_UNITS.matcher(css).replaceAll("$1$2");
+		css = ZERO_4.matcher(css).replaceAll(":0$1");
+		css = ZERO_3.matcher(css).replaceAll(":0$1");
+		css = ZERO_2.matcher(css).replaceAll(":0$1");
+		css = lowerCaseProperty(ZERO_POSITION, css, ":0", ":0 0");
+		css = LEADING_ZERO.matcher(css).replaceAll("$1.$2");
+		css = shortenRgbColors(css);
+		css = compressHexColors(css);
+		css = lowerCaseProperty(NONE, css, ":none", ":0");
+		css = ALPHA.matcher(css).replaceAll("alpha(opacity=");
+		css = removeEmptyRules(css);
+		if (linebreakpos >= 0) {
+			css = breakLines(css, linebreakpos);
+		}
+		css = SEMICOLONS.matcher(css).replaceAll(";");
+		css = literal || !isLocal(preserved) ? restoreLiterally(css,
+				preserved) : restore(css, preserved);
+		return trim(css);
+	}
+
+	/**
+	 * Replaces data URLs with placeholders, so that the later passes do not
+	 * have to scan them.
+	 */
+	private static String extractDataUrls(String css, List<String> preserved) {
+		int maxIndex = css.length() - 1;
+		int appendIndex = 0;
+		StringBuilder sb = new StringBuilder(css.length());
+		Matcher m = DATA_URL.matcher(css);
+		while (m.find()) {
+			int startIndex = m.start() + 4;
+			String terminator = m.group(1).length() == 0 ? ")" : m.group(1);
+			boolean foundTerminator = false;
+			boolean wrapped = false;
+			int endIndex = m.end() - 1;
+			while (!foundTerminator && endIndex + 1 <= maxIndex) {
+				endIndex = css.indexOf(terminator, endIndex + 1);
+				if (endIndex < 0) {
+					// cssmin.js searches again from the start, and loops
+					// forever the second time
+					if (wrapped) {
+						break;
+					}
+					wrapped = true;
+				}
+				if (endIndex > 0 && css.charAt(endIndex - 1) != '\\') {
+					foundTerminator = true;
+					if (!")".equals(terminator)) {
+						endIndex = css.indexOf(")", endIndex);
+					}
+				}
+			}
+			sb.append(substring(css, appendIndex, m.start()));
+			if (foundTerminator) {
+				String token = substring(css, startIndex, endIndex);
+				preserved.add(WHITESPACE.matcher(token).replaceAll(""));
+				sb.append("url(").append(PRESERVED)
+						.append(preserved.size() - 1).append("___)");
+				appendIndex = endIndex + 1;
+			} else {
+				sb.append(substring(css, m.start(), m.end()));
+				appendIndex = m.end();
+			}
+		}
+		sb.append(substring(css, appendIndex, css.length()));
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces the content of every comment with a placeholder.
+	 */
+	private static String extractComments(String css, int totalLength,
+			List<String> comments) {
+		StringBuilder sb = new StringBuilder(css.length());
+		int copied = 0;
+		int start = 0;
+		while ((start = css.indexOf("/*", start)) >= 0) {
+			int end = css.indexOf("*/", start + 2);
+			if (end < 0) {
+				// cssmin.js ends an unterminated comment at the original
+				// length, counted in the text as it is being rewritten, and
+				// loops forever if that is before the comment
+				end = totalLength - sb.length() + copied;
+				if (end < start + 2 || end > css.length()) {
+					end = css.length();
+				}
+			}
+			comments.add(css.substring(start + 2, end));
+			sb.append(css, copied, start + 2).append(COMMENT)
+					.append(comments.size() - 1).append("___");
+			copied = start = end;
+		}
+		sb.append(css, copied, css.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces the content of every string with a placeholder, restoring the
+	 * comments that were extracted from it.
+	 */
+	private static String preserveStrings(String css, List<String> comments,
+			List<String> preserved) {
+		StringBuilder sb = new StringBuilder(css.length());
+		int copied = 0;
+		int length = css.length();
+		int i = 0;
+		while (i < length) {
+			char quote = css.charAt(i);
+			if (quote == '"' || quote == '\'') {
+				int end = stringEnd(css, i, quote);
+				if (end >= 0) {
+					String match = css.substring(i + 1, end);
+					if (match.contains(COMMENT)) {
+						for (int j = 0; j < comments.size(); j++) {
+							match = replaceFirst(match, COMMENT + j + "___",
+									comments.get(j));
+						}
+					}
+					match = ALPHA.matcher(match).replaceAll("alpha(opacity=");
+					preserved.add(match);
+					sb.append(css, copied, i).append(quote).append(PRESERVED)
+							.append(preserved.size() - 1).append("___")
+							.append(quote);
+					copied = i = end + 1;
+					continue;
+				}
+			}
+			i++;
+		}
+		sb.append(css, copied, length);
+		return sb.toString();
+	}
+
+	/**
+	 * Returns the index of the quote closing the string that starts at the
+	 * given index, or {@code -1}. The content is matched like
+	 * {@code ([^\\"]|\\.|\\)*}, trying the alternatives in the order of a
+	 * backtracking engine, but without revisiting a position.
+	 */
+	private static int stringEnd(String css, int start, char quote) {
+		int length = css.length();
+		int[] choices = new int[8];
+		int size = 0;
+		BitSet visited = null;
+		int i = start + 1;
+		while (true) {
+			if (i < length && (visited == null || !visited.get(i))) {
+				if (visited != null) {
+					visited.set(i);
+				}
+				char c = css.charAt(i);
+				if (c == quote) {
+					return i;
+				}
+				if (c == '\\' && i + 1 < length
+						&& !isLineTerminator(css.charAt(i + 1))) {
+					if (size == choices.length) {
+						choices = Arrays.copyOf(choices, size * 2);
+					}
+					choices[size++] = i;
+					i += 2;
+				} else {
+					i++;
+				}
+				continue;
+			}
+			if (size == 0) {
+				return -1;
+			}
+			if (visited == null) {
+				// Every position of the first pass has failed
+				visited = new BitSet(length);
+				for (int j = start + 1; j < length;) {
+					visited.set(j);
+					j += css.charAt(j) == '\\' && j + 1 < length
+							&& !isLineTerminator(css.charAt(j + 1)) ? 2 : 1;
+				}
+			}
+			// Consume the backslash of the last escape on its own
+			i = choices[--size] + 1;
+		}
+	}
+
+	private static boolean isLineTerminator(char c) {
+		return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * Preserves the comments starting with {@code !}, the Mac/IE5 hack and
+	 * the empty comments after child selectors, and removes the others.
+	 */
+	private static String processComments(String css, List<String> comments,
+			List<String> preserved) {
+		int[] positions = new int[comments.size()];
+		Arrays.fill(positions, -1);
+		int pos = 0;
+		while ((pos = css.indexOf(COMMENT, pos)) >= 0) {
+			int end = pos + COMMENT.length();
+			int digits = end;
+			while (end < css.length() && Character.isDigit(css.charAt(end))) {
+				end++;
+			}
+			positions[Integer.parseInt(css.substring(digits, end))] = pos;
+			pos = end;
+		}
+		StringBuilder sb = new StringBuilder(css.length());
+		int copied = 0;
+		for (int i = 0; i < comments.size(); i++) {
+			String token = comments.get(i);
+			String placeholder = COMMENT + i + "___";
+			int index = positions[i];
+			if (index >= 0) {
+				sb.append(css, copied, index);
+				copied = index;
+			}
+			if (token.startsWith("!")) {
+				preserved.add(token);
+				copied = preserve(sb, index, placeholder, copied, preserved);
+				continue;
+			}
+			if (token.endsWith("\\")) {
+				preserved.add("\\");
+				copied = preserve(sb, index, placeholder, copied, preserved);
+				i++;
+				preserved.add("");
+				if (i < comments.size() && positions[i] >= 0) {
+					sb.append(css, copied, positions[i]);
+					copied = preserve(sb, positions[i], COMMENT + i + "___",
+							positions[i], preserved);
+				}
+				continue;
+			}
+			if (token.length() == 0 && index > 0 && sb.length() > 2
+					&& sb.charAt(sb.length() - 3) == '>') {
+				preserved.add("");
+				copied = preserve(sb, index, placeholder, copied, preserved);
+				continue;
+			}
+			if (index >= 0 && endsWith(sb, "/*")
+					&& css.startsWith("*/", index + placeholder.length())) {
+				sb.setLength(sb.length() - 2);
+				copied = index + placeholder.length() + 2;
+			}
+		}
+		sb.append(css, copied, css.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces the placeholder of a comment at the given index with the
+	 * placeholder of the last preserved token and returns the new copy
+	 * position.
+	 */
+	private static int preserve(StringBuilder sb, int index,
+			String placeholder, int copied, List<String> preserved) {
+		if (index < 0) {
+			return copied;
+		}
+		sb.append(PRESERVED).append(preserved.size() - 1).append("___");
+		return index + placeholder.length();
+	}
+
+	private static String processCommentsLiterally(String css,
+			List<String> comments, List<String> preserved) {
+		for (int i = 0; i < comments.size(); i++) {
+			String token = comments.get(i);
+			String placeholder = COMMENT + i + "___";
+			if (token.startsWith("!")) {
+				preserved.add(token);
+				css = replaceFirst(css, placeholder,
+						PRESERVED + (preserved.size() - 1) + "___");
+				continue;
+			}
+			if (token.endsWith("\\")) {
+				preserved.add("\\");
+				css = replaceFirst(css, placeholder,
+						PRESERVED + (preserved.size() - 1) + "___");
+				i++;
+				preserved.add("");
+				css = replaceFirst(css, COMMENT + i + "___",
+						PRESERVED + (preserved.size() - 1) + "___");
+				continue;
+			}
+			if (token.length() == 0) {
+				int startIndex = css.indexOf(placeholder);
+				if (startIndex > 2 && css.charAt(startIndex - 3) == '>') {
+					preserved.add("");
+					css = replaceFirst(css, placeholder,
+							PRESERVED + (preserved.size() - 1) + "___");
+				}
+			}
+			css = replaceFirst(css, "/*" + placeholder + "*/", "");
+		}
+		return css;
+	}
+
+	/**
+	 * Protects the first colon of a selector, so that the space before a
+	 * pseudo class is kept. It matches like
+	 * {@code (^|\})(([^\{:])+:)+([^\{]*\{)}: a selector matches when it
+	 * starts with a character other than {@code :} and has a colon before the
+	 * next {@code {}.
+	 */
+	private static String protectPseudoClassColons(String css) {
+		StringBuilder sb = new StringBuilder(css.length() + 64);
+		int length = css.length();
+		int copied = 0;
+		int brace = -2;
+		int colon = -2;
+		int position = 0;
+		boolean first = true;
+		while (position < length) {
+			int start;
+			if (first) {
+				start = 0;
+				first = false;
+			} else {
+				position = css.indexOf('}', position);
+				if (position < 0) {
+					break;
+				}
+				start = position + 1;
+			}
+			if (brace != -1 && brace < start) {
+				brace = css.indexOf('{', start);
+			}
+			if (brace < 0) {
+				break;
+			}
+			if (brace > start && css.charAt(start) != ':') {
+				if (colon != -1 && colon < start) {
+					colon = css.indexOf(':', start);
+				}
+				if (colon >= 0 && colon < brace) {
+					sb.append(css, copied, colon).append(PSEUDO_CLASS_COLON);
+					copied = colon + 1;
+					position = brace + 1;
+					continue;
+				}
+			}
+			position++;
+		}
+		sb.append(css, copied, length);
+		return sb.toString();
+	}
+
+	/**
+	 * Replaces the value of the properties matched by the pattern, which is
+	 * only run if the text contains the given value.
+	 */
+	private static String lowerCaseProperty(Pattern pattern, String css,
+			String match, String value) {
+		if (!containsIgnoreCase(css, match)) {
+			return css;
+		}
+		Matcher m = pattern.matcher(css);
+		if (!m.find()) {
+			return css;
+		}
+		StringBuffer sb = new StringBuffer(css.length());
+		do {
+			m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1)
+					.toLowerCase() + value + m.group(2)));
+		} while (m.find());
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Shortens {@code rgb(51,102,153)} to {@code #336699}. Components are
+	 * converted like {@code parseInt(c, 10).toString(16)}.
+	 */
+	private static String shortenRgbColors(String css) {
+		Matcher m = RGB.matcher(css);
+		if (!m.find()) {
+			return css;
+		}
+		StringBuffer sb = new StringBuffer(css.length());
+		do {
+			StringBuilder color = new StringBuilder("#");
+			for (String component : m.group(1).split(",", -1)) {
+				String hex = toHex(component);
+				if (hex.length() == 1) {
+					color.append('0');
+				}
+				color.append(hex);
+			}
+			m.appendReplacement(sb, Matcher.quoteReplacement(color.toString()));
+		} while (m.find());
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	private static String toHex(String component) {
+		int start = 0;
+		while (start < component.length()
+				&& isWhitespace(component.charAt(start))) {
+			start++;
+		}
+		int end = start;
+		while (end < component.length()
+				&& component.charAt(end) >= '0' && component.charAt(end) <= '9') {
+			end++;
+		}
+		if (end == start) {
+			return "NaN";
+		}
+		double value = Double.parseDouble(component.substring(start, end));
+		if (Double.isInfinite(value)) {
+			return "Infinity";
+		}
+		return new BigDecimal(value).toBigInteger().toString(16);
+	}
+
+	/**
+	 * Shortens {@code #AABBCC} to {@code #ABC} inside declaration blocks,
+	 * leaving IDs and IE filters alone.
+	 */
+	private static String compressHexColors(String css) {
+		Matcher m = HEX_COLOR.matcher(css);
+		StringBuilder sb = new StringBuilder(css.length());
+		int index = 0;
+		while (index <= css.length() && m.find(index)) {
+			sb.append(css, index, m.start());
+			if (m.group(1) != null) {
+				sb.append(m.group(1)).append('#');
+				for (int i = 2; i <= 7; i++) {
+					sb.append(m.group(i));
+				}
+			} else if (m.group(2).equalsIgnoreCase(m.group(3))
+					&& m.group(4).equalsIgnoreCase(m.group(5))
+					&& m.group(6).equalsIgnoreCase(m.group(7))) {
+				sb.append('#').append(
+						(m.group(3) + m.group(5) + m.group(7)).toLowerCase());
+			} else {
+				sb.append('#');
+				for (int i = 2; i <= 7; i++) {
+					sb.append(m.group(i).toLowerCase());
+				}
+			}
+			index = m.end() - m.group(8).length();
+		}
+		sb.append(css, Math.min(index, css.length()), css.length());
+		return sb.toString();
+	}
+
+	/**
+	 * Removes empty rules like {@code [^\};\{\/]+\{\}} without its
+	 * backtracking: a selector matches if it is followed by {@code {}}.
+	 */
+	private static String removeEmptyRules(String css) {
+		StringBuilder sb = new StringBuilder(css.length());
+		int length = css.length();
+		int copied = 0;
+		int i = 0;
+		while (i < length) {
+			int end = i;
+			while (end < length && !isRuleDelimiter(css.charAt(end))) {
+				end++;
+			}
+			if (end > i && css.startsWith("{}", end)) {
+				sb.append(css, copied, i);
+				copied = i = end + 2;
+			} else {
+				i = end + 1;
+			}
+		}
+		sb.append(css, copied, length);
+		return sb.toString();
+	}
+
+	private static boolean isRuleDelimiter(char c) {
+		return c == '}' || c == ';' || c == '{' || c == '/';
+	}
+
+	private static String breakLines(String css, int linebreakpos) {
+		StringBuilder sb = new StringBuilder(css.length() + 64);
+		int start = 0;
+		for (int i = 0; i < css.length(); i++) {
+			char c = css.charAt(i);
+			sb.append(c);
+			if (c == '}' && sb.length() - start > linebreakpos) {
+				start = sb.length();
+				sb.append('\n');
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns {@code true} if the tokens can be restored independently of
+	 * each other, i.e. none of them inserts the text around its placeholder.
+	 */
+	private static boolean isLocal(List<String> preserved) {
+		for (String token : preserved) {
+			if (token.contains("$`") || token.contains("$'")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Restores the preserved tokens in a single pass.
+	 */
+	private static String restore(String css, List<String> preserved) {
+		StringBuilder sb = new StringBuilder(css.length() + 256);
+		boolean[] restored = new boolean[preserved.size()];
+		int copied = 0;
+		int pos = 0;
+		while ((pos = css.indexOf(PRESERVED, pos)) >= 0) {
+			int digits = pos + PRESERVED.length();
+			int end = digits;
+			while (end < css.length() && Character.isDigit(css.charAt(end))) {
+				end++;
+			}
+			int i = Integer.parseInt(css.substring(digits, end));
+			if (!restored[i]) {
+				String placeholder = css.substring(pos, end + 3);
+				sb.append(css, copied, pos).append(
+						substitute(preserved.get(i), placeholder, "", ""));
+				restored[i] = true;
+				copied = end + 3;
+			}
+			pos = end + 3;
+		}
+		sb.append(css, copied, css.length());
+		return sb.toString();
+	}
+
+	private static String restoreLiterally(String css, List<String> preserved) {
+		for (int i = 0; i < preserved.size(); i++) {
+			css = replaceFirst(css, PRESERVED + i + "___", preserved.get(i));
+		}
+		return css;
+	}
+
+	/**
+	 * Replaces the first occurrence of the target like
+	 * {@code String.prototype.replace} of Rhino, which expands {@code $}
+	 * patterns in the replacement.
+	 */
+	private static String replaceFirst(String s, String target,
+			String replacement) {
+		int index = s.indexOf(target);
+		if (index < 0) {
+			return s;
+		}
+		String prefix = s.substring(0, index);
+		String suffix = s.substring(index + target.length());
+		return prefix + substitute(replacement, target, prefix, suffix)
+				+ suffix;
+	}
+
+	private static String substitute(String replacement, String match,
+			String prefix, String suffix) {
+		if (replacement.indexOf('$') < 0) {
+			return replacement;
+		}
+		StringBuilder sb = new StringBuilder(replacement.length());
+		for (int i = 0; i < replacement.length(); i++) {
+			char c = replacement.charAt(i);
+			if (c == '$' && i + 1 < replacement.length()) {
+				char next = replacement.charAt(i + 1);
+				if (next == '$') {
+					sb.append('$');
+					i++;
+					continue;
+				} else if (next == '&') {
+					sb.append(match);
+					i++;
+					continue;
+				} else if (next == '+') {
+					// The last group of Rhino, strings have none
+					i++;
+					continue;
+				} else if (next == '`') {
+					sb.append(prefix);
+					i++;
+					continue;
+				} else if (next == '\'') {
+					sb.append(suffix);
+					i++;
+					continue;
+				}
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	private static String trim(String css) {
+		int start = 0;
+		int end = css.length();
+		while (start < end && isWhitespace(css.charAt(start))) {
+			start++;
+		}
+		while (end > start && isWhitespace(css.charAt(end - 1))) {
+			end--;
+		}
+		return css.substring(start, end);
+	}
+
+	/**
+	 * Returns {@code true} for the characters matched by {@code \s} in
+	 * JavaScript.
+	 */
+	private static boolean isWhitespace(char c) {
+		if (c <= ' ') {
+			return c == ' ' || c == '\t' || c == '\n' || c == '\u000b'
+					|| c == '\f' || c == '\r';
+		}
+		return c > '\u007f'
+				&& (c == '\ufeff' || c == '\u2028' || c == '\u2029' || Character
+						.getType(c) == Character.SPACE_SEPARATOR);
+	}
+
+	private static String collapseWhitespace(String css) {
+		StringBuilder sb = new StringBuilder(css.length());
+		int length = css.length();
+		for (int i = 0; i < length; i++) {
+			char c = css.charAt(i);
+			if (isWhitespace(c)) {
+				while (i + 1 < length && isWhitespace(css.charAt(i + 1))) {
+					i++;
+				}
+				c = ' ';
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Returns {@code true} if the text contains the given part, which starts
+	 * with a character other than a letter, ignoring case.
+	 */
+	private static boolean containsIgnoreCase(String s, String part) {
+		char first = part.charAt(0);
+		for (int i = s.indexOf(first); i >= 0; i = s.indexOf(first, i + 1)) {
+			if (s.regionMatches(true, i, part, 0, part.length())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean endsWith(StringBuilder sb, String suffix) {
+		int length = sb.length();
+		return length >= suffix.length()
+				&& sb.substring(length - suffix.length()).equals(suffix);
+	}
+
+	/**
+	 * Returns a substring like {@code String.prototype.substring} of
+	 * JavaScript, which clamps its arguments and swaps them if needed.
+	 */
+	private static String substring(String s, int start, int end) {
+		start = Math.max(0, Math.min(start, s.length()));
+		end = Math.max(0, Math.min(end, s.length()));
+		return start <= end ? s.substring(start, end) : s.substring(end,
+				start);
+	}
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded LRU cache of parsed {@code @import}ed stylesheets.
+ * 
+ * A file imported by many entry points is parsed once per engine instead of
+ * once per compilation. The cache is safe for concurrent use and the engines
+ * of a {@link LessEnginePool} share one, but a parse tree is bound to the
+ * runtime scope that parsed it, so entries are keyed by that scope and the
+ * resolved import path: a tree is only reused by the engine that parsed it,
+ * and the engines of a pool still parse a shared import once each. Entries
+ * are validated against a hash of the loaded content, so a modified file is
+ * parsed again on its next use.
+ * 
+ * Only stylesheets without {@code @import}s are cached: less.js replaces the
+ * imports of a parse tree in place with the imports it resolved, which
+ * depend on the variables of the importing stylesheet.
+ */
+public class ImportCache {
+
+	private final int maxSize;
+	private final Map<Key, Entry> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param maxSize
+	 *            maximum number of parsed stylesheets to keep.
+	 */
+	public ImportCache(int maxSize) {
+		this.maxSize = maxSize;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+				if (size() > ImportCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Returns the root parsed by the given scope for the given path, or
+	 * {@code null} if it is not cached or was parsed from different content.
+	 */
+	synchronized Object get(Object scope, String path, String hash) {
+		Entry entry = entries.get(new Key(scope, path));
+		if (entry != null && entry.hash.equals(hash)) {
+			hits++;
+			return entry.root;
+		}
+		misses++;
+		return null;
+	}
+
+	synchronized void put(Object scope, String path, String hash, Object root) {
+		entries.put(new Key(scope, path), new Entry(hash, root));
+	}
+
+	/**
+	 * Discards the cached stylesheet for the given resolved import path.
+	 */
+	public synchronized void invalidate(String path) {
+		for (Iterator<Key> i = entries.keySet().iterator(); i.hasNext();) {
+			if (i.next().path.equals(path)) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards the stylesheets parsed by the given scope.
+	 */
+	synchronized void invalidateScope(Object scope) {
+		for (Iterator<Key> i = entries.keySet().iterator(); i.hasNext();) {
+			if (i.next().scope == scope) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards all cached stylesheets.
+	 */
+	public synchronized void invalidateAll() {
+		entries.clear();
+	}
+
+	/**
+	 * Returns the parse trees cached for the given scope.
+	 */
+	synchronized List<Object> roots(Object scope) {
+		List<Object> roots = new ArrayList<Object>();
+		for (Map.Entry<Key, Entry> entry : entries.entrySet()) {
+			if (entry.getKey().scope == scope) {
+				roots.add(entry.getValue().root);
+			}
+		}
+		return roots;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	private static class Key {
+
+		private final Object scope;
+		private final String path;
+
+		public Key(Object scope, String path) {
+			this.scope = scope;
+			this.path = path;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) obj;
+			return scope == key.scope && path.equals(key.path);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * System.identityHashCode(scope) + path.hashCode();
+		}
+	}
+
+	private static class Entry {
+
+		private final String hash;
+		private final Object root;
+
+		public Entry(String hash, Object root) {
+			this.hash = hash;
+			this.root = root;
+		}
+	}
+
+}
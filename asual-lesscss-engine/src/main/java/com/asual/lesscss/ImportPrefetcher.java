@@ -0,0 +1,211 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.asual.lesscss.loader.AsyncResourceLoader;
+import com.asual.lesscss.loader.LoadedResource;
+import com.asual.lesscss.loader.ResourceLoader;
+
+/**
+ * Loads the imports of a stylesheet, and recursively their imports, in
+ * parallel before the parser asks for them.
+ *
+ * Import targets are found with a pattern rather than by parsing, and are
+ * resolved the way {@code less.js} and {@code engine.js} resolve them: quoted
+ * paths without an extension get {@code .less} appended, plain CSS imports are
+ * skipped and relative paths are resolved against the directory of the
+ * importing file. A target the parser never asks for only costs a wasted
+ * load; its errors are never reported. An {@link AsyncResourceLoader} loads
+ * without blocking a prefetch thread, other loaders are called on one.
+ */
+class ImportPrefetcher {
+
+	private static final Pattern IMPORT = Pattern
+			.compile("@import\\s*(?:\\(([^)]*)\\)\\s*)?(?:url\\(\\s*([\"']?)([^\"')]+)\\2\\s*\\)|([\"'])([^\"']+)\\4)");
+	private static final Pattern EXTENSION = Pattern
+			.compile("(\\.[a-z]*$)|([\\?;].*)$");
+	private static final Pattern CSS = Pattern.compile("css([\\?;].*)?$");
+	private static final Pattern ABSOLUTE = Pattern.compile("^(/|\\w+:)");
+
+	/**
+	 * Upper bound of prefetched files per compilation.
+	 */
+	private static final int MAX_IMPORTS = 1000;
+
+	private final ResourceLoader loader;
+	private final String charset;
+	private final ExecutorService executor;
+	private final ConcurrentMap<String, CompletableFuture<LoadedResource>> imports = new ConcurrentHashMap<String, CompletableFuture<LoadedResource>>();
+	private final AtomicInteger count = new AtomicInteger();
+	private volatile boolean cancelled;
+
+	ImportPrefetcher(ResourceLoader loader, String charset,
+			ExecutorService executor) {
+		this.loader = loader;
+		this.charset = charset;
+		this.executor = executor;
+	}
+
+	/**
+	 * Starts loading the imports of the given source.
+	 *
+	 * @param location
+	 *            the location of the source or {@code null}.
+	 */
+	void prefetch(String source, String location) {
+		if (cancelled) {
+			return;
+		}
+		String directory = location != null ? location.replaceFirst(
+				"[^/\\\\]*$", "") : "";
+		Matcher m = IMPORT.matcher(source);
+		while (m.find()) {
+			String path = resolve(m.group(1), m.group(3), m.group(5), directory);
+			if (path != null && !imports.containsKey(path)
+					&& count.incrementAndGet() <= MAX_IMPORTS) {
+				submit(path);
+			}
+		}
+	}
+
+	/**
+	 * Reserves the path with a future completed by the load, so that a path
+	 * is loaded at most once.
+	 */
+	private void submit(final String path) {
+		final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+		if (cancelled || imports.putIfAbsent(path, future) != null) {
+			return;
+		}
+		if (loader instanceof AsyncResourceLoader) {
+			((AsyncResourceLoader) loader).loadAsync(path, charset, executor)
+					.whenComplete(new BiConsumer<LoadedResource, Throwable>() {
+						@Override
+						public void accept(LoadedResource resource, Throwable e) {
+							if (e != null) {
+								future.completeExceptionally(e instanceof CompletionException
+										&& e.getCause() != null ? e.getCause() : e);
+							} else {
+								try {
+									prefetch(resource.getContent(), path);
+								} finally {
+									future.complete(resource);
+								}
+							}
+						}
+					});
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					if (future.isDone()) {
+						return;
+					}
+					try {
+						LoadedResource resource = loader.loadResource(path,
+								charset);
+						prefetch(resource.getContent(), path);
+						future.complete(resource);
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	private static String resolve(String options, String url, String quoted,
+			String directory) {
+		String path;
+		if (url != null) {
+			path = url.trim();
+		} else {
+			path = quoted;
+		}
+		if (path.contains("@{")) {
+			return null;
+		}
+		boolean less = options != null && options.contains("less");
+		boolean css = options != null
+				&& (options.contains("css") || options.contains("inline"));
+		if (!less && (css || CSS.matcher(path).find())) {
+			return null;
+		}
+		if (url == null && !less && !EXTENSION.matcher(path).find()) {
+			path += ".less";
+		}
+		if (!ABSOLUTE.matcher(path).find() && directory.length() > 0) {
+			path = directory + path;
+		}
+		return path;
+	}
+
+	/**
+	 * Returns the prefetched resource of a path, waiting for it if needed, or
+	 * {@code null} if the path was not prefetched.
+	 */
+	LoadedResource get(String path) throws IOException {
+		CompletableFuture<LoadedResource> future = imports.get(path);
+		if (future == null) {
+			return null;
+		}
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading " + path, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RejectedExecutionException) {
+				return null;
+			}
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} catch (CancellationException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Cancels the loads nobody asked for. Loads in progress finish, but no
+	 * further imports are prefetched.
+	 */
+	void cancel() {
+		cancelled = true;
+		for (CompletableFuture<LoadedResource> future : imports.values()) {
+			future.cancel(false);
+		}
+	}
+
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+/**
+ * Thrown when a compilation is aborted through its {@link CancellationToken}.
+ */
+public class LessCancelledException extends LessException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final boolean timedOut;
+
+	public LessCancelledException(String message, boolean timedOut) {
+		super(message);
+		this.timedOut = timedOut;
+	}
+
+	/**
+	 * Returns {@code true} if the deadline passed, {@code false} if the
+	 * compilation was cancelled.
+	 */
+	public boolean isTimedOut() {
+		return timedOut;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+
+/**
+ * Creates the Rhino contexts of the engine. Every context observes the
+ * instruction count of the scripts it runs, so that the
+ * {@link CancellationToken} of a compilation can abort it.
+ */
+final class LessContextFactory extends ContextFactory {
+
+	static final LessContextFactory INSTANCE = new LessContextFactory();
+
+	/**
+	 * The number of instructions between checks of the token.
+	 */
+	private static final int INSTRUCTION_THRESHOLD = 10000;
+
+	private LessContextFactory() {
+	}
+
+	/**
+	 * Sets the token checked by the context of the current thread, or
+	 * {@code null} to check none.
+	 */
+	static void setToken(Context cx, CancellationToken token) {
+		if (cx instanceof LessContext) {
+			((LessContext) cx).token = token;
+		}
+	}
+
+	@Override
+	protected Context makeContext() {
+		Context cx = new LessContext(this);
+		cx.setInstructionObserverThreshold(INSTRUCTION_THRESHOLD);
+		return cx;
+	}
+
+	@Override
+	protected void observeInstructionCount(Context cx, int instructionCount) {
+		CancellationToken token = ((LessContext) cx).token;
+		if (token != null) {
+			token.check();
+		}
+	}
+
+	private static class LessContext extends Context {
+
+		private CancellationToken token;
+
+		public LessContext(ContextFactory factory) {
+			super(factory);
+		}
+	}
+
+}
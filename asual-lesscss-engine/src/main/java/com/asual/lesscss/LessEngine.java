@@ -14,51 +14,102 @@
 
 package com.asual.lesscss;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.mozilla.javascript.Context;
-import org.mozilla.javascript.Function;
-import org.mozilla.javascript.JavaScriptException;
-import org.mozilla.javascript.NativeArray;
-import org.mozilla.javascript.Scriptable;
-import org.mozilla.javascript.ScriptableObject;
-import org.mozilla.javascript.UniqueTag;
-import org.mozilla.javascript.tools.shell.Global;
 
+import com.asual.lesscss.loader.CachingResourceLoader;
 import com.asual.lesscss.loader.ChainedResourceLoader;
 import com.asual.lesscss.loader.ClasspathResourceLoader;
+import com.asual.lesscss.loader.ContentDigest;
 import com.asual.lesscss.loader.CssProcessingResourceLoader;
 import com.asual.lesscss.loader.FilesystemResourceLoader;
 import com.asual.lesscss.loader.HTTPResourceLoader;
+import com.asual.lesscss.loader.IndexedClasspathResourceLoader;
 import com.asual.lesscss.loader.JNDIResourceLoader;
 import com.asual.lesscss.loader.ResourceLoader;
 import com.asual.lesscss.loader.UnixNewlinesResourceLoader;
 
 /**
+ * An engine keeps the LESS runtime in a single scope of its
+ * {@link LessRuntime} and is not safe for concurrent use. Use a {@link LessEnginePool} to compile from several
+ * threads.
+ * 
  * @author Rostislav Hristov
  * @author Uriah Carpenter
  * @author Noah Sloan
  */
 public class LessEngine {
 
+	private static final int BUFFER_SIZE = 8192;
+
 	private static LessEngine instance;
 
 	private final Log logger = LogFactory.getLog(getClass());
 
 	private final LessOptions options;
 	private final ResourceLoader loader;
+	private final ImportCache importCache;
+	private final ExecutorService prefetchExecutor;
+	private LessEnginePool pool;
 
-	private Scriptable scope;
-	private Function compile;
+	/**
+	 * Number of compilations between two estimates of the retained size.
+	 */
+	private static final int SIZE_CHECK_INTERVAL = 50;
+
+	/**
+	 * Maximum number of times the wait before retrying a failed rebuild is
+	 * doubled.
+	 */
+	private static final int MAX_RETRY_SHIFT = 6;
+
+	/**
+	 * Number of objects walked by an estimate of the retained size after each
+	 * compilation.
+	 */
+	private static final int SIZE_CHECK_OBJECTS = 10000;
+
+	private static final ExecutorService recycler = newDaemonExecutor(
+			"lesscss-recycler", 1);
+
+	private volatile EngineScope scope;
+	private Future<EngineScope> rebuilt;
+	private LessRuntime.SizeEstimate estimate;
+	private EngineScope estimateScope;
+	private int failedRebuilds;
+	private int retryCompiles;
+	private volatile long recycleCount;
+	private volatile long lastRebuildTime;
+	private volatile long retainedSize = -1;
 
 	public static synchronized LessEngine getInstance() {
 		if (instance == null)
@@ -74,11 +125,23 @@ public class LessEngine {
 		this(options, defaultResourceLoader(options));
 	}
 
-	private static ResourceLoader defaultResourceLoader(LessOptions options) {
-		ResourceLoader resourceLoader = new ChainedResourceLoader(
-				new FilesystemResourceLoader(), new ClasspathResourceLoader(
-						LessEngine.class.getClassLoader()),
-				new JNDIResourceLoader(), new HTTPResourceLoader());
+	static ResourceLoader defaultResourceLoader(LessOptions options) {
+		HTTPResourceLoader httpResourceLoader = new HTTPResourceLoader();
+		httpResourceLoader.setCacheDirectory(options.getHttpCacheDirectory());
+		httpResourceLoader.setOffline(options.isHttpOffline());
+		// Missing paths are remembered briefly, as every import of a .css
+		// file in CSS mode is probed as .less first
+		ClassLoader classLoader = LessEngine.class.getClassLoader();
+		ResourceLoader resourceLoader = new ChainedResourceLoader(1024, 1000,
+				new FilesystemResourceLoader(),
+				options.isClasspathIndex() ? new IndexedClasspathResourceLoader(
+						classLoader) : new ClasspathResourceLoader(classLoader),
+				new JNDIResourceLoader(), httpResourceLoader);
+		if (options.getResourceCacheSize() > 0) {
+			resourceLoader = new CachingResourceLoader(resourceLoader,
+					options.getResourceCacheSize(),
+					options.getResourceCacheTtl(), classLoader);
+		}
 		if (options.isCss()) {
 			return new CssProcessingResourceLoader(resourceLoader);
 		}
@@ -93,46 +156,251 @@ public class LessEngine {
 	 * @see <a href="http://www.envjs.com/doc/guides#running-embed">Embedding EnvJS</a>
 	 */
 	public LessEngine(LessOptions options, ResourceLoader loader) {
+		this(options, loader, options.getImportCacheSize() > 0 ? new ImportCache(
+				options.getImportCacheSize()) : null);
+	}
+
+	/**
+	 * Creates an engine using the given import cache, which may be shared
+	 * with other engines.
+	 */
+	LessEngine(LessOptions options, ResourceLoader loader,
+			ImportCache importCache) {
 		this.options = options;
 		this.loader = loader;
+		this.importCache = importCache;
+		this.prefetchExecutor = options.getImportPrefetchThreads() > 0 ? newPrefetchExecutor(
+				options.getImportPrefetchThreads()) : null;
 		try {
 			logger.debug("Initializing LESS Engine.");
-			ClassLoader classLoader = getClass().getClassLoader();
-			URL less = options.getLess();
-			URL env = classLoader.getResource("META-INF/env.js");
-			URL engine = classLoader.getResource("META-INF/engine.js");
-			URL cssmin = classLoader.getResource("META-INF/cssmin.js");
-			Context cx = Context.enter();
-			logger.debug("Using implementation version: "
-					+ cx.getImplementationVersion());
-			cx.setOptimizationLevel(-1);
-			Global global = new Global();
-			global.init(cx);
-			scope = cx.initStandardObjects(global);
-			cx.evaluateReader(scope, new InputStreamReader(env.openConnection()
-					.getInputStream()), env.getFile(), 1, null);
-			Scriptable lessEnv = (Scriptable) scope.get("lessenv", scope);
-			lessEnv.put("charset", lessEnv, options.getCharset());
-			lessEnv.put("css", lessEnv, options.isCss());
-			lessEnv.put("lineNumbers", lessEnv, options.getLineNumbers());
-			lessEnv.put("optimization", lessEnv, options.getOptimization());
-			lessEnv.put("loader", lessEnv, Context.javaToJS(loader, scope));
-			cx.evaluateReader(scope, new InputStreamReader(less
-					.openConnection().getInputStream()), less.getFile(), 1,
-					null);
-			cx.evaluateReader(scope, new InputStreamReader(cssmin
-					.openConnection().getInputStream()), cssmin.getFile(), 1,
-					null);
-			cx.evaluateReader(scope, new InputStreamReader(engine
-					.openConnection().getInputStream()), engine.getFile(), 1,
-					null);
-			compile = (Function) scope.get("compile", scope);
-			Context.exit();
+			scope = createScope();
 		} catch (Exception e) {
 			logger.error("LESS Engine intialization failed.", e);
 		}
 	}
 
+	/**
+	 * Creates a scope holding the LESS runtime.
+	 */
+	private EngineScope createScope() throws IOException {
+		long time = System.nanoTime();
+		ClassLoader classLoader = getClass().getClassLoader();
+		List<URL> scripts = new ArrayList<URL>();
+		scripts.add(classLoader.getResource("META-INF/env.js"));
+		scripts.add(options.getLess());
+		scripts.add(classLoader.getResource("META-INF/cssmin.js"));
+		scripts.add(classLoader.getResource("META-INF/engine.js"));
+		LessRuntime runtime = options.getRuntime();
+		logger.debug("Using the " + runtime.getName() + " runtime.");
+		return new EngineScope(runtime.createScope(options, scripts),
+				System.nanoTime() - time);
+	}
+
+	/**
+	 * Prefetch threads are daemons and time out when idle, so that an engine
+	 * does not need to be shut down.
+	 */
+	private static ExecutorService newPrefetchExecutor(int threads) {
+		return newDaemonExecutor("lesscss-prefetch", threads);
+	}
+
+	private static ExecutorService newDaemonExecutor(final String name,
+			int threads) {
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+				30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, name + "-"
+								+ count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Replaces the scope holding the LESS runtime with a fresh one, releasing
+	 * whatever state less.js accumulated. The new scope is built in the
+	 * background and the engine keeps compiling with the current scope until
+	 * it is ready. Parsed imports are bound to a scope, so the import cache is
+	 * cleared when the new scope is taken into use.
+	 *
+	 * @see LessOptions#setScopeRecycleCompiles(int)
+	 * @see LessOptions#setScopeRecycleSize(long)
+	 */
+	public synchronized void recycle() {
+		if (rebuilt == null) {
+			logger.debug("Rebuilding the LESS runtime.");
+			rebuilt = recycler.submit(new Callable<EngineScope>() {
+				@Override
+				public EngineScope call() throws Exception {
+					return createScope();
+				}
+			});
+		}
+	}
+
+	/**
+	 * Returns the number of times the scope has been replaced.
+	 */
+	public long getRecycleCount() {
+		return recycleCount;
+	}
+
+	/**
+	 * Returns the number of compilations run with the current scope.
+	 */
+	public int getScopeCompileCount() {
+		EngineScope scope = this.scope;
+		return scope != null ? scope.compiles : 0;
+	}
+
+	/**
+	 * Returns the time in nanoseconds it took to build the current scope.
+	 */
+	public long getLastRebuildTime() {
+		return lastRebuildTime;
+	}
+
+	/**
+	 * Returns the most recent estimate of the memory retained by the scope and
+	 * the import cache, in bytes, or {@code -1} if it has not been estimated.
+	 * The estimate is updated periodically when
+	 * {@link LessOptions#setScopeRecycleSize(long)} is set, walking a part of
+	 * the object graph after each compilation, and by
+	 * {@link #estimateRetainedSize()}.
+	 */
+	public long getRetainedSize() {
+		return retainedSize;
+	}
+
+	/**
+	 * Estimates the memory retained by the scope and the import cache, in
+	 * bytes, by walking their object graph. Like a compilation, it reads the
+	 * objects of the scope, so it must be called from the thread using the
+	 * engine and not while it is compiling. Returns {@code -1} if the runtime
+	 * cannot estimate it.
+	 */
+	public long estimateRetainedSize() {
+		EngineScope scope = this.scope;
+		LessRuntime.SizeEstimate estimate = scope != null ? estimateRetainedSize(scope)
+				: null;
+		if (estimate == null) {
+			return -1;
+		}
+		estimate.walk(Integer.MAX_VALUE);
+		retainedSize = estimate.getSize();
+		return retainedSize;
+	}
+
+	private LessRuntime.SizeEstimate estimateRetainedSize(EngineScope scope) {
+		List<Object> roots = importCache != null ? importCache
+				.roots(scope.scope) : Collections.emptyList();
+		return scope.scope.estimateRetainedSize(roots);
+	}
+
+	/**
+	 * Returns the scope for the next compilation, switching to a rebuilt
+	 * scope if one is ready.
+	 */
+	private EngineScope scope() {
+		Future<EngineScope> future;
+		synchronized (this) {
+			future = rebuilt;
+			if (future == null || !future.isDone()) {
+				return scope;
+			}
+			rebuilt = null;
+		}
+		try {
+			EngineScope scope = future.get();
+			EngineScope previous = this.scope;
+			this.scope = scope;
+			recycleCount++;
+			lastRebuildTime = scope.buildTime;
+			retainedSize = -1;
+			if (importCache != null && previous != null) {
+				importCache.invalidateScope(previous.scope);
+			}
+			logger.debug("Rebuilt the LESS runtime in " + scope.buildTime
+					/ 1000000 + " ms.");
+			synchronized (this) {
+				failedRebuilds = 0;
+				retryCompiles = 0;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// Keep compiling with the current scope and wait twice as many
+			// compilations before each retry
+			int wait;
+			synchronized (this) {
+				wait = SIZE_CHECK_INTERVAL << Math.min(failedRebuilds,
+						MAX_RETRY_SHIFT);
+				retryCompiles = scope.compiles + wait;
+				failedRebuilds++;
+			}
+			logger.error("Unable to rebuild the LESS runtime, retrying after "
+					+ wait + " compilations.", e.getCause());
+		}
+		return scope;
+	}
+
+	/**
+	 * Applies the recycling policy after a compilation. The retained size is
+	 * estimated on the compiling thread, between compilations, so that the
+	 * walk never overlaps with less.js modifying the scope. Every
+	 * {@value #SIZE_CHECK_INTERVAL} compilations a new estimate is started,
+	 * and each compilation walks at most {@value #SIZE_CHECK_OBJECTS} objects
+	 * of it.
+	 */
+	private void recycleIfNeeded(EngineScope scope) {
+		int compiles = ++scope.compiles;
+		int maxCompiles = options.getScopeRecycleCompiles();
+		long maxSize = options.getScopeRecycleSize();
+		synchronized (this) {
+			if (compiles < retryCompiles || rebuilt != null) {
+				return;
+			}
+		}
+		if (maxCompiles > 0 && compiles >= maxCompiles) {
+			recycle();
+			return;
+		}
+		if (maxSize <= 0) {
+			return;
+		}
+		if (estimateScope != scope) {
+			estimate = null;
+		}
+		if (estimate == null && compiles % SIZE_CHECK_INTERVAL == 0) {
+			estimate = estimateRetainedSize(scope);
+			estimateScope = scope;
+		}
+		if (estimate != null && estimate.walk(SIZE_CHECK_OBJECTS)) {
+			retainedSize = estimate.getSize();
+			estimate = null;
+			estimateScope = null;
+			if (retainedSize > maxSize) {
+				recycle();
+			}
+		}
+	}
+
+	/**
+	 * Returns the cache of parsed imports, or {@code null} if it is disabled
+	 * with {@link LessOptions#setImportCacheSize(int)}. The cache is shared
+	 * with the engines of the pool used by {@link #compileAll}.
+	 */
+	public ImportCache getImportCache() {
+		return importCache;
+	}
+
 	public String compile(String input) throws LessException {
 		return compile(input, null, false);
 	}
@@ -143,16 +411,7 @@ public class LessEngine {
 
 	public String compile(String input, String location, boolean compress)
 			throws LessException {
-		try {
-			long time = System.currentTimeMillis();
-			String result = call(compile, new Object[] { input,
-					location == null ? "" : location, compress });
-			logger.debug("The compilation of '" + input + "' took "
-					+ (System.currentTimeMillis() - time) + " ms.");
-			return result;
-		} catch (Exception e) {
-			throw parseLessException(e);
-		}
+		return compileWithResult(input, location, compress).getCss();
 	}
 
 	public String compile(URL input) throws LessException {
@@ -160,38 +419,90 @@ public class LessEngine {
 	}
 
 	public String compile(URL input, boolean compress) throws LessException {
+		return compileWithResult(input, compress).getCss();
+	}
+
+	public String compile(File input) throws LessException {
+		return compile(input, false);
+	}
+
+	public String compile(File input, boolean compress) throws LessException {
+		return compileWithResult(input, compress).getCss();
+	}
+
+	public CompileResult compileWithResult(String input, String location,
+			boolean compress) throws LessException {
+		return compileWithResult(input, location, compress, null);
+	}
+
+	/**
+	 * @param token
+	 *            the token that aborts the compilation or {@code null}.
+	 * @throws LessCancelledException
+	 *             if the token is cancelled or expires.
+	 */
+	public CompileResult compileWithResult(String input, String location,
+			boolean compress, CancellationToken token) throws LessException {
+		long time = System.nanoTime();
+		try {
+			return compiled(location,
+					call(input, location, compress, 0, token), time);
+		} catch (Exception e) {
+			throw failed(location, e, time);
+		}
+	}
+
+	public CompileResult compileWithResult(URL input, boolean compress)
+			throws LessException {
+		return compileWithResult(input, compress, null);
+	}
+
+	/**
+	 * @param token
+	 *            the token that aborts the compilation or {@code null}.
+	 * @throws LessCancelledException
+	 *             if the token is cancelled or expires.
+	 */
+	public CompileResult compileWithResult(URL input, boolean compress,
+			CancellationToken token) throws LessException {
+		long time = System.nanoTime();
+		String location = input.toString();
 		try {
-			long time = System.currentTimeMillis();
-			String location = input.toString();
-			logger.debug("Compiling URL: " + location);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compiling URL: " + location);
+			}
 			String source = loader.load(location, options.getCharset());
-			String result = call(compile, new Object[] { source, location,
-					compress });
-			logger.debug("The compilation of '" + input + "' took "
-					+ (System.currentTimeMillis() - time) + " ms.");
-			return result;
+			return compiled(location, call(source, location, compress,
+					System.nanoTime() - time, token), time);
 		} catch (Exception e) {
-			throw parseLessException(e);
+			throw failed(location, e, time);
 		}
 	}
 
-	public String compile(File input) throws LessException {
-		return compile(input, false);
+	public CompileResult compileWithResult(File input, boolean compress)
+			throws LessException {
+		return compileWithResult(input, compress, null);
 	}
 
-	public String compile(File input, boolean compress) throws LessException {
+	/**
+	 * @param token
+	 *            the token that aborts the compilation or {@code null}.
+	 * @throws LessCancelledException
+	 *             if the token is cancelled or expires.
+	 */
+	public CompileResult compileWithResult(File input, boolean compress,
+			CancellationToken token) throws LessException {
+		long time = System.nanoTime();
+		String location = input.getAbsolutePath();
 		try {
-			long time = System.currentTimeMillis();
-			String location = input.getAbsolutePath();
-			logger.debug("Compiling File: " + "file:" + location);
+			if (logger.isDebugEnabled()) {
+				logger.debug("Compiling File: " + "file:" + location);
+			}
 			String source = loader.load(location, options.getCharset());
-			String result = call(compile, new Object[] { source, location,
-					compress });
-			logger.debug("The compilation of '" + input + "' took "
-					+ (System.currentTimeMillis() - time) + " ms.");
-			return result;
+			return compiled(location, call(source, location, compress,
+					System.nanoTime() - time, token), time);
 		} catch (Exception e) {
-			throw parseLessException(e);
+			throw failed(location, e, time);
 		}
 	}
 
@@ -202,68 +513,280 @@ public class LessEngine {
 
 	public void compile(File input, File output, boolean compress)
 			throws LessException, IOException {
+		compile(input.toPath(), output.toPath(), compress);
+	}
+
+	public void compile(Path input, Path output) throws LessException,
+			IOException {
+		compile(input, output, false);
+	}
+
+	public void compile(Path input, Path output, boolean compress)
+			throws LessException, IOException {
+		compileWithResult(input, output, compress);
+	}
+
+	/**
+	 * Compiles a file and encodes the result straight into the output file
+	 * using the configured charset.
+	 */
+	public CompileResult compileWithResult(Path input, Path output,
+			boolean compress) throws LessException {
+		return compileWithResult(input, output, compress, null);
+	}
+
+	/**
+	 * Compiles a file and encodes the result straight into the output file.
+	 * The output file is left untouched if the compilation is aborted.
+	 *
+	 * @param token
+	 *            the token that aborts the compilation or {@code null}.
+	 * @throws LessCancelledException
+	 *             if the token is cancelled or expires.
+	 */
+	public CompileResult compileWithResult(Path input, Path output,
+			boolean compress, CancellationToken token) throws LessException {
 		try {
-			String content = compile(input, compress);
-			if (!output.exists()) {
-				output.createNewFile();
+			CompileResult result = compileWithResult(input.toFile(), compress,
+					token);
+			FileChannel channel = FileChannel.open(output,
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING);
+			try {
+				write(result.getCss(), channel);
+			} finally {
+				channel.close();
 			}
-			BufferedWriter bw = new BufferedWriter(new FileWriter(output));
-			bw.write(content);
-			bw.close();
+			return result;
+		} catch (LessException e) {
+			throw e;
 		} catch (Exception e) {
 			throw parseLessException(e);
 		}
 	}
 
-	private String call(Function fn, Object[] args) {
-		return (String) Context.call(null, fn, scope, scope, args);
+	public BatchResult compileAll(Collection<Path> inputs, OutputMapper mapper,
+			int parallelism) throws LessException {
+		return compileAll(inputs, mapper, parallelism, false);
+	}
+
+	/**
+	 * Compiles a set of files concurrently on a pool of engines sharing the
+	 * options, the resource loader and the import cache of this engine. A
+	 * failed file does not abort the batch. The pool is created on the first
+	 * call and kept for the following ones with the same parallelism.
+	 *
+	 * @param parallelism
+	 *            the maximum number of concurrent compilations.
+	 * @see LessEnginePool#compileAll(Collection, OutputMapper, boolean)
+	 */
+	public BatchResult compileAll(Collection<Path> inputs, OutputMapper mapper,
+			int parallelism, boolean compress) throws LessException {
+		return pool(parallelism).compileAll(inputs, mapper, compress);
 	}
 
-	private boolean hasProperty(Scriptable value, String name) {
-		Object property = ScriptableObject.getProperty(value, name);
-		return property != null && !property.equals(UniqueTag.NOT_FOUND);
+	private synchronized LessEnginePool pool(int parallelism) {
+		if (pool == null || pool.getSize() != parallelism) {
+			if (pool != null) {
+				pool.invalidateImports();
+			}
+			pool = new LessEnginePool(options, loader, parallelism,
+					importCache);
+		}
+		return pool;
 	}
 
-	private LessException parseLessException(Exception root)
-			throws LessException {
-		logger.debug("Parsing LESS Exception", root);
-		if (root instanceof JavaScriptException) {
-			Scriptable value = (Scriptable) ((JavaScriptException) root)
-					.getValue();
-			String type = ScriptableObject.getProperty(value, "type")
-					.toString() + " Error";
-			String message = ScriptableObject.getProperty(value, "message")
-					.toString();
-			String filename = "";
-			if (hasProperty(value, "filename")) {
-				filename = ScriptableObject.getProperty(value, "filename")
-						.toString();
+	/**
+	 * Discards the parse trees of the current scope from the import cache.
+	 */
+	void invalidateImports() {
+		EngineScope scope = this.scope;
+		if (importCache != null && scope != null) {
+			importCache.invalidateScope(scope.scope);
+		}
+	}
+
+	/**
+	 * Compiles the content of a reader and writes the result to a writer.
+	 * Neither stream is closed.
+	 *
+	 * @param location
+	 *            the location used to resolve relative imports or
+	 *            {@code null}.
+	 */
+	public void compile(Reader input, String location, Writer output,
+			boolean compress) throws LessException, IOException {
+		try {
+			String content = compile(read(input), location, compress);
+			char[] b = new char[BUFFER_SIZE];
+			for (int i = 0, length = content.length(); i < length; i += b.length) {
+				int c = Math.min(b.length, length - i);
+				content.getChars(i, i + c, b, 0);
+				output.write(b, 0, c);
 			}
-			int line = -1;
-			if (hasProperty(value, "line")) {
-				line = ((Double) ScriptableObject.getProperty(value, "line"))
-						.intValue();
+			output.flush();
+		} catch (Exception e) {
+			throw parseLessException(e);
+		}
+	}
+
+	private String read(Reader reader) throws IOException {
+		StringBuilder sb = new StringBuilder(BUFFER_SIZE);
+		char[] b = new char[BUFFER_SIZE];
+		int c;
+		while ((c = reader.read(b)) >= 0) {
+			sb.append(b, 0, c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Encodes the content in chunks, wrapping rather than copying it.
+	 */
+	private void write(CharSequence content, WritableByteChannel channel)
+			throws IOException {
+		CharsetEncoder encoder = Charset.forName(options.getCharset())
+				.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer in = CharBuffer.wrap(content);
+		ByteBuffer out = ByteBuffer.allocate(BUFFER_SIZE);
+		CoderResult result;
+		do {
+			result = encoder.encode(in, out, true);
+			if (result.isError()) {
+				result.throwException();
 			}
-			int column = -1;
-			if (hasProperty(value, "column")) {
-				column = ((Double) ScriptableObject
-						.getProperty(value, "column")).intValue();
+			drain(out, channel);
+		} while (result.isOverflow());
+		do {
+			result = encoder.flush(out);
+			drain(out, channel);
+		} while (result.isOverflow());
+	}
+
+	private static void drain(ByteBuffer buffer, WritableByteChannel channel)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Logs a successful compilation and notifies the compile listeners.
+	 */
+	private CompileResult compiled(String location, CompileResult result,
+			long time) {
+		if (logger.isDebugEnabled()) {
+			logger.debug("The compilation of '"
+					+ (location != null ? location : "<string>") + "' took "
+					+ (System.nanoTime() - time) / 1000000 + " ms.");
+		}
+		for (CompileListener listener : options.getCompileListeners()) {
+			try {
+				listener.compiled(location, result);
+			} catch (RuntimeException e) {
+				logger.warn("Compile listener " + listener + " failed.", e);
 			}
-			List<String> extractList = new ArrayList<String>();
-			if (hasProperty(value, "extract")) {
-				NativeArray extract = (NativeArray) ScriptableObject
-						.getProperty(value, "extract");
-				for (int i = 0; i < extract.getLength(); i++) {
-					if (extract.get(i, extract) instanceof String) {
-						extractList.add(((String) extract.get(i, extract))
-								.replace("\t", " "));
-					}
-				}
+		}
+		return result;
+	}
+
+	/**
+	 * Converts the cause of a failed compilation and notifies the compile
+	 * listeners.
+	 */
+	private LessException failed(String location, Exception e, long time) {
+		LessException exception;
+		try {
+			exception = parseLessException(e);
+		} catch (LessException le) {
+			exception = le;
+		}
+		time = System.nanoTime() - time;
+		for (CompileListener listener : options.getCompileListeners()) {
+			try {
+				listener.failed(location, exception, time);
+			} catch (RuntimeException re) {
+				logger.warn("Compile listener " + listener + " failed.", re);
 			}
-			throw new LessException(message, type, filename, line, column,
-					extractList);
+		}
+		return exception;
+	}
+
+	private CompileResult call(String source, String location,
+			boolean compress, long loadTime, CancellationToken token)
+			throws LessException {
+		OutputCache outputCache = options.getOutputCache();
+		String key = null;
+		if (outputCache != null) {
+			key = ContentDigest.sha1(ContentDigest.sha1(source) + "\n" + location + "\n"
+					+ compress + "\n" + options.getCharset() + "\n"
+					+ options.isCss() + "\n" + options.getLineNumbers() + "\n"
+					+ options.getOptimization() + "\n" + options.getLess()
+					+ "\n" + options.isJsMinifier());
+			CompileResult result = outputCache.get(key, loader,
+					options.getCharset());
+			if (result != null) {
+				long[] times = new long[CompileResult.Phase.values().length];
+				times[CompileResult.Phase.LOAD.ordinal()] = loadTime;
+				return new CompileResult(result.getCss(),
+						result.getImportHashes(), times, source.length(), true);
+			}
+		}
+		EngineScope scope = scope();
+		Compilation compilation = new Compilation(loader,
+				options.getCharset(), importCache, scope.scope,
+				prefetchExecutor);
+		compilation.setTime(CompileResult.Phase.LOAD, loadTime);
+		compilation.addInputLength(source.length());
+		compilation.setToken(token);
+		compilation.prefetch(source, location);
+		String css;
+		try {
+			css = scope.scope.compile(compilation, source,
+					location == null ? "" : location,
+					compress && options.isJsMinifier());
+		} finally {
+			compilation.finish();
+			recycleIfNeeded(scope);
+		}
+		if (compress && !options.isJsMinifier()) {
+			long time = System.nanoTime();
+			css = CssMinifier.minify(css);
+			compilation.setTime(CompileResult.Phase.MINIFY, System.nanoTime()
+					- time);
+		}
+		CompileResult result = compilation.toResult(css);
+		if (outputCache != null) {
+			outputCache.put(key, css, result.getImportHashes(),
+					compilation.getVersions());
+		}
+		return result;
+	}
+
+	private LessException parseLessException(Exception root)
+			throws LessException {
+		if (root instanceof LessException) {
+			return (LessException) root;
 		}
 		throw new LessException(root);
 	}
 
+	/**
+	 * A scope holding the LESS runtime and its compile count.
+	 */
+	private static class EngineScope {
+
+		private final LessRuntime.Scope scope;
+		private final long buildTime;
+		private volatile int compiles;
+
+		public EngineScope(LessRuntime.Scope scope, long buildTime) {
+			this.scope = scope;
+			this.buildTime = buildTime;
+		}
+	}
+
 }
@@ -44,6 +44,18 @@ public class LessEngineCli {
 				"Flag that enables compilation of .css files.");
 		cmdOptions.addOption(LessOptions.LESS_OPTION, true,
 				"Path to a custom less.js for Rhino version.");
+		cmdOptions.addOption(LessOptions.RHINO_OPTIMIZATION_OPTION, true,
+				"Rhino optimization level from -1 (interpreted) to 9. "
+						+ "Defaults to -1.");
+		cmdOptions.addOption(LessOptions.SCRIPT_CACHE_OPTION, true,
+				"Directory for caching the compiled LESS runtime.");
+		cmdOptions.addOption(LessOptions.OUTPUT_CACHE_OPTION, true,
+				"Directory for caching compiled stylesheets.");
+		cmdOptions.addOption(LessOptions.RUNTIME_OPTION, true,
+				"JavaScript runtime, rhino or the name of a javax.script "
+						+ "engine such as nashorn. Defaults to rhino.");
+		cmdOptions.addOption(LessOptions.JS_MINIFIER_OPTION, false,
+				"Flag that minifies compressed CSS with cssmin.js.");
 		try {
 			CommandLineParser cmdParser = new GnuParser();
 			CommandLine cmdLine = cmdParser.parse(cmdOptions, args);
@@ -58,11 +70,33 @@ public class LessEngineCli {
 			if (cmdLine.hasOption(LessOptions.CSS_OPTION)) {
 				options.setCss(true);
 			}
+			if (cmdLine.hasOption(LessOptions.JS_MINIFIER_OPTION)) {
+				options.setJsMinifier(true);
+			}
 			if (cmdLine.hasOption(LessOptions.LESS_OPTION)) {
 				options.setLess(new File(cmdLine
 						.getOptionValue(LessOptions.LESS_OPTION)).toURI()
 						.toURL());
 			}
+			if (cmdLine.hasOption(LessOptions.RHINO_OPTIMIZATION_OPTION)) {
+				options.setRhinoOptimization(Integer.valueOf(cmdLine
+						.getOptionValue(LessOptions.RHINO_OPTIMIZATION_OPTION)));
+			}
+			if (cmdLine.hasOption(LessOptions.SCRIPT_CACHE_OPTION)) {
+				options.setScriptCacheDirectory(new File(cmdLine
+						.getOptionValue(LessOptions.SCRIPT_CACHE_OPTION)));
+			}
+			if (cmdLine.hasOption(LessOptions.OUTPUT_CACHE_OPTION)) {
+				options.setOutputCache(new OutputCache(0, new File(cmdLine
+						.getOptionValue(LessOptions.OUTPUT_CACHE_OPTION))));
+			}
+			if (cmdLine.hasOption(LessOptions.RUNTIME_OPTION)) {
+				String runtime = cmdLine
+						.getOptionValue(LessOptions.RUNTIME_OPTION);
+				if (!"rhino".equals(runtime)) {
+					options.setRuntime(new ScriptEngineRuntime(runtime));
+				}
+			}
 			LessEngine engine = new LessEngine(options);
 			if (System.in.available() != 0) {
 				BufferedReader in = new BufferedReader(new InputStreamReader(
@@ -96,6 +130,8 @@ public class LessEngineCli {
 			System.err.println("Error opening input file.");
 		} catch (ParseException pe) {
 			System.err.println("Error parsing arguments.");
+		} catch (IllegalArgumentException iae) {
+			System.err.println(iae.getMessage());
 		}
 		String[] paths = LessEngine.class.getProtectionDomain().getCodeSource()
 				.getLocation().toURI().getPath().split(File.separator);
@@ -0,0 +1,324 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.asual.lesscss.loader.ResourceLoader;
+
+/**
+ * A fixed size pool of {@link LessEngine} instances.
+ *
+ * A single {@link LessEngine} keeps its LESS runtime in one Rhino scope and
+ * must not be used by more than one thread at a time. The pool hands out
+ * isolated engines, each with its own scope and importer state, so that up to
+ * {@link #getSize()} compilations can run concurrently. Engines are created
+ * lazily, the first time they are needed, and are reused afterwards. They
+ * share one {@link ImportCache}, in which each engine only finds the
+ * stylesheets its own scope parsed.
+ *
+ * <pre>
+ * LessEngine engine = pool.acquire();
+ * try {
+ * 	css = engine.compile(file);
+ * } finally {
+ * 	pool.release(engine);
+ * }
+ * </pre>
+ */
+public class LessEnginePool {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final LessOptions options;
+	private final ResourceLoader loader;
+	private final int size;
+	private final ImportCache importCache;
+
+	private final Semaphore permits;
+	private final ConcurrentLinkedQueue<LessEngine> idle = new ConcurrentLinkedQueue<LessEngine>();
+	private final Set<LessEngine> engines = Collections
+			.newSetFromMap(new ConcurrentHashMap<LessEngine, Boolean>());
+	private final Set<LessEngine> checkedOut = Collections
+			.newSetFromMap(new ConcurrentHashMap<LessEngine, Boolean>());
+
+	/**
+	 * Creates a pool with default options and one engine per available
+	 * processor.
+	 */
+	public LessEnginePool() {
+		this(new LessOptions());
+	}
+
+	/**
+	 * Creates a pool with one engine per available processor.
+	 */
+	public LessEnginePool(LessOptions options) {
+		this(options, Runtime.getRuntime().availableProcessors());
+	}
+
+	public LessEnginePool(LessOptions options, int size) {
+		this(options, LessEngine.defaultResourceLoader(options), size);
+	}
+
+	/**
+	 * Creates a new pool.
+	 *
+	 * @param options
+	 *            options used for every engine of the pool.
+	 * @param loader
+	 *            resource loader shared by every engine of the pool. It must
+	 *            be safe for concurrent use.
+	 * @param size
+	 *            maximum number of engines.
+	 */
+	public LessEnginePool(LessOptions options, ResourceLoader loader, int size) {
+		this(options, loader, size,
+				options.getImportCacheSize() > 0 ? new ImportCache(options
+						.getImportCacheSize()) : null);
+	}
+
+	LessEnginePool(LessOptions options, ResourceLoader loader, int size,
+			ImportCache importCache) {
+		if (size < 1) {
+			throw new IllegalArgumentException("Invalid pool size " + size);
+		}
+		this.options = options;
+		this.loader = loader;
+		this.size = size;
+		this.importCache = importCache;
+		this.permits = new Semaphore(size, true);
+	}
+
+	/**
+	 * Returns the maximum number of engines in the pool.
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Returns the cache of parsed imports shared by the engines, or
+	 * {@code null} if it is disabled.
+	 */
+	public ImportCache getImportCache() {
+		return importCache;
+	}
+
+	/**
+	 * Returns the number of engines that are currently checked out.
+	 */
+	public int getActiveCount() {
+		return size - permits.availablePermits();
+	}
+
+	/**
+	 * Checks out an engine, waiting until one becomes available. The engine
+	 * must be returned with {@link #release(LessEngine)}.
+	 */
+	public LessEngine acquire() throws InterruptedException {
+		permits.acquire();
+		return checkout();
+	}
+
+	/**
+	 * Checks out an engine, waiting at most the given time for one to become
+	 * available.
+	 *
+	 * @return an engine or {@code null} if the timeout elapsed.
+	 */
+	public LessEngine acquire(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		if (!permits.tryAcquire(timeout, unit)) {
+			return null;
+		}
+		return checkout();
+	}
+
+	/**
+	 * Returns a previously acquired engine to the pool.
+	 * 
+	 * @throws IllegalStateException
+	 *             if the engine has already been released.
+	 */
+	public void release(LessEngine engine) {
+		if (engine == null || !engines.contains(engine)) {
+			throw new IllegalArgumentException(
+					"The engine does not belong to this pool.");
+		}
+		if (!checkedOut.remove(engine)) {
+			throw new IllegalStateException(
+					"The engine has already been released.");
+		}
+		idle.offer(engine);
+		permits.release();
+	}
+
+	public String compile(String input, String location, boolean compress)
+			throws LessException {
+		LessEngine engine = acquireOrFail();
+		try {
+			return engine.compile(input, location, compress);
+		} finally {
+			release(engine);
+		}
+	}
+
+	public String compile(URL input, boolean compress) throws LessException {
+		LessEngine engine = acquireOrFail();
+		try {
+			return engine.compile(input, compress);
+		} finally {
+			release(engine);
+		}
+	}
+
+	public String compile(File input, boolean compress) throws LessException {
+		LessEngine engine = acquireOrFail();
+		try {
+			return engine.compile(input, compress);
+		} finally {
+			release(engine);
+		}
+	}
+
+	public void compile(File input, File output, boolean compress)
+			throws LessException, IOException {
+		LessEngine engine = acquireOrFail();
+		try {
+			engine.compile(input, output, compress);
+		} finally {
+			release(engine);
+		}
+	}
+
+	/**
+	 * Compiles a set of files, running up to {@link #getSize()} compilations
+	 * concurrently. Missing output directories are created. A failed file is
+	 * recorded in the result and does not abort the batch.
+	 */
+	public BatchResult compileAll(Collection<Path> inputs,
+			final OutputMapper mapper, final boolean compress)
+			throws LessException {
+		final BatchResult batch = new BatchResult();
+		long time = System.nanoTime();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(size,
+				Math.max(inputs.size(), 1)));
+		try {
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for (final Path input : inputs) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							batch.success(input, compile(input, mapper.map(input),
+									compress));
+						} catch (LessException e) {
+							batch.failure(input, e);
+						} catch (Exception e) {
+							batch.failure(input, new LessException(e));
+						}
+					}
+				}));
+			}
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
+			throw new LessException("Interrupted while compiling a batch.", e);
+		} catch (ExecutionException e) {
+			throw new LessException(e.getCause());
+		} finally {
+			executor.shutdown();
+		}
+		batch.setElapsedTime(System.nanoTime() - time);
+		logger.debug("Compiled " + inputs.size() + " files in "
+				+ batch.getElapsedTime() / 1000000 + " ms.");
+		return batch;
+	}
+
+	private CompileResult compile(Path input, Path output, boolean compress)
+			throws LessException, IOException {
+		Path parent = output.toAbsolutePath().getParent();
+		if (parent != null) {
+			Files.createDirectories(parent);
+		}
+		LessEngine engine = acquireOrFail();
+		try {
+			return engine.compileWithResult(input, output, compress);
+		} finally {
+			release(engine);
+		}
+	}
+
+	/**
+	 * Discards the parse trees of every engine from the import cache.
+	 */
+	void invalidateImports() {
+		for (LessEngine engine : engines) {
+			engine.invalidateImports();
+		}
+	}
+
+	private LessEngine acquireOrFail() throws LessException {
+		try {
+			return acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new LessException("Interrupted while waiting for an engine.",
+					e);
+		}
+	}
+
+	private LessEngine checkout() {
+		LessEngine engine = idle.poll();
+		if (engine == null) {
+			try {
+				logger.debug("Creating pooled LESS Engine "
+						+ (engines.size() + 1) + " of " + size + ".");
+				engine = new LessEngine(options, loader, importCache);
+				engines.add(engine);
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		}
+		checkedOut.add(engine);
+		return engine;
+	}
+
+}
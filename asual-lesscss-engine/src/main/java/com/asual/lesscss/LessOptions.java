@@ -14,7 +14,10 @@
 
 package com.asual.lesscss;
 
+import java.io.File;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * @author Rostislav Hristov
@@ -30,6 +33,11 @@ public class LessOptions {
 	public static final String LINE_NUMBERS_MEDIA_QUERY = "mediaquery";
 	public static final String LINE_NUMBERS_ALL = "all";
 	public static final String OPTIMIZATION_OPTION = "optimization";
+	public static final String RHINO_OPTIMIZATION_OPTION = "rhino-optimization";
+	public static final String SCRIPT_CACHE_OPTION = "script-cache";
+	public static final String OUTPUT_CACHE_OPTION = "output-cache";
+	public static final String RUNTIME_OPTION = "runtime";
+	public static final String JS_MINIFIER_OPTION = "js-minifier";
 
 	private String charset = "UTF-8";
 	private Boolean compress = false;
@@ -37,6 +45,21 @@ public class LessOptions {
 	private URL less = getClass().getClassLoader().getResource("META-INF/less-1.6.0.js");
 	private String lineNumbers;
 	private Integer optimization = 3;
+	private Integer rhinoOptimization = -1;
+	private File scriptCacheDirectory;
+	private int importCacheSize;
+	private OutputCache outputCache;
+	private long resourceCacheSize;
+	private long resourceCacheTtl;
+	private File httpCacheDirectory;
+	private boolean httpOffline;
+	private int importPrefetchThreads;
+	private boolean classpathIndex;
+	private int scopeRecycleCompiles;
+	private long scopeRecycleSize;
+	private LessRuntime runtime = new RhinoRuntime();
+	private boolean jsMinifier;
+	private final List<CompileListener> compileListeners = new CopyOnWriteArrayList<CompileListener>();
 
 	public String getCharset() {
 		return charset;
@@ -85,4 +108,206 @@ public class LessOptions {
 	public void setOptimization(Integer optimization) {
 		this.optimization = optimization;
 	}
+
+	/**
+	 * Rhino optimization level used for the LESS runtime. {@code -1} runs the
+	 * scripts in interpreted mode, {@code 0} to {@code 9} compile them to JVM
+	 * bytecode, which is slower to initialize but faster once warmed up.
+	 */
+	public Integer getRhinoOptimization() {
+		return rhinoOptimization;
+	}
+
+	public void setRhinoOptimization(Integer rhinoOptimization) {
+		if (rhinoOptimization < -1 || rhinoOptimization > 9) {
+			throw new IllegalArgumentException(
+					"Invalid Rhino optimization level " + rhinoOptimization);
+		}
+		this.rhinoOptimization = rhinoOptimization;
+	}
+
+	/**
+	 * Directory where the compiled LESS runtime is cached between processes,
+	 * or {@code null} to cache it in memory only.
+	 */
+	public File getScriptCacheDirectory() {
+		return scriptCacheDirectory;
+	}
+
+	public void setScriptCacheDirectory(File scriptCacheDirectory) {
+		this.scriptCacheDirectory = scriptCacheDirectory;
+	}
+
+	/**
+	 * Maximum number of parsed imports each engine keeps between
+	 * compilations, {@code 0} (the default) disables the cache. Only imported
+	 * stylesheets without {@code @import}s of their own are cached.
+	 */
+	public int getImportCacheSize() {
+		return importCacheSize;
+	}
+
+	public void setImportCacheSize(int importCacheSize) {
+		this.importCacheSize = importCacheSize;
+	}
+
+	/**
+	 * Cache of compiled stylesheets, or {@code null} to always compile.
+	 */
+	public OutputCache getOutputCache() {
+		return outputCache;
+	}
+
+	public void setOutputCache(OutputCache outputCache) {
+		this.outputCache = outputCache;
+	}
+
+	/**
+	 * Maximum number of characters of loaded stylesheets the default resource
+	 * loader keeps in memory, {@code 0} disables the cache.
+	 *
+	 * @see com.asual.lesscss.loader.CachingResourceLoader
+	 */
+	public long getResourceCacheSize() {
+		return resourceCacheSize;
+	}
+
+	public void setResourceCacheSize(long resourceCacheSize) {
+		this.resourceCacheSize = resourceCacheSize;
+	}
+
+	/**
+	 * Time to live in milliseconds of cached stylesheets that cannot be
+	 * validated against their source.
+	 */
+	public long getResourceCacheTtl() {
+		return resourceCacheTtl;
+	}
+
+	public void setResourceCacheTtl(long resourceCacheTtl) {
+		this.resourceCacheTtl = resourceCacheTtl;
+	}
+
+	/**
+	 * Directory where stylesheets loaded over HTTP are cached and
+	 * revalidated with conditional requests, or {@code null} to always load
+	 * them.
+	 */
+	public File getHttpCacheDirectory() {
+		return httpCacheDirectory;
+	}
+
+	public void setHttpCacheDirectory(File httpCacheDirectory) {
+		this.httpCacheDirectory = httpCacheDirectory;
+	}
+
+	/**
+	 * Whether cached HTTP stylesheets are used when the server cannot be
+	 * reached.
+	 */
+	public boolean isHttpOffline() {
+		return httpOffline;
+	}
+
+	public void setHttpOffline(boolean httpOffline) {
+		this.httpOffline = httpOffline;
+	}
+
+	/**
+	 * Number of threads each engine uses to load the imports of a stylesheet
+	 * in parallel before they are parsed, {@code 0} disables prefetching. The
+	 * resource loader must be safe for concurrent use.
+	 */
+	public int getImportPrefetchThreads() {
+		return importPrefetchThreads;
+	}
+
+	public void setImportPrefetchThreads(int importPrefetchThreads) {
+		this.importPrefetchThreads = importPrefetchThreads;
+	}
+
+	/**
+	 * Whether stylesheets on the class path are looked up in an index of the
+	 * class path jars and directories rather than through the class loader.
+	 * 
+	 * @see com.asual.lesscss.loader.IndexedClasspathResourceLoader
+	 */
+	public boolean isClasspathIndex() {
+		return classpathIndex;
+	}
+
+	public void setClasspathIndex(boolean classpathIndex) {
+		this.classpathIndex = classpathIndex;
+	}
+
+	/**
+	 * Number of compilations after which an engine replaces the scope holding
+	 * the LESS runtime, {@code 0} never recycles the scope.
+	 * 
+	 * @see LessEngine#recycle()
+	 */
+	public int getScopeRecycleCompiles() {
+		return scopeRecycleCompiles;
+	}
+
+	public void setScopeRecycleCompiles(int scopeRecycleCompiles) {
+		this.scopeRecycleCompiles = scopeRecycleCompiles;
+	}
+
+	/**
+	 * Estimated size in bytes of the scope and the import cache above which an
+	 * engine replaces the scope holding the LESS runtime, {@code 0} never
+	 * recycles the scope. The size is estimated periodically and includes the
+	 * LESS runtime itself.
+	 * 
+	 * @see LessEngine#estimateRetainedSize()
+	 */
+	public long getScopeRecycleSize() {
+		return scopeRecycleSize;
+	}
+
+	public void setScopeRecycleSize(long scopeRecycleSize) {
+		this.scopeRecycleSize = scopeRecycleSize;
+	}
+
+	/**
+	 * Listeners notified of every compilation of the engines using these
+	 * options.
+	 */
+	public List<CompileListener> getCompileListeners() {
+		return compileListeners;
+	}
+
+	public void addCompileListener(CompileListener listener) {
+		compileListeners.add(listener);
+	}
+
+	public void removeCompileListener(CompileListener listener) {
+		compileListeners.remove(listener);
+	}
+
+	/**
+	 * The JavaScript runtime that runs the LESS compiler, {@link RhinoRuntime}
+	 * by default.
+	 */
+	public LessRuntime getRuntime() {
+		return runtime;
+	}
+
+	public void setRuntime(LessRuntime runtime) {
+		this.runtime = runtime;
+	}
+
+	/**
+	 * Whether compressed output is minified by {@code cssmin.js} in the
+	 * JavaScript runtime rather than by {@link CssMinifier}, which produces the
+	 * same output.
+	 */
+	public boolean isJsMinifier() {
+		return jsMinifier;
+	}
+
+	public void setJsMinifier(boolean jsMinifier) {
+		this.jsMinifier = jsMinifier;
+	}
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A JavaScript runtime that runs the LESS compiler.
+ *
+ * The runtime evaluates {@code env.js}, {@code less.js}, {@code cssmin.js}
+ * and {@code engine.js} into a new {@link Scope} and calls the
+ * {@code compile(source, path, compress)} function defined by
+ * {@code engine.js} with a {@code this} object whose {@code lessenv} property
+ * holds the {@code charset}, {@code css}, {@code lineNumbers} and
+ * {@code optimization} options and the {@link Compilation} as
+ * {@code compilation}.
+ *
+ * @see LessOptions#setRuntime(LessRuntime)
+ * @see RhinoRuntime
+ * @see ScriptEngineRuntime
+ */
+public interface LessRuntime {
+
+	/**
+	 * Returns a short name of the runtime, e.g. for log messages.
+	 */
+	String getName();
+
+	/**
+	 * Creates a new scope by evaluating the given scripts in order.
+	 */
+	Scope createScope(LessOptions options, List<URL> scripts)
+			throws IOException;
+
+	/**
+	 * A scope holding the LESS runtime. A scope is used by one thread at a
+	 * time.
+	 */
+	interface Scope {
+
+		/**
+		 * Compiles a stylesheet. The scope calls {@link Compilation#check()}
+		 * before it runs the compiler and throws
+		 * {@link Compilation#getFailure(Throwable)} if the compiler fails, so
+		 * that LESS errors reported through {@link Compilation#error} are
+		 * thrown as they were reported.
+		 *
+		 * @throws LessCancelledException
+		 *             if the token of the compilation is cancelled or
+		 *             expires.
+		 */
+		String compile(Compilation compilation, String source,
+				String location, boolean compress) throws LessException;
+
+		/**
+		 * Starts an estimate of the memory retained by the scope and the given
+		 * objects created by it, or returns {@code null} if the runtime cannot
+		 * estimate it. The estimate reads the objects of the scope, so it is
+		 * advanced by the thread using the scope, between compilations.
+		 */
+		SizeEstimate estimateRetainedSize(Collection<Object> roots);
+	}
+
+	/**
+	 * An estimate of the memory retained by a scope, computed in steps.
+	 */
+	interface SizeEstimate {
+
+		/**
+		 * Walks at most the given number of objects and returns whether the
+		 * estimate is complete.
+		 */
+		boolean walk(int objects);
+
+		/**
+		 * Returns the estimated size in bytes, which is final once
+		 * {@link #walk(int)} returned {@code true}.
+		 */
+		long getSize();
+	}
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.asual.lesscss.loader.LoadedResource;
+import com.asual.lesscss.loader.ResourceLoader;
+
+/**
+ * A content-addressed cache of compiled stylesheets.
+ * 
+ * Entries are keyed by a hash of the entry source, its location, the compress
+ * flag and the {@link LessOptions} that affect the output. Each entry records
+ * the content hashes of every file it imported, directly or transitively, and
+ * is only returned while all of them are unchanged, so a repeated compilation
+ * of unchanged inputs never reaches the LESS runtime. Next to each hash it
+ * records the {@link LoadedResource#getVersion() version} of the import, and
+ * an import is only hashed again when its loader reports no version or a
+ * different one. The cache keeps a
+ * bounded number of entries in memory and, if a directory is given, an
+ * unbounded second tier on disk.
+ * 
+ * An instance is safe for concurrent use and may be shared by several engines
+ * through {@link LessOptions#setOutputCache(OutputCache)}.
+ */
+public class OutputCache {
+
+	private static final String FORMAT_VERSION = "2";
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	private final int maxSize;
+	private final File directory;
+	private final Map<String, Entry> entries;
+
+	private long hits;
+	private long misses;
+
+	/**
+	 * Creates a memory-only cache.
+	 * 
+	 * @param maxSize
+	 *            maximum number of compiled stylesheets kept in memory.
+	 */
+	public OutputCache(int maxSize) {
+		this(maxSize, null);
+	}
+
+	/**
+	 * Creates a new cache.
+	 * 
+	 * @param maxSize
+	 *            maximum number of compiled stylesheets kept in memory.
+	 * @param directory
+	 *            directory for the disk tier, or {@code null}.
+	 */
+	public OutputCache(final int maxSize, File directory) {
+		this.maxSize = maxSize;
+		this.directory = directory != null ? new File(directory, "v"
+				+ FORMAT_VERSION) : null;
+		this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Returns the cached result for the given key if every recorded import
+	 * still has the same content, or {@code null}.
+	 */
+	CompileResult get(String key, ResourceLoader loader, String charset) {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry == null) {
+			entry = read(key);
+		}
+		Entry valid = entry != null ? validate(entry, loader, charset) : null;
+		if (valid != null) {
+			synchronized (this) {
+				entries.put(key, valid);
+				hits++;
+			}
+			if (valid != entry) {
+				write(key, valid);
+			}
+			return new CompileResult(valid.css, valid.imports,
+					new long[CompileResult.Phase.values().length], 0, true);
+		}
+		synchronized (this) {
+			misses++;
+		}
+		return null;
+	}
+
+	void put(String key, String css, Map<String, String> imports,
+			Map<String, String> versions) {
+		Entry entry = new Entry(css, imports, versions);
+		synchronized (this) {
+			entries.put(key, entry);
+		}
+		write(key, entry);
+	}
+
+	/**
+	 * Discards all cached stylesheets, in memory and on disk.
+	 */
+	public void invalidateAll() {
+		synchronized (this) {
+			entries.clear();
+		}
+		File[] files = directory != null ? directory.listFiles() : null;
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the entry if every import is unchanged, with the versions of
+	 * the imports that changed their version but not their content updated,
+	 * or {@code null}.
+	 */
+	private Entry validate(Entry entry, ResourceLoader loader, String charset) {
+		Map<String, String> versions = null;
+		for (Map.Entry<String, String> i : entry.imports.entrySet()) {
+			String path = i.getKey();
+			try {
+				LoadedResource resource = loader.loadResource(path, charset);
+				String version = resource.getVersion();
+				if (version != null && version.equals(entry.versions.get(path))) {
+					continue;
+				}
+				if (!i.getValue().equals(resource.getFingerprint())) {
+					return null;
+				}
+				if (version != null) {
+					if (versions == null) {
+						versions = new HashMap<String, String>(entry.versions);
+					}
+					versions.put(path, version);
+				}
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		return versions != null ? new Entry(entry.css, entry.imports, versions)
+				: entry;
+	}
+
+	private Entry read(String key) {
+		File file = directory != null ? new File(directory, key) : null;
+		if (file == null || !file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				int count = in.readInt();
+				Map<String, String> imports = new LinkedHashMap<String, String>();
+				Map<String, String> versions = new HashMap<String, String>();
+				for (int i = 0; i < count; i++) {
+					String path = in.readUTF();
+					imports.put(path, in.readUTF());
+					if (in.readBoolean()) {
+						versions.put(path, in.readUTF());
+					}
+				}
+				int length = in.readInt();
+				if (length < 0 || length > file.length()) {
+					throw new IOException("Invalid CSS length " + length);
+				}
+				byte[] css = new byte[length];
+				in.readFully(css);
+				return new Entry(new String(css, "UTF-8"), imports, versions);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			logger.debug("Ignoring unreadable output cache file " + file, e);
+			return null;
+		}
+	}
+
+	private void write(String key, Entry entry) {
+		if (directory == null) {
+			return;
+		}
+		try {
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Unable to create " + directory);
+			}
+			File temp = File.createTempFile(key, ".tmp", directory);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeInt(entry.imports.size());
+				for (Map.Entry<String, String> i : entry.imports.entrySet()) {
+					String version = entry.versions.get(i.getKey());
+					out.writeUTF(i.getKey());
+					out.writeUTF(i.getValue());
+					out.writeBoolean(version != null);
+					if (version != null) {
+						out.writeUTF(version);
+					}
+				}
+				byte[] css = entry.css.getBytes("UTF-8");
+				out.writeInt(css.length);
+				out.write(css);
+			} finally {
+				out.close();
+			}
+			File file = new File(directory, key);
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					temp.delete();
+				}
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write output cache file for " + key, e);
+		}
+	}
+
+	private static class Entry {
+
+		private final String css;
+		private final Map<String, String> imports;
+		private final Map<String, String> versions;
+
+		public Entry(String css, Map<String, String> imports,
+				Map<String, String> versions) {
+			this.css = css;
+			this.imports = Collections.unmodifiableMap(imports);
+			this.versions = Collections.unmodifiableMap(versions);
+		}
+	}
+
+}
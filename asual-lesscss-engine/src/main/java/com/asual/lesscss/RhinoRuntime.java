@@ -0,0 +1,155 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.tools.shell.Global;
+
+/**
+ * The default {@link LessRuntime}, backed by Rhino.
+ *
+ * Scripts are compiled through the {@link ScriptCache} with the optimization
+ * level of {@link LessOptions#getRhinoOptimization()}. The scope is sealed and
+ * every compilation runs in a child scope, so nothing leaks from one
+ * compilation to the next. Compilations observe their
+ * {@link CancellationToken} every few thousand instructions.
+ */
+public class RhinoRuntime implements LessRuntime {
+
+	private final Log logger = LogFactory.getLog(getClass());
+
+	@Override
+	public String getName() {
+		return "rhino";
+	}
+
+	@Override
+	public Scope createScope(LessOptions options, List<URL> scripts)
+			throws IOException {
+		Context cx = LessContextFactory.INSTANCE.enterContext();
+		try {
+			logger.debug("Using implementation version: "
+					+ cx.getImplementationVersion());
+			cx.setOptimizationLevel(options.getRhinoOptimization());
+			Global global = new Global();
+			global.init(cx);
+			ScriptableObject scope = (ScriptableObject) cx
+					.initStandardObjects(global);
+			for (URL script : scripts) {
+				ScriptCache.getScript(cx, script,
+						options.getScriptCacheDirectory()).exec(cx, scope);
+			}
+			Function compile = (Function) scope.get("compile", scope);
+			scope.sealObject();
+			return new RhinoScope(options, scope, compile);
+		} finally {
+			Context.exit();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	private static class RhinoScope implements Scope {
+
+		private final LessOptions options;
+		private final ScriptableObject scope;
+		private final Function compile;
+
+		public RhinoScope(LessOptions options, ScriptableObject scope,
+				Function compile) {
+			this.options = options;
+			this.scope = scope;
+			this.compile = compile;
+		}
+
+		/**
+		 * Runs the compile function in a new compilation scope. The
+		 * compilation scope holds the per-compile state such as
+		 * {@code lessenv} and inherits the LESS runtime from the sealed scope
+		 * through its prototype, so it is cheap to create and nothing leaks
+		 * from one compilation to the next. An aborted compilation only
+		 * unwinds its own scope, which leaves the scope usable.
+		 */
+		@Override
+		public String compile(Compilation compilation, String source,
+				String location, boolean compress) throws LessException {
+			Context cx = LessContextFactory.INSTANCE.enterContext();
+			LessContextFactory.setToken(cx, compilation.getToken());
+			try {
+				compilation.check();
+				Scriptable compilationScope = cx.newObject(scope);
+				compilationScope.setPrototype(scope);
+				compilationScope.setParentScope(null);
+				Scriptable lessEnv = cx.newObject(scope);
+				lessEnv.put("charset", lessEnv, options.getCharset());
+				lessEnv.put("css", lessEnv, options.isCss());
+				lessEnv.put("lineNumbers", lessEnv, options.getLineNumbers());
+				lessEnv.put("optimization", lessEnv, options.getOptimization());
+				lessEnv.put("compilation", lessEnv,
+						Context.javaToJS(compilation, scope));
+				compilationScope.put("lessenv", compilationScope, lessEnv);
+				return Context.toString(compile.call(cx, compilationScope,
+						compilationScope, new Object[] { source, location,
+								compress }));
+			} catch (CancellationToken.Cancellation e) {
+				throw compilation.getFailure(e);
+			} catch (RuntimeException e) {
+				throw compilation.getFailure(e);
+			} finally {
+				LessContextFactory.setToken(cx, null);
+				Context.exit();
+			}
+		}
+
+		@Override
+		public SizeEstimate estimateRetainedSize(Collection<Object> roots) {
+			final ScopeSizeEstimator estimator = new ScopeSizeEstimator();
+			estimator.add(scope);
+			for (Object root : roots) {
+				estimator.add(root);
+			}
+			return new SizeEstimate() {
+				@Override
+				public boolean walk(int objects) {
+					LessContextFactory.INSTANCE.enterContext();
+					try {
+						return estimator.walk(objects);
+					} finally {
+						Context.exit();
+					}
+				}
+
+				@Override
+				public long getSize() {
+					return estimator.getSize();
+				}
+			};
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.mozilla.javascript.NativeJavaObject;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+
+/**
+ * Estimates the memory retained by script objects by walking the object
+ * graph reachable from a set of roots.
+ *
+ * The estimate counts a fixed size per object and per property plus the
+ * characters of strings. It is meant to follow the growth of a scope rather
+ * than to match the actual heap usage. Java objects exposed to scripts are
+ * not followed.
+ */
+final class ScopeSizeEstimator {
+
+	private static final int OBJECT_SIZE = 64;
+	private static final int PROPERTY_SIZE = 48;
+	private static final int STRING_SIZE = 40;
+	private static final int NUMBER_SIZE = 16;
+	private static final int MAX_OBJECTS = 1000000;
+
+	private final Map<Object, Boolean> visited = new IdentityHashMap<Object, Boolean>();
+	private final Deque<Scriptable> pending = new ArrayDeque<Scriptable>();
+	private long size;
+
+	void add(Object value) {
+		if (value == null || visited.size() >= MAX_OBJECTS
+				|| visited.put(value, Boolean.TRUE) != null) {
+			return;
+		}
+		if (value instanceof CharSequence) {
+			size += STRING_SIZE + 2L * ((CharSequence) value).length();
+		} else if (value instanceof Number) {
+			size += NUMBER_SIZE;
+		} else if (value instanceof Scriptable) {
+			size += OBJECT_SIZE;
+			pending.add((Scriptable) value);
+		}
+	}
+
+	/**
+	 * Walks at most the given number of objects of the graph reachable from
+	 * the added roots and returns whether the whole graph has been walked.
+	 */
+	boolean walk(int objects) {
+		Scriptable obj;
+		while (objects-- > 0 && (obj = pending.poll()) != null) {
+			add(obj.getPrototype());
+			add(obj.getParentScope());
+			if (obj instanceof NativeJavaObject) {
+				continue;
+			}
+			Object[] ids = obj instanceof ScriptableObject ? ((ScriptableObject) obj)
+					.getAllIds() : obj.getIds();
+			for (Object id : ids) {
+				size += PROPERTY_SIZE;
+				try {
+					if (id instanceof String) {
+						String name = (String) id;
+						if (obj instanceof ScriptableObject
+								&& ((ScriptableObject) obj).getGetterOrSetter(
+										name, 0, false) != null) {
+							// do not run getters
+							continue;
+						}
+						add(obj.get(name, obj));
+					} else if (id instanceof Integer) {
+						add(obj.get((Integer) id, obj));
+					}
+				} catch (RuntimeException e) {
+					// skip properties that cannot be read without side effects
+				}
+			}
+		}
+		return pending.isEmpty();
+	}
+
+	/**
+	 * Returns the estimated size in bytes of the objects walked so far.
+	 */
+	long getSize() {
+		return size;
+	}
+
+}
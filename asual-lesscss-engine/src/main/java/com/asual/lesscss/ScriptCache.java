@@ -0,0 +1,345 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.GeneratedClassLoader;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.optimizer.ClassCompiler;
+
+import com.asual.lesscss.loader.ContentDigest;
+
+/**
+ * A process-wide cache of compiled LESS runtime scripts ({@code env.js},
+ * {@code less.js}, {@code cssmin.js} and {@code engine.js}).
+ *
+ * Scripts are keyed by their URL, a hash of their content, the Rhino version
+ * and the optimization level, so that a changed script or a Rhino upgrade
+ * never picks up a stale entry. Scripts loaded from files or jar entries are
+ * only reread and rehashed when their modification time or size changes. When a cache directory is configured through
+ * {@link LessOptions#setScriptCacheDirectory(File)}, compiled scripts are also
+ * stored on disk and reused by later processes: interpreted scripts are
+ * serialized, bytecode scripts are stored as generated classes.
+ */
+public final class ScriptCache {
+
+	// Version 2 scripts are compiled with instruction counting for the
+	// cancellation of compilations
+	private static final String FORMAT_VERSION = "2";
+	private static final String INTERPRETED = "interpreted";
+	private static final String BYTECODE = "bytecode";
+
+	private static final Log logger = LogFactory.getLog(ScriptCache.class);
+
+	private static final ConcurrentMap<String, Entry> scripts = new ConcurrentHashMap<String, Entry>();
+
+	private ScriptCache() {
+	}
+
+	/**
+	 * Discards all scripts cached in memory. The disk cache is left intact.
+	 */
+	public static void clear() {
+		scripts.clear();
+	}
+
+	/**
+	 * Returns the compiled script for the given URL, compiling it with the
+	 * optimization level of the context if it is not cached yet. When the
+	 * script cannot be compiled to bytecode, e.g. because a function exceeds
+	 * the 64 KB method size limit of the JVM, it is compiled in interpreted
+	 * mode instead.
+	 *
+	 * @param directory
+	 *            the disk cache directory or {@code null}.
+	 */
+	static Script getScript(Context cx, URL url, File directory)
+			throws IOException {
+		String name = url + "|" + cx.getImplementationVersion() + "|"
+				+ cx.getOptimizationLevel();
+		String stamp = stamp(url);
+		Entry entry = scripts.get(name);
+		if (entry != null && stamp != null && stamp.equals(entry.stamp)) {
+			return newInstance(entry.script);
+		}
+		String source = read(url);
+		String hash = ContentDigest.sha1(source);
+		if (entry != null && hash.equals(entry.hash)) {
+			scripts.replace(name, entry, new Entry(stamp, hash, entry.script));
+			return newInstance(entry.script);
+		}
+		String digest = ContentDigest.sha1(url + "|" + hash + "|"
+				+ cx.getImplementationVersion() + "|"
+				+ cx.getOptimizationLevel());
+		File file = directory != null ? new File(new File(directory, "v"
+				+ FORMAT_VERSION), digest + ".bin") : null;
+		Script script = null;
+		if (file != null && file.isFile()) {
+			script = readScript(cx, file);
+		}
+		if (script == null) {
+			script = compile(cx, url, source, digest, file);
+		}
+		scripts.put(name, new Entry(stamp, hash, script));
+		return newInstance(script);
+	}
+
+	private static Script compile(Context cx, URL url, String source,
+			String digest, File file) throws IOException {
+		int level = cx.getOptimizationLevel();
+		if (level >= 0) {
+			try {
+				return compileBytecode(cx, url, source, digest, file);
+			} catch (RuntimeException e) {
+				logger.warn("Unable to compile " + url
+						+ " to bytecode, falling back to interpreted mode: "
+						+ e.getMessage());
+			}
+		}
+		cx.setOptimizationLevel(-1);
+		try {
+			Script script = cx.compileString(source, url.getFile(), 1, null);
+			if (file != null) {
+				writeScript(file, INTERPRETED, script);
+			}
+			return script;
+		} finally {
+			cx.setOptimizationLevel(level);
+		}
+	}
+
+	private static Script compileBytecode(Context cx, URL url, String source,
+			String digest, File file) throws IOException {
+		if (file == null) {
+			return cx.compileString(source, url.getFile(), 1, null);
+		}
+		CompilerEnvirons environs = new CompilerEnvirons();
+		environs.initFromContext(cx);
+		String name = "com.asual.lesscss.generated.Script" + digest;
+		Object[] classes = new ClassCompiler(environs).compileToClassFiles(
+				source, url.getFile(), 1, name);
+		writeScript(file, BYTECODE, classes);
+		return defineScript(cx, classes);
+	}
+
+	/**
+	 * Compiled scripts are instances of generated classes and are
+	 * instantiated for each execution, interpreted scripts are stateless and
+	 * can be shared.
+	 */
+	private static Script newInstance(Script script) {
+		if (!(script.getClass().getClassLoader() instanceof GeneratedClassLoader)) {
+			return script;
+		}
+		try {
+			return script.getClass().getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to instantiate "
+					+ script.getClass(), e);
+		}
+	}
+
+	private static Script defineScript(Context cx, Object[] classes) {
+		GeneratedClassLoader loader = cx.createClassLoader(Context.class
+				.getClassLoader());
+		Class<?> main = null;
+		for (int i = 0; i < classes.length; i += 2) {
+			Class<?> c = loader.defineClass((String) classes[i],
+					(byte[]) classes[i + 1]);
+			if (main == null) {
+				main = c;
+			}
+		}
+		loader.linkClass(main);
+		try {
+			return (Script) main.getDeclaredConstructor().newInstance();
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to instantiate " + main, e);
+		}
+	}
+
+	private static Script readScript(Context cx, File file) {
+		try {
+			ObjectInputStream in = new ScriptInputStream(
+					new BufferedInputStream(new FileInputStream(file)));
+			try {
+				String type = in.readUTF();
+				Object value = in.readObject();
+				if (BYTECODE.equals(type)) {
+					return defineScript(cx, (Object[]) value);
+				}
+				return (Script) value;
+			} finally {
+				in.close();
+			}
+		} catch (InvalidClassException e) {
+			logger.warn("Ignoring script cache file " + file + ": "
+					+ e.getMessage());
+			return null;
+		} catch (Exception e) {
+			logger.debug("Ignoring unreadable script cache file " + file, e);
+			return null;
+		}
+	}
+
+	private static void writeScript(File file, String type, Object value) {
+		File dir = file.getParentFile();
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				throw new IOException("Unable to create " + dir);
+			}
+			File temp = File.createTempFile(file.getName(), ".tmp", dir);
+			ObjectOutputStream out = new ObjectOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeUTF(type);
+				out.writeObject(value);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to write script cache file " + file, e);
+		}
+	}
+
+	private static String read(URL url) throws IOException {
+		InputStream in = url.openConnection().getInputStream();
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] b = new byte[8192];
+			int c;
+			while ((c = in.read(b)) >= 0) {
+				out.write(b, 0, c);
+			}
+			return out.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Returns a cheap fingerprint of the script without reading it, or
+	 * {@code null} if the URL does not provide one.
+	 */
+	private static String stamp(URL url) {
+		try {
+			if ("file".equals(url.getProtocol())) {
+				File file = new File(url.toURI());
+				long modified = file.lastModified();
+				return modified != 0 ? modified + "|" + file.length() : null;
+			}
+			if ("jar".equals(url.getProtocol())) {
+				URLConnection connection = url.openConnection();
+				JarEntry entry = ((JarURLConnection) connection).getJarEntry();
+				return entry != null && entry.getCrc() != -1 ? entry.getTime()
+						+ "|" + entry.getSize() + "|" + entry.getCrc() : null;
+			}
+		} catch (IOException e) {
+			logger.debug("Unable to stat " + url, e);
+		} catch (URISyntaxException e) {
+			logger.debug("Unable to stat " + url, e);
+		} catch (IllegalArgumentException e) {
+			logger.debug("Unable to stat " + url, e);
+		}
+		return null;
+	}
+
+	private static class Entry {
+
+		private final String stamp;
+		private final String hash;
+		private final Script script;
+
+		public Entry(String stamp, String hash, Script script) {
+			this.stamp = stamp;
+			this.hash = hash;
+			this.script = script;
+		}
+	}
+
+	/**
+	 * Resolves serialized Rhino classes against the class loader of Rhino
+	 * rather than the caller's and rejects every class that is not part of an
+	 * interpreted script or of the generated class files written by this
+	 * cache.
+	 */
+	private static class ScriptInputStream extends ObjectInputStream {
+
+		private static final Set<String> CLASSES = new HashSet<String>(
+				Arrays.asList("[B", "[C", "[D", "[I", "[Z",
+						"[Ljava.lang.Object;", "[Ljava.lang.String;",
+						"[Lorg.mozilla.javascript.InterpreterData;",
+						"[Lorg.mozilla.javascript.regexp.RECharSet;",
+						"org.mozilla.javascript.BaseFunction",
+						"org.mozilla.javascript.IdScriptableObject",
+						"org.mozilla.javascript.InterpretedFunction",
+						"org.mozilla.javascript.InterpreterData",
+						"org.mozilla.javascript.NativeFunction",
+						"org.mozilla.javascript.ScriptableObject",
+						"org.mozilla.javascript.regexp.RECharSet",
+						"org.mozilla.javascript.regexp.RECompiled"));
+
+		public ScriptInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc)
+				throws IOException, ClassNotFoundException {
+			if (!CLASSES.contains(desc.getName())) {
+				throw new InvalidClassException(desc.getName(),
+						"Unexpected class in a script cache file");
+			}
+			return Class.forName(desc.getName(), false,
+					Context.class.getClassLoader());
+		}
+
+		@Override
+		protected Class<?> resolveProxyClass(String[] interfaces)
+				throws IOException, ClassNotFoundException {
+			throw new InvalidClassException("Unexpected proxy class in a script cache file");
+		}
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.Collection;
+import java.util.List;
+
+import javax.script.Invocable;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineManager;
+import javax.script.ScriptException;
+
+/**
+ * A {@link LessRuntime} backed by a {@code javax.script} (JSR-223) engine,
+ * e.g. the Nashorn engine of the JVM or an engine found on the class path.
+ *
+ * Every scope is a new {@link ScriptEngine}. Unlike Rhino, the engine does
+ * not isolate compilations from each other, and a {@link CancellationToken}
+ * is only checked between imports.
+ */
+public class ScriptEngineRuntime implements LessRuntime {
+
+	/**
+	 * Calls the compile function with a {@code lessenv} built in script, so
+	 * that it is a native object of the engine.
+	 */
+	private static final String ADAPTER = "var __lessCompile = function(compilation, "
+			+ "charset, css, lineNumbers, optimization, source, path, compress) {\n"
+			+ "  return compile.call({ lessenv : { charset : charset, css : css, "
+			+ "lineNumbers : lineNumbers, optimization : optimization, "
+			+ "compilation : compilation } }, source, path, compress);\n"
+			+ "};";
+
+	private final String name;
+	private final ClassLoader classLoader;
+
+	/**
+	 * Creates a runtime for the engine with the given name, e.g.
+	 * {@code "nashorn"}, that is found through the context class loader.
+	 */
+	public ScriptEngineRuntime(String name) {
+		this(name, null);
+	}
+
+	/**
+	 * @param classLoader
+	 *            the class loader engines are looked up with, or {@code null}
+	 *            for the context class loader.
+	 * @throws IllegalArgumentException
+	 *             if no engine with the given name is available.
+	 */
+	public ScriptEngineRuntime(String name, ClassLoader classLoader) {
+		this.name = name;
+		this.classLoader = classLoader;
+		if (newEngine() == null) {
+			throw new IllegalArgumentException("No script engine named "
+					+ name + " is available.");
+		}
+	}
+
+	/**
+	 * Returns {@code true} if an engine with the given name can be found
+	 * through the context class loader.
+	 */
+	public static boolean isAvailable(String name) {
+		return new ScriptEngineManager().getEngineByName(name) != null;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	private ScriptEngine newEngine() {
+		ScriptEngineManager manager = classLoader != null ? new ScriptEngineManager(
+				classLoader) : new ScriptEngineManager();
+		return manager.getEngineByName(name);
+	}
+
+	@Override
+	public Scope createScope(LessOptions options, List<URL> scripts)
+			throws IOException {
+		ScriptEngine engine = newEngine();
+		if (!(engine instanceof Invocable)) {
+			throw new IOException("The script engine " + name
+					+ " cannot invoke functions.");
+		}
+		try {
+			for (URL script : scripts) {
+				engine.put(ScriptEngine.FILENAME, script.getFile());
+				Reader reader = new InputStreamReader(script.openStream(),
+						"UTF-8");
+				try {
+					engine.eval(reader);
+				} finally {
+					reader.close();
+				}
+			}
+			engine.eval(ADAPTER);
+		} catch (ScriptException e) {
+			throw new IOException("Unable to evaluate the LESS runtime with "
+					+ name + ".", e);
+		}
+		return new ScriptEngineScope(options, engine);
+	}
+
+	@Override
+	public String toString() {
+		return getName();
+	}
+
+	private static class ScriptEngineScope implements Scope {
+
+		private final LessOptions options;
+		private final ScriptEngine engine;
+
+		public ScriptEngineScope(LessOptions options, ScriptEngine engine) {
+			this.options = options;
+			this.engine = engine;
+		}
+
+		@Override
+		public String compile(Compilation compilation, String source,
+				String location, boolean compress) throws LessException {
+			try {
+				compilation.check();
+				Object result = ((Invocable) engine).invokeFunction(
+						"__lessCompile", compilation, options.getCharset(),
+						options.isCss(), options.getLineNumbers(),
+						options.getOptimization(), source, location, compress);
+				return result != null ? result.toString() : "";
+			} catch (CancellationToken.Cancellation e) {
+				throw compilation.getFailure(e);
+			} catch (Exception e) {
+				// Scripts may catch the cancellation, so the compilation
+				// rather than the exception tells whether it was aborted
+				throw compilation.getFailure(e);
+			}
+		}
+
+		@Override
+		public SizeEstimate estimateRetainedSize(Collection<Object> roots) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link ResourceLoader} that can load resources without blocking the
+ * calling thread.
+ * 
+ * @see AsyncResourceLoaderAdapter
+ */
+public interface AsyncResourceLoader extends ResourceLoader {
+
+	/**
+	 * Loads the given resource asynchronously. A missing resource completes
+	 * the future exceptionally with a {@link ResourceNotFoundException}.
+	 * 
+	 * @param path
+	 *            resource path.
+	 * @param charset
+	 *            character set name, valid with respect to
+	 *            {@link java.nio.charset.Charset}.
+	 * @param executor
+	 *            the executor used for work that cannot be done without
+	 *            blocking, and to complete the future.
+	 * @return the future resource.
+	 */
+	public CompletableFuture<LoadedResource> loadAsync(String path,
+			String charset, Executor executor);
+}
@@ -0,0 +1,143 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * An {@link AsyncResourceLoader} for any {@link ResourceLoader}. Loaders that
+ * are asynchronous themselves are delegated to, others are called on the
+ * given executor.
+ */
+public class AsyncResourceLoaderAdapter implements AsyncResourceLoader {
+
+	private final ResourceLoader delegate;
+
+	public AsyncResourceLoaderAdapter(ResourceLoader delegate) {
+		this.delegate = delegate;
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		return delegate.exists(path);
+	}
+
+	@Override
+	public String load(String path, String charset) throws IOException {
+		return delegate.load(path, charset);
+	}
+
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return delegate.loadResource(path, charset);
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, Executor executor) {
+		if (delegate instanceof AsyncResourceLoader) {
+			return ((AsyncResourceLoader) delegate).loadAsync(path, charset,
+					executor);
+		}
+		final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+		execute(executor, future, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(delegate.loadResource(path, charset));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Runs a task that completes the future, or fails the future if the
+	 * executor rejects the task.
+	 */
+	static void execute(Executor executor, CompletableFuture<?> future,
+			Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+
+	static <T> CompletableFuture<T> failed(Throwable e) {
+		CompletableFuture<T> future = new CompletableFuture<T>();
+		future.completeExceptionally(e);
+		return future;
+	}
+
+	/**
+	 * Returns a future completed like the given one, or like the future the
+	 * fallback returns for its failure.
+	 */
+	static <T> CompletableFuture<T> recover(CompletableFuture<T> future,
+			final Function<Throwable, CompletableFuture<T>> fallback) {
+		final CompletableFuture<T> result = new CompletableFuture<T>();
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T value, Throwable e) {
+				if (e == null) {
+					result.complete(value);
+					return;
+				}
+				try {
+					complete(fallback.apply(unwrap(e)), result);
+				} catch (Throwable t) {
+					result.completeExceptionally(t);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Completes the target like the source.
+	 */
+	static <T> void complete(CompletableFuture<T> source,
+			final CompletableFuture<T> target) {
+		source.whenComplete(new BiConsumer<T, Throwable>() {
+			@Override
+			public void accept(T value, Throwable e) {
+				if (e == null) {
+					target.complete(value);
+				} else {
+					target.completeExceptionally(unwrap(e));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the failure a dependent future was completed with.
+	 */
+	static Throwable unwrap(Throwable e) {
+		return e instanceof CompletionException && e.getCause() != null ? e
+				.getCause() : e;
+	}
+
+}
@@ -0,0 +1,49 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * A {@link ResourceTransformer} that removes the byte order mark from the
+ * beginning of a resource.
+ */
+public class BomTransformer implements ResourceTransformer {
+
+	private static final char BOM = '\uFEFF';
+
+	@Override
+	public Transformation start(String path) {
+		return new Transformation() {
+
+			private boolean first = true;
+
+			@Override
+			public void transform(CharSequence in, int start, int end,
+					StringBuilder out) {
+				if (first && start < end) {
+					first = false;
+					if (in.charAt(start) == BOM) {
+						start++;
+					}
+				}
+				out.append(in, start, end);
+			}
+
+			@Override
+			public void finish(StringBuilder out) {
+			}
+		};
+	}
+
+}
@@ -0,0 +1,426 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.jar.JarEntry;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A delegating {@link ResourceLoader} that keeps decoded resources in memory.
+ * 
+ * Cached content is revalidated on every load by comparing a cheap version of
+ * the resource with the {@link LoadedResource#getVersion() version} the
+ * delegate returned, at the location the delegate loaded it from: the
+ * modification time and size for files, and the {@code ETag} or
+ * {@code Last-Modified} header of a {@code HEAD} request for HTTP resources.
+ * 
+ * When the delegate does not return a version, the version is resolved the
+ * way the default chain resolves paths: plain paths are looked up on the file
+ * system first and on the classpath second, where the entry time and size of
+ * resources packaged in jars is used. Resources that cannot be validated
+ * either way, e.g. JNDI resources, are kept for a fixed time to live, or not
+ * at all if it is {@code 0}. The cache is bounded by the total number of
+ * cached characters and evicts the least recently used resources first. It
+ * is safe for concurrent use if the delegate is.
+ * 
+ * Asynchronous loads look the resource up and revalidate it on the executor,
+ * as that may block, and load a missing or changed resource without blocking
+ * if the delegate is an {@link AsyncResourceLoader}.
+ */
+public class CachingResourceLoader implements AsyncResourceLoader {
+
+	private static final Pattern PATTERN = Pattern.compile("^([\\w]{2,}):(.*)");
+
+	private final ResourceLoader delegate;
+	private final ClassLoader classLoader;
+	private final long maxSize;
+	private final long ttl;
+	private int connectTimeout = 10000;
+	private int readTimeout = 30000;
+
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(
+			16, 0.75f, true);
+	private long size;
+	private long hits;
+	private long misses;
+	private long revalidations;
+	private long evictions;
+
+	/**
+	 * @param maxSize
+	 *            maximum number of cached characters.
+	 * @param ttl
+	 *            time to live in milliseconds of resources that cannot be
+	 *            validated.
+	 */
+	public CachingResourceLoader(ResourceLoader delegate, long maxSize,
+			long ttl) {
+		this(delegate, maxSize, ttl, CachingResourceLoader.class
+				.getClassLoader());
+	}
+
+	/**
+	 * @param classLoader
+	 *            the class loader used to validate classpath resources.
+	 */
+	public CachingResourceLoader(ResourceLoader delegate, long maxSize,
+			long ttl, ClassLoader classLoader) {
+		this.delegate = delegate;
+		this.maxSize = maxSize;
+		this.ttl = ttl;
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * Returns the connect timeout in milliseconds of the {@code HEAD}
+	 * requests validating HTTP resources, {@code 0} means infinite.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the read timeout in milliseconds of the {@code HEAD} requests
+	 * validating HTTP resources, {@code 0} means infinite.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		return delegate.exists(path);
+	}
+
+	@Override
+	public String load(String path, String charset) throws IOException {
+		return loadResource(path, charset).getContent();
+	}
+
+	/**
+	 * Cached resources keep their fingerprint, so it is computed at most once
+	 * per load from the delegate.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		String key = path + "\n" + charset;
+		Lookup lookup = lookup(key, path);
+		if (lookup.resource != null) {
+			return lookup.resource;
+		}
+		return store(key, delegate.loadResource(path, charset), lookup.version);
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, final Executor executor) {
+		final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+		AsyncResourceLoaderAdapter.execute(executor, future, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					String key = path + "\n" + charset;
+					Lookup lookup = lookup(key, path);
+					if (lookup.resource != null) {
+						future.complete(lookup.resource);
+					} else if (delegate instanceof AsyncResourceLoader) {
+						AsyncResourceLoaderAdapter.complete(store(key,
+								((AsyncResourceLoader) delegate).loadAsync(path,
+										charset, executor), lookup.version),
+								future);
+					} else {
+						future.complete(store(key, delegate.loadResource(path,
+								charset), lookup.version));
+					}
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Returns the cached resource if it is still valid, or the version of the
+	 * resource resolved by this loader, which is used if the delegate does
+	 * not return one.
+	 */
+	private Lookup lookup(String key, String path) throws IOException {
+		Entry entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry != null) {
+			if (entry.version != null) {
+				synchronized (this) {
+					revalidations++;
+				}
+				String version = entry.location != null ? version(
+						entry.location, entry.version) : version(path);
+				if (entry.version.equals(version)) {
+					return new Lookup(hit(entry), null);
+				}
+			} else if (System.currentTimeMillis() < entry.expires) {
+				return new Lookup(hit(entry), null);
+			}
+		}
+		return new Lookup(null, version(path));
+	}
+
+	/**
+	 * Stores a resource loaded by the delegate, with the version the delegate
+	 * returned if this loader can validate it, or the given version resolved
+	 * by this loader before the resource was loaded.
+	 */
+	private LoadedResource store(String key, LoadedResource resource,
+			String version) {
+		int length = resource.getContent().length();
+		String location = null;
+		if (validates(resource.getVersion())) {
+			version = resource.getVersion();
+			location = resource.getLocation();
+		}
+		synchronized (this) {
+			misses++;
+			if ((version != null || ttl > 0) && length <= maxSize) {
+				Entry previous = entries.put(key, new Entry(resource, version,
+						location, System.currentTimeMillis() + ttl));
+				if (previous != null) {
+					size -= previous.length();
+				}
+				size += length;
+				evict();
+			}
+		}
+		return resource;
+	}
+
+	private CompletableFuture<LoadedResource> store(final String key,
+			CompletableFuture<LoadedResource> future, final String version) {
+		return future.thenApply(new Function<LoadedResource, LoadedResource>() {
+			@Override
+			public LoadedResource apply(LoadedResource resource) {
+				return store(key, resource, version);
+			}
+		});
+	}
+
+	private synchronized LoadedResource hit(Entry entry) {
+		hits++;
+		return entry.resource;
+	}
+
+	private void evict() {
+		Iterator<Entry> i = entries.values().iterator();
+		while (size > maxSize && i.hasNext()) {
+			size -= i.next().length();
+			i.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns a token that changes whenever the resource changes, or
+	 * {@code null} if the resource cannot be validated. It is used for
+	 * resources the delegate returns without a version.
+	 */
+	protected String version(String path) throws IOException {
+		String schema = null;
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			schema = m.group(1);
+			path = m.group(2);
+		}
+		if (schema == null || schema.equals("file")) {
+			File file = new File(path);
+			if (file.isFile()) {
+				return version(file);
+			}
+		}
+		if (schema == null || schema.equals("classpath")) {
+			URL url = classLoader.getResource(path);
+			if (url != null) {
+				return version(url);
+			}
+		}
+		return null;
+	}
+
+	private static boolean validates(String version) {
+		return version != null
+				&& (version.startsWith("file:") || version.startsWith("etag:") || version
+						.startsWith("last-modified:"));
+	}
+
+	/**
+	 * Returns the current version of a resource in the format of the version
+	 * returned by the delegate when it loaded it from the given location.
+	 */
+	private String version(String location, String version) throws IOException {
+		if (version.startsWith("file:")) {
+			return version(new File(location));
+		}
+		URLConnection conn = new URL(location).openConnection();
+		if (!(conn instanceof HttpURLConnection)) {
+			return null;
+		}
+		HttpURLConnection http = (HttpURLConnection) conn;
+		http.setConnectTimeout(connectTimeout);
+		http.setReadTimeout(readTimeout);
+		http.setRequestMethod("HEAD");
+		try {
+			if (http.getResponseCode() != HttpURLConnection.HTTP_OK) {
+				return null;
+			}
+			String etag = http.getHeaderField("ETag");
+			if (etag != null) {
+				return "etag:" + etag;
+			}
+			String lastModified = http.getHeaderField("Last-Modified");
+			return lastModified != null ? "last-modified:" + lastModified
+					: null;
+		} finally {
+			http.disconnect();
+		}
+	}
+
+	private static String version(File file) {
+		return "file:" + file.lastModified() + ":" + file.length();
+	}
+
+	private static String version(URL url) throws IOException {
+		URLConnection conn = url.openConnection();
+		if (conn instanceof JarURLConnection) {
+			JarEntry entry = ((JarURLConnection) conn).getJarEntry();
+			return entry != null ? "jar:" + entry.getTime() + ":"
+					+ entry.getSize() : null;
+		}
+		if ("file".equals(url.getProtocol())) {
+			try {
+				return version(new File(url.toURI()));
+			} catch (URISyntaxException e) {
+				return null;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Discards the cached content of the given path in every charset.
+	 */
+	public synchronized void invalidate(String path) {
+		Iterator<Map.Entry<String, Entry>> i = entries.entrySet().iterator();
+		while (i.hasNext()) {
+			Map.Entry<String, Entry> e = i.next();
+			if (e.getKey().startsWith(path + "\n")) {
+				size -= e.getValue().length();
+				i.remove();
+			}
+		}
+	}
+
+	public synchronized void invalidateAll() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Returns the maximum number of cached characters.
+	 */
+	public long getMaxSize() {
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of cached characters.
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	public synchronized long getHitCount() {
+		return hits;
+	}
+
+	public synchronized long getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of times a cached resource was checked against its
+	 * source.
+	 */
+	public synchronized long getRevalidationCount() {
+		return revalidations;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictions;
+	}
+
+	private static class Lookup {
+
+		private final LoadedResource resource;
+		private final String version;
+
+		public Lookup(LoadedResource resource, String version) {
+			this.resource = resource;
+			this.version = version;
+		}
+	}
+
+	private static class Entry {
+
+		private final LoadedResource resource;
+		private final String version;
+		private final String location;
+		private final long expires;
+
+		public Entry(LoadedResource resource, String version,
+				String location, long expires) {
+			this.resource = resource;
+			this.version = version;
+			this.location = location;
+			this.expires = expires;
+		}
+
+		public int length() {
+			return resource.getContent().length();
+		}
+	}
+}
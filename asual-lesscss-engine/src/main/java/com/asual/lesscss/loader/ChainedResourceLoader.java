@@ -15,25 +15,67 @@
 package com.asual.lesscss.loader;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * A {@link ResourceLoader} delegates to a sequence of other loaders, asking
  * each one for the requested resource in turn.
  * 
+ * Resources are loaded by asking each delegate to load them directly rather
+ * than checking {@link ResourceLoader#exists(String)} first, so that a
+ * resource is opened only once. The delegate that served a path is
+ * remembered and asked first next time. Optionally, paths no delegate can
+ * serve are remembered for a limited time as well. Both caches are bounded
+ * and can be cleared with {@link #invalidate(String)} and
+ * {@link #invalidateAll()}. Asynchronous loads ask the delegates in the same
+ * order, each one without blocking if it is an {@link AsyncResourceLoader}
+ * and on the executor otherwise.
+ * 
  * @author Rafał Krzewski
  */
-public class ChainedResourceLoader implements ResourceLoader {
+public class ChainedResourceLoader implements AsyncResourceLoader {
+
+	private static final int DEFAULT_CACHE_SIZE = 1024;
 
 	private final ResourceLoader[] loaders;
+	private final long negativeCacheTtl;
+
+	private final Map<String, Integer> resolved;
+	private final Map<String, Long> missing;
 
 	/**
-	 * Creates a new ChainedResourceLoader.
+	 * Creates a new ChainedResourceLoader without a negative cache.
 	 * 
 	 * @param loaders
 	 *            the loaders to delegate to. Order of the loaders is important.
 	 */
 	public ChainedResourceLoader(ResourceLoader... loaders) {
+		this(DEFAULT_CACHE_SIZE, 0, loaders);
+	}
+
+	/**
+	 * Creates a new ChainedResourceLoader.
+	 * 
+	 * @param cacheSize
+	 *            the maximum number of paths remembered as resolved and as
+	 *            missing.
+	 * @param negativeCacheTtl
+	 *            the time in milliseconds a path no loader can serve is
+	 *            reported as missing without asking the loaders again,
+	 *            {@code 0} disables the negative cache.
+	 * @param loaders
+	 *            the loaders to delegate to. Order of the loaders is important.
+	 */
+	public ChainedResourceLoader(int cacheSize, long negativeCacheTtl,
+			ResourceLoader... loaders) {
 		this.loaders = loaders;
+		this.negativeCacheTtl = negativeCacheTtl;
+		this.resolved = new BoundedMap<Integer>(cacheSize);
+		this.missing = new BoundedMap<Long>(cacheSize);
 	}
 
 	/**
@@ -42,27 +84,243 @@ public class ChainedResourceLoader implements ResourceLoader {
 	 */
 	@Override
 	public boolean exists(String path) throws IOException {
-		for (ResourceLoader loader : loaders) {
-			if (loader.exists(path)) {
+		if (isMissing(path)) {
+			return false;
+		}
+		Integer index = getResolved(path);
+		if (index != null && loaders[index].exists(path)) {
+			return true;
+		}
+		for (int i = 0; i < loaders.length; i++) {
+			if (loaders[i].exists(path)) {
+				resolve(path, i);
 				return true;
 			}
 		}
+		miss(path);
 		return false;
 	}
 
 	/**
-	 * The first delegate that returns {@true} from {@link #exists(String)} for
-	 * the given path will have {@link #load(String, String)} invoked, and the
-	 * result will be retured.
+	 * The delegate that resolved the given path last time is asked first.
+	 * Otherwise the delegates are asked in turn and the first one that does
+	 * not report the resource as missing has its result returned.
 	 */
 	@Override
 	public String load(String path, String charset) throws IOException {
-		for (ResourceLoader loader : loaders) {
-			if (loader.exists(path)) {
-				return loader.load(path, charset);
+		return load(path, charset, null, false).getContent();
+	}
+
+	/**
+	 * Returns the resource of the delegate that served it, with its
+	 * fingerprint and version.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return load(path, charset, null, true);
+	}
+
+	/**
+	 * Loads a resource for a {@link TransformingResourceLoader}, or without
+	 * transformation if it is {@code null}, so that the delegates can decode
+	 * and transform the content in one pass.
+	 * 
+	 * @param fingerprint
+	 *            whether the delegate is asked for the fingerprint.
+	 */
+	LoadedResource load(String path, String charset,
+			TransformingResourceLoader transformer, boolean fingerprint)
+			throws IOException {
+		if (isMissing(path)) {
+			throw new ResourceNotFoundException(path);
+		}
+		Integer index = getResolved(path);
+		if (index != null) {
+			try {
+				return load(loaders[index], path, charset, transformer,
+						fingerprint);
+			} catch (ResourceNotFoundException e) {
+				synchronized (this) {
+					resolved.remove(path);
+				}
+			}
+		}
+		for (int i = 0; i < loaders.length; i++) {
+			if (index != null && i == index) {
+				continue;
 			}
+			try {
+				LoadedResource resource = load(loaders[i], path, charset,
+						transformer, fingerprint);
+				resolve(path, i);
+				return resource;
+			} catch (ResourceNotFoundException e) {
+				// try the next loader
+			}
+		}
+		miss(path);
+		throw new ResourceNotFoundException(path);
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(String path,
+			String charset, Executor executor) {
+		if (isMissing(path)) {
+			return AsyncResourceLoaderAdapter
+					.failed(new ResourceNotFoundException(path));
+		}
+		Integer index = getResolved(path);
+		return loadAsync(path, charset, executor, index, index != null ? -1
+				: 0);
+	}
+
+	/**
+	 * Asks the delegate at position {@code i}, or the delegate that resolved
+	 * the path last time if {@code i} is {@code -1}, and the following
+	 * delegates while the resource is missing.
+	 */
+	private CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, final Executor executor,
+			final Integer index, int i) {
+		if (index != null && i == index) {
+			i++;
+		}
+		if (i >= loaders.length) {
+			miss(path);
+			return AsyncResourceLoaderAdapter
+					.failed(new ResourceNotFoundException(path));
+		}
+		final int current = i < 0 ? index : i;
+		final int next = i + 1;
+		CompletableFuture<LoadedResource> future = loadAsync(loaders[current],
+				path, charset, executor);
+		return AsyncResourceLoaderAdapter.recover(future.thenApply(
+				new Function<LoadedResource, LoadedResource>() {
+					@Override
+					public LoadedResource apply(LoadedResource resource) {
+						resolve(path, current);
+						return resource;
+					}
+				}),
+				new Function<Throwable, CompletableFuture<LoadedResource>>() {
+					@Override
+					public CompletableFuture<LoadedResource> apply(Throwable e) {
+						if (!(e instanceof ResourceNotFoundException)) {
+							return AsyncResourceLoaderAdapter.failed(e);
+						}
+						if (next == 0) {
+							synchronized (ChainedResourceLoader.this) {
+								resolved.remove(path);
+							}
+						}
+						return loadAsync(path, charset, executor, index, next);
+					}
+				});
+	}
+
+	private static CompletableFuture<LoadedResource> loadAsync(
+			final ResourceLoader loader, final String path,
+			final String charset, Executor executor) {
+		if (loader instanceof AsyncResourceLoader) {
+			return ((AsyncResourceLoader) loader).loadAsync(path, charset,
+					executor);
+		}
+		final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+		AsyncResourceLoaderAdapter.execute(executor, future, new Runnable() {
+			@Override
+			public void run() {
+				try {
+					future.complete(load(loader, path, charset, null, true));
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * Loaders that do not report missing resources with a
+	 * {@link ResourceNotFoundException} are asked whether the resource exists
+	 * when loading fails.
+	 */
+	private static LoadedResource load(ResourceLoader loader, String path,
+			String charset, TransformingResourceLoader transformer,
+			boolean fingerprint) throws IOException {
+		try {
+			if (transformer != null) {
+				return transformer.load(loader, path, charset, fingerprint);
+			}
+			return fingerprint ? loader.loadResource(path, charset)
+					: new LoadedResource(loader.load(path, charset), path);
+		} catch (ResourceNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			if (!loader.exists(path)) {
+				throw new ResourceNotFoundException(path);
+			}
+			throw e;
+		}
+	}
+
+	private synchronized Integer getResolved(String path) {
+		return resolved.get(path);
+	}
+
+	private synchronized void resolve(String path, int index) {
+		resolved.put(path, index);
+		missing.remove(path);
+	}
+
+	private synchronized boolean isMissing(String path) {
+		Long expires = missing.get(path);
+		if (expires == null) {
+			return false;
+		}
+		if (expires > System.currentTimeMillis()) {
+			return true;
+		}
+		missing.remove(path);
+		return false;
+	}
+
+	private synchronized void miss(String path) {
+		resolved.remove(path);
+		if (negativeCacheTtl > 0) {
+			missing.put(path, System.currentTimeMillis() + negativeCacheTtl);
+		}
+	}
+
+	/**
+	 * Forgets which loader resolved the given path and whether it was
+	 * missing.
+	 */
+	public synchronized void invalidate(String path) {
+		resolved.remove(path);
+		missing.remove(path);
+	}
+
+	public synchronized void invalidateAll() {
+		resolved.clear();
+		missing.clear();
+	}
+
+	private static class BoundedMap<V> extends LinkedHashMap<String, V> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int maxSize;
+
+		public BoundedMap(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+			return size() > maxSize;
 		}
-		throw new IOException("No such file " + path);
 	}
 
 }
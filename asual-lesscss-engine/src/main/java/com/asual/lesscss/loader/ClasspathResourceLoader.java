@@ -37,6 +37,10 @@ public class ClasspathResourceLoader extends StreamResourceLoader {
 		this.classLoader = classLoader;
 	}
 
+	protected ClassLoader getClassLoader() {
+		return classLoader;
+	}
+
 	@Override
 	protected String getSchema() {
 		return SCHEMA;
@@ -0,0 +1,88 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An incremental SHA-1 hash of the UTF-16 code units of a text, hex encoded.
+ * This is the hash the engine records for imports and uses for its cache
+ * keys.
+ */
+public final class ContentDigest {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final MessageDigest digest;
+	private final byte[] buffer = new byte[4096];
+	private int n;
+
+	ContentDigest() {
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the UTF-16 code units of the
+	 * given text. The text is fed to the digest in small chunks, so no copy
+	 * of the whole content is made.
+	 */
+	public static String sha1(CharSequence text) {
+		ContentDigest digest = new ContentDigest();
+		digest.update(text, 0, text.length());
+		return digest.digest();
+	}
+
+	void update(CharSequence text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = text.charAt(i);
+			buffer[n++] = (byte) (c >> 8);
+			buffer[n++] = (byte) c;
+			if (n == buffer.length) {
+				digest.update(buffer, 0, n);
+				n = 0;
+			}
+		}
+	}
+
+	void update(char[] text, int start, int end) {
+		for (int i = start; i < end; i++) {
+			char c = text[i];
+			buffer[n++] = (byte) (c >> 8);
+			buffer[n++] = (byte) c;
+			if (n == buffer.length) {
+				digest.update(buffer, 0, n);
+				n = 0;
+			}
+		}
+	}
+
+	String digest() {
+		digest.update(buffer, 0, n);
+		n = 0;
+		byte[] bytes = digest.digest();
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * Replaces the .css extension of @import targets with .less in a single pass.
+ * 
+ * Comments and strings are skipped, so that selectors, URLs and comments
+ * mentioning .css are left alone. Both {@code @import "a.css"} and
+ * {@code @import url(a.css)} forms are recognized, with or without import
+ * options. The content is only copied if an import is rewritten.
+ */
+final class CssImportRewriter {
+
+	private static final String IMPORT = "@import";
+	private static final String URL = "url(";
+	private static final String CSS = ".css";
+	private static final String LESS = ".less";
+
+	private CssImportRewriter() {
+	}
+
+	static String rewrite(String content) {
+		StringBuilder sb = null;
+		int copied = 0;
+		int length = content.length();
+		int i = 0;
+		while (i < length) {
+			char c = content.charAt(i);
+			if (c == '/' && i + 1 < length && content.charAt(i + 1) == '*') {
+				i = skipComment(content, i);
+			} else if (c == '"' || c == '\'') {
+				i = skipString(content, i);
+			} else if (c == '@'
+					&& content.regionMatches(true, i, IMPORT, 0, IMPORT.length())
+					&& !isNameChar(content, i + IMPORT.length())) {
+				int start = skipBlank(content, i + IMPORT.length());
+				if (start < length && content.charAt(start) == '(') {
+					int end = content.indexOf(')', start);
+					start = skipBlank(content, end < 0 ? length : end + 1);
+				}
+				boolean url = content.regionMatches(true, start, URL, 0,
+						URL.length());
+				if (url) {
+					start = skipBlank(content, start + URL.length());
+				}
+				int end = start;
+				int resume = start;
+				if (start < length
+						&& (content.charAt(start) == '"' || content
+								.charAt(start) == '\'')) {
+					resume = skipString(content, start);
+					end = resume - 1;
+					start++;
+				} else if (url) {
+					while (end < length && content.charAt(end) != ')'
+							&& !Character.isWhitespace(content.charAt(end))) {
+						end++;
+					}
+					resume = end;
+				}
+				for (int j = content.indexOf(CSS, start); j >= 0
+						&& j + CSS.length() <= end; j = content.indexOf(CSS,
+						j + CSS.length())) {
+					int next = j + CSS.length();
+					if (next == end || content.charAt(next) == '?'
+							|| content.charAt(next) == '#') {
+						if (sb == null) {
+							sb = new StringBuilder(length + 16);
+						}
+						sb.append(content, copied, j).append(LESS);
+						copied = next;
+					}
+				}
+				i = Math.max(resume, i + 1);
+			} else {
+				i++;
+			}
+		}
+		if (sb == null) {
+			return content;
+		}
+		return sb.append(content, copied, length).toString();
+	}
+
+	private static int skipComment(String content, int i) {
+		int end = content.indexOf("*/", i + 2);
+		return end < 0 ? content.length() : end + 2;
+	}
+
+	/**
+	 * Returns the index after the closing quote. Strings end at an unescaped
+	 * newline too, so that a stray apostrophe, e.g. in a line comment, does
+	 * not swallow the rest of the file.
+	 */
+	private static int skipString(String content, int i) {
+		char quote = content.charAt(i);
+		int length = content.length();
+		for (int j = i + 1; j < length; j++) {
+			char c = content.charAt(j);
+			if (c == '\\') {
+				j++;
+			} else if (c == quote) {
+				return j + 1;
+			} else if (c == '\n') {
+				return j;
+			}
+		}
+		return length;
+	}
+
+	private static int skipBlank(String content, int i) {
+		int length = content.length();
+		while (i < length) {
+			if (Character.isWhitespace(content.charAt(i))) {
+				i++;
+			} else if (content.startsWith("/*", i)) {
+				i = skipComment(content, i);
+			} else {
+				break;
+			}
+		}
+		return i;
+	}
+
+	private static boolean isNameChar(String content, int i) {
+		if (i >= content.length()) {
+			return false;
+		}
+		char c = content.charAt(i);
+		return Character.isLetterOrDigit(c) || c == '-' || c == '_';
+	}
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * A {@link ResourceTransformer} that replaces the .css extension of @import
+ * targets with .less.
+ * 
+ * Comments and strings are copied as they are. At-rules are held back until
+ * the end of the statement, which may be in a later chunk, and then rewritten
+ * by {@link CssImportRewriter}. Other at-rules are released as soon as their
+ * name shows that they are not imports.
+ */
+public class CssImportTransformer implements ResourceTransformer {
+
+	private static final String IMPORT = "@import";
+	private static final int MAX_STATEMENT = 4096;
+
+	@Override
+	public Transformation start(String path) {
+		return new ImportTransformation();
+	}
+
+	private static class ImportTransformation implements Transformation {
+
+		private static final int CODE = 0;
+		private static final int SLASH = 1;
+		private static final int COMMENT = 2;
+		private static final int COMMENT_STAR = 3;
+		private static final int STRING = 4;
+		private static final int STRING_ESCAPE = 5;
+		private static final int STATEMENT = 6;
+
+		private final StringBuilder statement = new StringBuilder();
+		private int state = CODE;
+		private char quote;
+
+		@Override
+		public void transform(CharSequence in, int start, int end,
+				StringBuilder out) {
+			for (int i = start; i < end; i++) {
+				process(in.charAt(i), out);
+			}
+		}
+
+		@Override
+		public void finish(StringBuilder out) {
+			if (state == STATEMENT) {
+				out.append(CssImportRewriter.rewrite(statement.toString()));
+			}
+			state = CODE;
+		}
+
+		private void process(char c, StringBuilder out) {
+			switch (state) {
+			case STATEMENT:
+				statement(c, out);
+				return;
+			case SLASH:
+				state = CODE;
+				if (c == '*') {
+					out.append(c);
+					state = COMMENT;
+					return;
+				}
+				break;
+			case COMMENT:
+				out.append(c);
+				if (c == '*') {
+					state = COMMENT_STAR;
+				}
+				return;
+			case COMMENT_STAR:
+				out.append(c);
+				if (c == '/') {
+					state = CODE;
+				} else if (c != '*') {
+					state = COMMENT;
+				}
+				return;
+			case STRING:
+				out.append(c);
+				if (c == '\\') {
+					state = STRING_ESCAPE;
+				} else if (c == quote || c == '\n') {
+					state = CODE;
+				}
+				return;
+			case STRING_ESCAPE:
+				out.append(c);
+				state = STRING;
+				return;
+			}
+			if (c == '@') {
+				statement.setLength(0);
+				statement.append(c);
+				quote = 0;
+				state = STATEMENT;
+				return;
+			}
+			out.append(c);
+			if (c == '/') {
+				state = SLASH;
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+				state = STRING;
+			}
+		}
+
+		private void statement(char c, StringBuilder out) {
+			statement.append(c);
+			int length = statement.length();
+			if (length <= IMPORT.length()) {
+				if (Character.toLowerCase(c) != IMPORT.charAt(length - 1)) {
+					release(out);
+				}
+				return;
+			}
+			if (length == IMPORT.length() + 1
+					&& (Character.isLetterOrDigit(c) || c == '-' || c == '_')) {
+				release(out);
+				return;
+			}
+			if (quote == 0) {
+				if (c == '"' || c == '\'') {
+					quote = c;
+				} else if (c == ';' || c == '{' || c == '}') {
+					state = CODE;
+					out.append(CssImportRewriter.rewrite(statement.toString()));
+				}
+			} else if (c == quote || c == '\n') {
+				quote = 0;
+			}
+			if (state == STATEMENT && length >= MAX_STATEMENT) {
+				state = CODE;
+				out.append(CssImportRewriter.rewrite(statement.toString()));
+			}
+		}
+
+		/**
+		 * Copies the @ and processes the characters held back after it again,
+		 * as they are not part of an import.
+		 */
+		private void release(StringBuilder out) {
+			state = CODE;
+			out.append('@');
+			String rest = statement.substring(1);
+			for (int i = 0; i < rest.length(); i++) {
+				process(rest.charAt(i), out);
+			}
+		}
+	}
+
+}
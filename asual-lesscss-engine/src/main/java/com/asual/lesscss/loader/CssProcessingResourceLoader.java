@@ -15,6 +15,11 @@
 package com.asual.lesscss.loader;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
 
 /**
  * A {@link ResourceLoader} that allows using lesscss @include in plain .css
@@ -22,36 +27,157 @@ import java.io.IOException;
  * 
  * Multiple levels of nesting are achieved by combining these two actions:
  * <ol>
- * <li>When a resource is loaded all .css strings are replaced with .less</li>
+ * <li>When a resource is loaded the .css extensions of its @import targets are
+ * replaced with .less</li>
  * <li>When a .less include file is requested and it does not exist, the
  * extension is changed to .css and lookup is retried.</li>
  * </ol>
  * 
+ * Paths that had to fall back to .css are remembered, so that later lookups
+ * go straight to the .css file.
+ * 
  * @author Rafał Krzewski
+ * @see CssImportTransformer
  */
-public class CssProcessingResourceLoader implements ResourceLoader {
+public class CssProcessingResourceLoader extends TransformingResourceLoader {
+
+	private static final int MAX_FALLBACKS = 1024;
 
 	private final ResourceLoader delegate;
 
+	private final Map<String, String> fallbacks = new LinkedHashMap<String, String>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > MAX_FALLBACKS;
+		}
+	};
+
 	public CssProcessingResourceLoader(ResourceLoader delegate) {
+		super(delegate, new CssImportTransformer());
 		this.delegate = delegate;
 	}
 
 	@Override
 	public boolean exists(String path) throws IOException {
-		return delegate.exists(path)
-				|| delegate.exists(path.replaceFirst("\\.less$", ".css"));
+		String fallback = getFallback(path);
+		if (fallback != null && delegate.exists(fallback)) {
+			return true;
+		}
+		if (delegate.exists(path)) {
+			return true;
+		}
+		fallback = toCss(path);
+		if (fallback != null && delegate.exists(fallback)) {
+			putFallback(path, fallback);
+			return true;
+		}
+		return false;
 	}
 
 	@Override
-	public String load(String path, String charset) throws IOException {
-		String content;
-		if (delegate.exists(path)) {
-			content = delegate.load(path, charset);
-		} else {
-			content = delegate.load(path.replaceFirst("\\.less$", ".css"),
-					charset);
+	LoadedResource load(String path, String charset, boolean fingerprint)
+			throws IOException {
+		String fallback = getFallback(path);
+		if (fallback != null) {
+			try {
+				return super.load(fallback, charset, fingerprint);
+			} catch (ResourceNotFoundException e) {
+				removeFallback(path);
+			}
+		}
+		try {
+			return super.load(path, charset, fingerprint);
+		} catch (IOException e) {
+			fallback = toCss(path);
+			if (fallback == null
+					|| !(e instanceof ResourceNotFoundException)
+					&& delegate.exists(path)) {
+				throw e;
+			}
 		}
-		return content.replaceAll("\\.css", ".less");
+		LoadedResource resource = super.load(fallback, charset, fingerprint);
+		putFallback(path, fallback);
+		return resource;
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, final Executor executor) {
+		if (isCharsetSniffing() || !(delegate instanceof AsyncResourceLoader)) {
+			return super.loadAsync(path, charset, executor);
+		}
+		final AsyncResourceLoader loader = (AsyncResourceLoader) delegate;
+		String fallback = getFallback(path);
+		if (fallback == null) {
+			return loadAsyncOrFallBack(loader, path, charset, executor);
+		}
+		return AsyncResourceLoaderAdapter.recover(
+				loadAsync(loader, fallback, charset, executor),
+				new Function<Throwable, CompletableFuture<LoadedResource>>() {
+					@Override
+					public CompletableFuture<LoadedResource> apply(Throwable e) {
+						if (!(e instanceof ResourceNotFoundException)) {
+							return AsyncResourceLoaderAdapter.failed(e);
+						}
+						removeFallback(path);
+						return loadAsyncOrFallBack(loader, path, charset,
+								executor);
+					}
+				});
+	}
+
+	/**
+	 * An asynchronous loader reports a missing resource with a
+	 * {@link ResourceNotFoundException}, so only that falls back to .css.
+	 */
+	private CompletableFuture<LoadedResource> loadAsyncOrFallBack(
+			final AsyncResourceLoader loader, final String path,
+			final String charset, final Executor executor) {
+		return AsyncResourceLoaderAdapter.recover(
+				loadAsync(loader, path, charset, executor),
+				new Function<Throwable, CompletableFuture<LoadedResource>>() {
+					@Override
+					public CompletableFuture<LoadedResource> apply(Throwable e) {
+						final String fallback = toCss(path);
+						if (fallback == null
+								|| !(e instanceof ResourceNotFoundException)) {
+							return AsyncResourceLoaderAdapter.failed(e);
+						}
+						return putFallback(path, fallback,
+								loadAsync(loader, fallback, charset, executor));
+					}
+				});
+	}
+
+	private CompletableFuture<LoadedResource> putFallback(final String path,
+			final String fallback, CompletableFuture<LoadedResource> future) {
+		return future.thenApply(new Function<LoadedResource, LoadedResource>() {
+			@Override
+			public LoadedResource apply(LoadedResource resource) {
+				putFallback(path, fallback);
+				return resource;
+			}
+		});
+	}
+
+	private static String toCss(String path) {
+		return path.endsWith(".less") ? path.substring(0, path.length() - 5)
+				+ ".css" : null;
+	}
+
+	private synchronized String getFallback(String path) {
+		return fallbacks.get(path);
+	}
+
+	private synchronized void putFallback(String path, String fallback) {
+		fallbacks.put(path, fallback);
+	}
+
+	private synchronized void removeFallback(String path) {
+		fallbacks.remove(path);
 	}
 }
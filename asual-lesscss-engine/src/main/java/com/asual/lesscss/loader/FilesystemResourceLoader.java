@@ -18,21 +18,271 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * A {@link ResourceLoader} that loads resources from the file system.
  * 
+ * Files are read through a {@link FileChannel} into a heap buffer sized for
+ * the whole file and decoded in one pass. They are not memory-mapped, as a
+ * mapping is only released when its buffer is garbage collected.
+ * Opening the file doubles as the existence check. Asynchronous loads read
+ * the file through an {@link AsynchronousFileChannel} and decode it on the
+ * given executor.
+ * 
  * @author Rafał Krzewski
  */
-public class FilesystemResourceLoader extends StreamResourceLoader {
+public class FilesystemResourceLoader extends StreamResourceLoader implements
+		AsyncResourceLoader {
 
 	private final static String SCHEMA = "file";
+	private final static Pattern PATTERN = Pattern.compile("^([\\w]{2,}):(.*)");
 
 	@Override
 	protected String getSchema() {
 		return SCHEMA;
 	}
 
+	@Override
+	public boolean exists(String path) throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			return m.group(1).equals(SCHEMA) && exists(m.group(2));
+		}
+		File file = new File(path);
+		return file.isFile() && file.canRead();
+	}
+
+	@Override
+	public String load(String path, String charset) throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (m.group(1).equals(SCHEMA)) {
+				return load(m.group(2), charset);
+			}
+			throw new ResourceNotFoundException(path);
+		}
+		Path file = toPath(path);
+		FileChannel channel = open(file, path);
+		try {
+			return decode(read(channel), charset);
+		} catch (CharacterCodingException e) {
+			throw e;
+		} catch (IOException e) {
+			throw notFoundIfDirectory(file, path, e);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * The fingerprint is computed while the file is decoded. The version is
+	 * made of the modification time and size of the file.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return load(path, charset, new TransformingResourceLoader(this), true);
+	}
+
+	/**
+	 * Transformed resources are decoded from the channel in chunks, without
+	 * reading the whole file into memory first.
+	 */
+	@Override
+	LoadedResource load(String path, String charset,
+			TransformingResourceLoader transformer, boolean fingerprint)
+			throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (m.group(1).equals(SCHEMA)) {
+				return load(m.group(2), charset, transformer, fingerprint);
+			}
+			throw new ResourceNotFoundException(path);
+		}
+		Path file = toPath(path);
+		FileChannel channel = open(file, path);
+		try {
+			return transformer.transform(path, channel, charset, file
+					.toAbsolutePath().toString(), version(file, channel.size()),
+					fingerprint);
+		} catch (CharacterCodingException e) {
+			throw e;
+		} catch (IOException e) {
+			throw notFoundIfDirectory(file, path, e);
+		} finally {
+			channel.close();
+		}
+	}
+
+	private static String version(Path file, long size) {
+		return "file:" + file.toFile().lastModified() + ":" + size;
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(String path,
+			final String charset, final Executor executor) {
+		final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (m.group(1).equals(SCHEMA)) {
+				return loadAsync(m.group(2), charset, executor);
+			}
+			future.completeExceptionally(new ResourceNotFoundException(path));
+			return future;
+		}
+		final String location = path;
+		final Path file;
+		final AsynchronousFileChannel channel;
+		final ByteBuffer buffer;
+		final String version;
+		try {
+			file = toPath(path);
+			try {
+				channel = AsynchronousFileChannel.open(file,
+						StandardOpenOption.READ);
+			} catch (NoSuchFileException e) {
+				throw new ResourceNotFoundException(path);
+			} catch (AccessDeniedException e) {
+				throw new ResourceNotFoundException(path);
+			}
+			try {
+				long size = channel.size();
+				if (size > Integer.MAX_VALUE) {
+					throw new IOException("File too large " + path);
+				}
+				buffer = ByteBuffer.allocate((int) size);
+				version = version(file, size);
+			} catch (IOException e) {
+				channel.close();
+				throw e;
+			}
+		} catch (IOException e) {
+			future.completeExceptionally(e);
+			return future;
+		}
+		channel.read(buffer, 0, null, new CompletionHandler<Integer, Void>() {
+
+			@Override
+			public void completed(Integer result, Void attachment) {
+				if (result >= 0 && buffer.hasRemaining()) {
+					channel.read(buffer, buffer.position(), null, this);
+					return;
+				}
+				close(channel);
+				buffer.flip();
+				AsyncResourceLoaderAdapter.execute(executor, future,
+						new Runnable() {
+							@Override
+							public void run() {
+								try {
+									future.complete(new LoadedResource(decode(
+											buffer, charset), file
+											.toAbsolutePath().toString(), null,
+											version));
+								} catch (Throwable e) {
+									future.completeExceptionally(e);
+								}
+							}
+						});
+			}
+
+			@Override
+			public void failed(Throwable e, Void attachment) {
+				close(channel);
+				future.completeExceptionally(e instanceof IOException ? notFoundIfDirectory(
+						file, location, (IOException) e) : e);
+			}
+		});
+		return future;
+	}
+
+	private static void close(AsynchronousFileChannel channel) {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			// nothing left to read
+		}
+	}
+
+	private static Path toPath(String path) throws IOException {
+		try {
+			return Paths.get(path);
+		} catch (InvalidPathException e) {
+			throw new ResourceNotFoundException(path);
+		}
+	}
+
+	private static FileChannel open(Path file, String path) throws IOException {
+		try {
+			return FileChannel.open(file, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			throw new ResourceNotFoundException(path);
+		} catch (AccessDeniedException e) {
+			throw new ResourceNotFoundException(path);
+		}
+	}
+
+	private static IOException notFoundIfDirectory(Path file, String path,
+			IOException e) {
+		return Files.isDirectory(file) ? new ResourceNotFoundException(path) : e;
+	}
+
+	private static ByteBuffer read(FileChannel channel) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) channel.size());
+		while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static String decode(ByteBuffer in, String charset)
+			throws CharacterCodingException {
+		CharsetDecoder decoder = Charset.forName(charset).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer out = CharBuffer.allocate((int) Math.ceil(in.remaining()
+				* (double) decoder.maxCharsPerByte()));
+		CoderResult result = decoder.decode(in, out, true);
+		while (result.isOverflow()) {
+			out = grow(out);
+			result = decoder.decode(in, out, true);
+		}
+		if (result.isError()) {
+			result.throwException();
+		}
+		while (decoder.flush(out).isOverflow()) {
+			out = grow(out);
+		}
+		return new String(out.array(), 0, out.position());
+	}
+
+	private static CharBuffer grow(CharBuffer buffer) {
+		CharBuffer larger = CharBuffer.allocate(buffer.capacity() * 2 + 16);
+		buffer.flip();
+		return larger.put(buffer);
+	}
+
 	/**
 	 * Note that path should be absolute, otherwise the results are dependent on
 	 * the VM's {@code user.dir}.
@@ -14,32 +14,424 @@
 
 package com.asual.lesscss.loader;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.net.URL;
 import java.net.URLConnection;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
- * A naive resource loader using {@link java.net.URLConnection}.
+ * A resource loader using {@link java.net.HttpURLConnection}.
  * 
- * For any sort of serious usage, a proper loader needs to be implemented using
- * Apache httpclient or similar.
+ * Connections are kept alive and reused by reading every response fully.
+ * When a cache directory is set, responses are stored on disk along with their
+ * {@code ETag} and {@code Last-Modified} headers and revalidated with
+ * {@code If-None-Match} and {@code If-Modified-Since} requests. In offline
+ * mode, cached responses are served when the server cannot be reached.
+ * 
+ * {@link HttpURLConnection} blocks, so asynchronous loads run on the given
+ * executor. Concurrent asynchronous loads of the same URL share a single
+ * request.
  * 
  * @author Rafał Krzewski
  */
-public class HTTPResourceLoader extends StreamResourceLoader {
+public class HTTPResourceLoader extends StreamResourceLoader implements
+		AsyncResourceLoader {
 
 	private static final String SCHEMA = "http";
+	private static final Pattern PATTERN = Pattern.compile("^([\\w]{2,}):(.*)");
+	private static final String CACHE_VERSION = "v2";
+
+	private int connectTimeout = 10000;
+	private int readTimeout = 30000;
+	private File cacheDirectory;
+	private boolean offline;
+
+	private final ConcurrentMap<String, CompletableFuture<Response>> requests = new ConcurrentHashMap<String, CompletableFuture<Response>>();
 
 	@Override
 	protected String getSchema() {
 		return SCHEMA;
 	}
 
+	/**
+	 * Returns the connect timeout in milliseconds, {@code 0} means infinite.
+	 */
+	public int getConnectTimeout() {
+		return connectTimeout;
+	}
+
+	public void setConnectTimeout(int connectTimeout) {
+		this.connectTimeout = connectTimeout;
+	}
+
+	/**
+	 * Returns the read timeout in milliseconds, {@code 0} means infinite.
+	 */
+	public int getReadTimeout() {
+		return readTimeout;
+	}
+
+	public void setReadTimeout(int readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Returns the directory of the response cache, or {@code null} if
+	 * responses are not cached.
+	 */
+	public File getCacheDirectory() {
+		return cacheDirectory;
+	}
+
+	public void setCacheDirectory(File cacheDirectory) {
+		this.cacheDirectory = cacheDirectory;
+	}
+
+	/**
+	 * Returns {@code true} if cached responses are served when the server
+	 * cannot be reached or fails.
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	public void setOffline(boolean offline) {
+		this.offline = offline;
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		URL url = toURL(path);
+		if (url == null) {
+			return false;
+		}
+		try {
+			HttpURLConnection conn = open(url);
+			conn.setRequestMethod("HEAD");
+			int code = conn.getResponseCode();
+			drain(conn);
+			return code < 400;
+		} catch (IOException e) {
+			File file = cacheFile(url);
+			if (offline && file != null && file.isFile()) {
+				return true;
+			}
+			throw e;
+		}
+	}
+
+	@Override
+	public String load(String path, String charset) throws IOException {
+		return new String(loadResponse(path).content, charset);
+	}
+
+	/**
+	 * The fingerprint is computed while the response is decoded. The version
+	 * is the {@code ETag} or {@code Last-Modified} header of the response.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return load(path, charset, new TransformingResourceLoader(this), true);
+	}
+
+	@Override
+	LoadedResource load(String path, String charset,
+			TransformingResourceLoader transformer, boolean fingerprint)
+			throws IOException {
+		Response response = loadResponse(path);
+		return transformer.transform(path, Channels
+				.newChannel(new ByteArrayInputStream(response.content)),
+				charset, toURL(path).toString(), response.version(),
+				fingerprint);
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, Executor executor) {
+		URL url;
+		try {
+			url = toURL(path);
+		} catch (IOException e) {
+			url = null;
+		}
+		if (url == null) {
+			CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+			future.completeExceptionally(new ResourceNotFoundException(path));
+			return future;
+		}
+		final String key = url.toString();
+		final CompletableFuture<Response> request = new CompletableFuture<Response>();
+		CompletableFuture<Response> pending = requests.putIfAbsent(key, request);
+		if (pending == null) {
+			pending = request;
+			AsyncResourceLoaderAdapter.execute(executor, request,
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								Response response = loadResponse(path);
+								requests.remove(key, request);
+								request.complete(response);
+							} catch (Throwable e) {
+								requests.remove(key, request);
+								request.completeExceptionally(e);
+							}
+						}
+					});
+			if (request.isCompletedExceptionally()) {
+				requests.remove(key, request);
+			}
+		}
+		return pending.thenApply(new Function<Response, LoadedResource>() {
+			@Override
+			public LoadedResource apply(Response response) {
+				return new LoadedResource(new String(response.content, Charset
+						.forName(charset)), key, null, response.version());
+			}
+		});
+	}
+
+	private Response loadResponse(String path) throws IOException {
+		URL url = toURL(path);
+		if (url == null) {
+			throw new ResourceNotFoundException(path);
+		}
+		File file = cacheFile(url);
+		Response cached = file != null ? readResponse(file) : null;
+		Response response;
+		try {
+			response = get(url, cached);
+		} catch (IOException e) {
+			if (offline && cached != null) {
+				return cached;
+			}
+			throw e;
+		}
+		if (response == null) {
+			throw new ResourceNotFoundException(path);
+		}
+		if (response != cached && file != null) {
+			writeResponse(file, response);
+		}
+		return response;
+	}
+
+	/**
+	 * Returns the cached response if it is still valid, the new response, or
+	 * {@code null} if the resource does not exist.
+	 */
+	private Response get(URL url, Response cached) throws IOException {
+		HttpURLConnection conn = open(url);
+		if (cached != null) {
+			if (cached.etag != null) {
+				conn.setRequestProperty("If-None-Match", cached.etag);
+			}
+			if (cached.lastModified != null) {
+				conn.setRequestProperty("If-Modified-Since",
+						cached.lastModified);
+			}
+		}
+		int code = conn.getResponseCode();
+		if (code == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+			drain(conn);
+			return cached;
+		}
+		if (code == HttpURLConnection.HTTP_NOT_FOUND
+				|| code == HttpURLConnection.HTTP_GONE) {
+			drain(conn);
+			return null;
+		}
+		if (code >= 400) {
+			drain(conn);
+			throw new IOException("Server returned HTTP response code "
+					+ code + " for URL " + url);
+		}
+		InputStream in = conn.getInputStream();
+		try {
+			return new Response(conn.getHeaderField("ETag"),
+					conn.getHeaderField("Last-Modified"), read(in));
+		} finally {
+			in.close();
+		}
+	}
+
+	private HttpURLConnection open(URL url) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		conn.setConnectTimeout(connectTimeout);
+		conn.setReadTimeout(readTimeout);
+		// Caching is handled here rather than by a ResponseCache
+		conn.setUseCaches(false);
+		return conn;
+	}
+
+	/**
+	 * Reads and closes the remaining response, so that the connection can be
+	 * reused.
+	 */
+	private static void drain(HttpURLConnection conn) throws IOException {
+		InputStream in = conn.getErrorStream();
+		if (in == null) {
+			try {
+				in = conn.getInputStream();
+			} catch (IOException e) {
+				return;
+			}
+		}
+		try {
+			read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int c;
+		while ((c = in.read(b)) >= 0) {
+			out.write(b, 0, c);
+		}
+		return out.toByteArray();
+	}
+
+	/**
+	 * Returns the URL of a path with or without the {@code http:} schema, or
+	 * {@code null} if it is not an HTTP path.
+	 */
+	private static URL toURL(String path) throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (!m.group(1).equals(SCHEMA)) {
+				return null;
+			}
+			path = m.group(2);
+		}
+		if (!path.startsWith("//")) {
+			// A plain path without a host
+			return null;
+		}
+		return new URL(SCHEMA + ":" + path);
+	}
+
+	private File cacheFile(URL url) {
+		if (cacheDirectory == null) {
+			return null;
+		}
+		return new File(new File(cacheDirectory, CACHE_VERSION),
+				ContentDigest.sha1(url.toString()));
+	}
+
+	private static Response readResponse(File file) {
+		if (!file.isFile()) {
+			return null;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file)));
+			try {
+				String etag = in.readUTF();
+				String lastModified = in.readUTF();
+				int length = in.readInt();
+				if (length < 0 || length > file.length()) {
+					return null;
+				}
+				byte[] content = new byte[length];
+				in.readFully(content);
+				return new Response(etag.isEmpty() ? null : etag,
+						lastModified.isEmpty() ? null : lastModified, content);
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Stores a response, a failure only costs a full request next time.
+	 */
+	private static void writeResponse(File file, Response response) {
+		File dir = file.getParentFile();
+		try {
+			if (!dir.isDirectory() && !dir.mkdirs()) {
+				return;
+			}
+			File temp = File.createTempFile(file.getName(), ".tmp", dir);
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			try {
+				out.writeUTF(response.etag != null ? response.etag : "");
+				out.writeUTF(response.lastModified != null ? response.lastModified
+						: "");
+				out.writeInt(response.content.length);
+				out.write(response.content);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(file)) {
+				file.delete();
+				if (!temp.renameTo(file)) {
+					temp.delete();
+				}
+			}
+		} catch (IOException e) {
+			// ignored
+		}
+	}
+
 	@Override
 	protected InputStream openStream(String path) throws IOException {
-		URL url = new URL(SCHEMA + ":" + path);
-		URLConnection conn = url.openConnection();
-		return conn.getInputStream();
+		if (!path.startsWith("//")) {
+			// A plain path without a host
+			return null;
+		}
+		URLConnection conn = open(new URL(SCHEMA + ":" + path));
+		try {
+			return conn.getInputStream();
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+	}
+
+	private static class Response {
+
+		private final String etag;
+		private final String lastModified;
+		private final byte[] content;
+
+		public Response(String etag, String lastModified, byte[] content) {
+			this.etag = etag;
+			this.lastModified = lastModified;
+			this.content = content;
+		}
+
+		public String version() {
+			if (etag != null) {
+				return "etag:" + etag;
+			}
+			return lastModified != null ? "last-modified:" + lastModified
+					: null;
+		}
 	}
 }
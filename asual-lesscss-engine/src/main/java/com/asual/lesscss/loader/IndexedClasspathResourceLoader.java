@@ -0,0 +1,372 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link ClasspathResourceLoader} that keeps an index of the stylesheets on
+ * the class path.
+ * 
+ * Looking up a resource through a {@link ClassLoader} scans every jar on the
+ * class path, which is slow with many jars, e.g. WebJars. On first use, this
+ * loader lists the .less and .css entries of the jars of the class loader and
+ * its parents, so that stylesheets are found, or reported missing, without
+ * asking the class loader. Directories of the class path are not indexed, as
+ * their content changes while the application runs: a stylesheet is looked up
+ * in them on disk, in class path order. The content of small stylesheets is
+ * kept in memory once loaded, and revalidated against the size and
+ * modification time of files in directories.
+ * 
+ * The class path is checked for changes at most once per check interval, by
+ * comparing its locations and the sizes and modification times of its jars,
+ * and the index is rebuilt when it has changed. Other resources, and all
+ * resources if the class path cannot be listed, are loaded from the class
+ * loader.
+ */
+public class IndexedClasspathResourceLoader extends ClasspathResourceLoader {
+
+	private static final String SCHEMA = "classpath";
+	private static final Pattern PATTERN = Pattern.compile("^([\\w]{2,}):(.*)");
+	private static final int DEFAULT_MAX_CACHED_SIZE = 64 * 1024;
+	private static final long DEFAULT_CHECK_INTERVAL = 5000;
+
+	private final int maxCachedSize;
+	private final long checkInterval;
+
+	private volatile Index index;
+
+	public IndexedClasspathResourceLoader(ClassLoader classLoader) {
+		this(classLoader, DEFAULT_MAX_CACHED_SIZE, DEFAULT_CHECK_INTERVAL);
+	}
+
+	/**
+	 * Creates a new {@link IndexedClasspathResourceLoader}.
+	 * 
+	 * @param classLoader
+	 *            a {@link ClassLoader} to load resources from.
+	 * @param maxCachedSize
+	 *            the maximum size in bytes of a stylesheet kept in memory,
+	 *            {@code 0} disables caching.
+	 * @param checkInterval
+	 *            the minimum time in milliseconds between checks for class
+	 *            path changes, a negative value disables checks.
+	 */
+	public IndexedClasspathResourceLoader(ClassLoader classLoader,
+			int maxCachedSize, long checkInterval) {
+		super(classLoader);
+		this.maxCachedSize = maxCachedSize;
+		this.checkInterval = checkInterval;
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			return m.group(1).equals(SCHEMA) && exists(m.group(2));
+		}
+		Index index = getIndex();
+		if (index.roots != null && isIndexed(path)) {
+			return index.find(path) != null;
+		}
+		return super.exists(path);
+	}
+
+	@Override
+	protected InputStream openStream(String path) {
+		Index index = getIndex();
+		if (index.roots == null || !isIndexed(path)) {
+			return super.openStream(path);
+		}
+		Entry entry = index.find(path);
+		if (entry == null) {
+			return null;
+		}
+		try {
+			return entry.open();
+		} catch (IOException e) {
+			// the class path changed since the index was built
+			invalidate();
+			return super.openStream(path);
+		}
+	}
+
+	/**
+	 * Discards the index, so that it is rebuilt on next use.
+	 */
+	public void invalidate() {
+		index = null;
+	}
+
+	/**
+	 * Returns the number of stylesheets indexed in jars.
+	 */
+	public int getSize() {
+		return getIndex().entries.size();
+	}
+
+	private static boolean isIndexed(String path) {
+		return path.endsWith(".less") || path.endsWith(".css");
+	}
+
+	private Index getIndex() {
+		Index current = index;
+		long now = System.currentTimeMillis();
+		if (current != null
+				&& (checkInterval < 0 || now < current.checked + checkInterval)) {
+			return current;
+		}
+		synchronized (this) {
+			current = index;
+			if (current != null
+					&& (checkInterval < 0 || now < current.checked
+							+ checkInterval)) {
+				return current;
+			}
+			List<File> roots = roots();
+			String signature = roots != null ? signature(roots) : null;
+			if (current == null || signature == null
+					|| !signature.equals(current.signature)) {
+				current = new Index(roots, signature);
+			}
+			current.checked = now;
+			index = current;
+			return current;
+		}
+	}
+
+	/**
+	 * Lists the jars and directories of the class loader and its parents in
+	 * delegation order, or returns {@code null} if they are unknown.
+	 */
+	private List<File> roots() {
+		List<ClassLoader> loaders = new ArrayList<ClassLoader>();
+		for (ClassLoader cl = getClassLoader(); cl != null; cl = cl.getParent()) {
+			loaders.add(0, cl);
+		}
+		ClassLoader system = ClassLoader.getSystemClassLoader();
+		Set<File> roots = new LinkedHashSet<File>();
+		for (ClassLoader cl : loaders) {
+			if (cl instanceof URLClassLoader) {
+				for (URL url : ((URLClassLoader) cl).getURLs()) {
+					if (!"file".equals(url.getProtocol())) {
+						return null;
+					}
+					try {
+						roots.add(new File(url.toURI()));
+					} catch (URISyntaxException e) {
+						roots.add(new File(url.getPath()));
+					}
+				}
+			} else if (cl == system) {
+				for (String path : System.getProperty("java.class.path", "")
+						.split(File.pathSeparator)) {
+					if (!path.isEmpty()) {
+						roots.add(new File(path).getAbsoluteFile());
+					}
+				}
+			} else if (cl != system.getParent()) {
+				// the platform class loader holds no stylesheets
+				return null;
+			}
+		}
+		return new ArrayList<File>(roots);
+	}
+
+	private static String signature(List<File> roots) {
+		StringBuilder sb = new StringBuilder();
+		for (File root : roots) {
+			sb.append(root.getPath());
+			if (!root.isDirectory()) {
+				sb.append('|').append(root.length()).append('|')
+						.append(root.lastModified());
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private class Index {
+
+		private final List<File> roots;
+		private final String signature;
+		private final Map<String, Entry> entries = new HashMap<String, Entry>();
+		private final Set<File> directories = new HashSet<File>();
+		private final ConcurrentMap<File, Entry> files = new ConcurrentHashMap<File, Entry>();
+		private volatile long checked;
+
+		public Index(List<File> roots, String signature) {
+			this.roots = roots;
+			this.signature = signature;
+			if (roots != null) {
+				for (File root : roots) {
+					if (root.isDirectory()) {
+						directories.add(root);
+					} else if (root.isFile()) {
+						scan(root);
+					}
+				}
+			}
+		}
+
+		/**
+		 * Returns the first stylesheet with the given path in the directories
+		 * and jars of the class path, or {@code null}.
+		 */
+		public Entry find(String path) {
+			for (File root : roots) {
+				if (directories.contains(root)) {
+					File file = new File(root, path);
+					if (file.isFile()) {
+						Entry entry = files.get(file);
+						if (entry == null) {
+							entry = new Entry(file, null);
+							Entry cached = files.putIfAbsent(file, entry);
+							if (cached != null) {
+								entry = cached;
+							}
+						}
+						return entry;
+					}
+				} else {
+					Entry entry = entries.get(path);
+					if (entry != null && entry.file.equals(root)) {
+						return entry;
+					}
+				}
+			}
+			return null;
+		}
+
+		private void scan(File jar) {
+			try {
+				JarFile file = new JarFile(jar);
+				try {
+					Enumeration<JarEntry> e = file.entries();
+					while (e.hasMoreElements()) {
+						String path = e.nextElement().getName();
+						if (isIndexed(path) && !entries.containsKey(path)) {
+							entries.put(path, new Entry(jar, path));
+						}
+					}
+				} finally {
+					file.close();
+				}
+			} catch (IOException e) {
+				// not a jar
+			}
+		}
+	}
+
+	/**
+	 * A stylesheet in a directory or, if the entry name is set, in a jar.
+	 */
+	private class Entry {
+
+		private final File file;
+		private final String name;
+		private volatile Content content;
+
+		public Entry(File file, String name) {
+			this.file = file;
+			this.name = name;
+		}
+
+		public InputStream open() throws IOException {
+			Content content = this.content;
+			InputStream in;
+			long size;
+			long modified = 0;
+			if (name == null) {
+				size = file.length();
+				modified = file.lastModified();
+				if (content != null && content.size == size
+						&& content.modified == modified) {
+					return new ByteArrayInputStream(content.bytes);
+				}
+				in = new FileInputStream(file);
+			} else {
+				if (content != null) {
+					return new ByteArrayInputStream(content.bytes);
+				}
+				JarURLConnection conn = (JarURLConnection) new URL("jar:"
+						+ file.toURI().toURL() + "!/" + name).openConnection();
+				// a cached jar would outlive a rebuild of the index
+				conn.setUseCaches(false);
+				in = conn.getInputStream();
+				size = conn.getJarEntry().getSize();
+			}
+			if (size < 0 || size > maxCachedSize) {
+				this.content = null;
+				return in;
+			}
+			byte[] bytes;
+			try {
+				bytes = read(in);
+			} finally {
+				in.close();
+			}
+			this.content = new Content(bytes, size, modified);
+			return new ByteArrayInputStream(bytes);
+		}
+	}
+
+	private static class Content {
+
+		private final byte[] bytes;
+		private final long size;
+		private final long modified;
+
+		public Content(byte[] bytes, long size, long modified) {
+			this.bytes = bytes;
+			this.size = size;
+			this.modified = modified;
+		}
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] b = new byte[8192];
+		int c;
+		while ((c = in.read(b)) >= 0) {
+			out.write(b, 0, c);
+		}
+		return out.toByteArray();
+	}
+
+}
@@ -14,10 +14,11 @@
 
 package com.asual.lesscss.loader;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.MalformedURLException;
 import java.net.URL;
-import java.net.URLConnection;
 
 /**
  * A {@link ResourceLoader} that loads JNDI resources.
@@ -35,8 +36,17 @@ public class JNDIResourceLoader extends StreamResourceLoader {
 
 	@Override
 	protected InputStream openStream(String path) throws IOException {
-		URL url = new URL(SCHEMA + ":" + path);
-		URLConnection conn = url.openConnection();
-		return conn.getInputStream();
+		URL url;
+		try {
+			url = new URL(SCHEMA + ":" + path);
+		} catch (MalformedURLException e) {
+			// No JNDI URL handler outside of a container
+			return null;
+		}
+		try {
+			return url.openConnection().getInputStream();
+		} catch (FileNotFoundException e) {
+			return null;
+		}
 	}
 }
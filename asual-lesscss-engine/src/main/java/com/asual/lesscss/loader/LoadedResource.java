@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * The content of a loaded resource together with its resolved location, a
+ * fingerprint of the content and, when the loader knows it, a cheap version
+ * of the resource.
+ * 
+ * The fingerprint identifies the decoded content: two resources have the same
+ * fingerprint exactly when they have the same content. The version is
+ * metadata of the source, such as the modification time and size of a file or
+ * the {@code ETag} of an HTTP response, and changes whenever the resource
+ * changes, so that a cached copy can be validated without loading the
+ * resource again.
+ */
+public final class LoadedResource {
+
+	private final String content;
+	private final String location;
+	private final String version;
+	private volatile String fingerprint;
+
+	/**
+	 * Creates a resource whose fingerprint is computed from the content when
+	 * it is first requested.
+	 */
+	public LoadedResource(String content, String location) {
+		this(content, location, null);
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the content as returned by
+	 *            {@link #getFingerprint()}, or {@code null} to compute it
+	 *            when it is first requested.
+	 */
+	public LoadedResource(String content, String location, String fingerprint) {
+		this(content, location, fingerprint, null);
+	}
+
+	/**
+	 * @param fingerprint
+	 *            the fingerprint of the content as returned by
+	 *            {@link #getFingerprint()}, or {@code null} to compute it
+	 *            when it is first requested.
+	 * @param version
+	 *            the version of the resource or {@code null} if it is unknown.
+	 */
+	public LoadedResource(String content, String location, String fingerprint,
+			String version) {
+		this.content = content;
+		this.location = location;
+		this.fingerprint = fingerprint;
+		this.version = version;
+	}
+
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * Returns the location the resource was actually loaded from, e.g. an
+	 * absolute file path or a URL.
+	 */
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * Returns the hex encoded SHA-1 hash of the UTF-16 code units of the
+	 * content.
+	 */
+	public String getFingerprint() {
+		String fingerprint = this.fingerprint;
+		if (fingerprint == null) {
+			fingerprint = ContentDigest.sha1(content);
+			this.fingerprint = fingerprint;
+		}
+		return fingerprint;
+	}
+
+	/**
+	 * Returns a token that changes whenever the resource changes, e.g.
+	 * {@code file:<modified>:<size>} for files or {@code etag:<etag>} for
+	 * HTTP resources, or {@code null} if the loader does not know one.
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	@Override
+	public String toString() {
+		return location + " (" + getFingerprint() + ")";
+	}
+
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * A {@link ResourceTransformer} that removes \r characters, thus converting
+ * Windows newlines to Unix ones.
+ */
+public class NewlineTransformer implements ResourceTransformer,
+		ResourceTransformer.Transformation {
+
+	@Override
+	public Transformation start(String path) {
+		return this;
+	}
+
+	@Override
+	public void transform(CharSequence in, int start, int end, StringBuilder out) {
+		int copied = start;
+		for (int i = start; i < end; i++) {
+			if (in.charAt(i) == '\r') {
+				out.append(in, copied, i);
+				copied = i + 1;
+			}
+		}
+		out.append(in, copied, end);
+	}
+
+	@Override
+	public void finish(StringBuilder out) {
+	}
+
+}
@@ -49,4 +49,25 @@ public interface ResourceLoader {
 	 *             is invalid.
 	 */
 	public String load(String path, String charset) throws IOException;
+
+	/**
+	 * Loads the given resource's contents together with their fingerprint and
+	 * version. Loaders that decode the resource themselves compute the
+	 * fingerprint while decoding, others compute it when it is first
+	 * requested.
+	 * 
+	 * @param path
+	 *            resource path.
+	 * @param charset
+	 *            character set name, valid with respect to
+	 *            {@link java.nio.charset.Charset}.
+	 * @return the loaded resource.
+	 * @throws IOException
+	 *             when i/o error occurs while loading the resource, or charset
+	 *             is invalid.
+	 */
+	public default LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return new LoadedResource(load(path, charset), path);
+	}
 }
@@ -0,0 +1,31 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.io.IOException;
+
+/**
+ * Signals that a {@link ResourceLoader} cannot serve the requested resource,
+ * as opposed to an i/o error while reading a resource that exists.
+ */
+public class ResourceNotFoundException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public ResourceNotFoundException(String path) {
+		super("No such file " + path);
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+/**
+ * A transformation of resource content applied by a
+ * {@link TransformingResourceLoader}.
+ * 
+ * Content is passed to a transformer in chunks, as it is decoded, so a
+ * transformer that needs to look past the end of a chunk has to keep that
+ * state in its {@link Transformation}. A transformer must be safe for
+ * concurrent use; its transformations are used by one thread at a time.
+ */
+public interface ResourceTransformer {
+
+	/**
+	 * Starts the transformation of one resource.
+	 * 
+	 * @param path
+	 *            the path of the resource.
+	 */
+	Transformation start(String path);
+
+	/**
+	 * The state of the transformation of one resource.
+	 */
+	interface Transformation {
+
+		/**
+		 * Transforms the characters from {@code start} to {@code end} of the
+		 * given chunk, appending the result to {@code out}.
+		 */
+		void transform(CharSequence in, int start, int end, StringBuilder out);
+
+		/**
+		 * Appends any content held back after the last chunk to {@code out}.
+		 */
+		void finish(StringBuilder out);
+	}
+
+}
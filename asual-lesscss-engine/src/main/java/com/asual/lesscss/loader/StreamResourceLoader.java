@@ -18,7 +18,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.StringWriter;
+import java.nio.channels.Channels;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -30,7 +30,8 @@ import java.util.regex.Pattern;
  * name is stripped and lookup is retried with plain name instead. Paths
  * starting with other schema names are rejected, plain names are checked using
  * {@link #openStream(String)} - a non {@code null} return value indicates valid
- * resource.
+ * resource. Missing resources are reported with a
+ * {@link ResourceNotFoundException}.
  * 
  * @author Rafał Krzewski
  */
@@ -81,31 +82,86 @@ public abstract class StreamResourceLoader implements ResourceLoader {
 			if (m.group(1).equals(getSchema())) {
 				return load(m.group(2), charset);
 			}
-			throw new IOException("No such file " + path);
+			throw new ResourceNotFoundException(path);
 		}
 		InputStream is = openStream(path);
 		if (is != null) {
 			return readStream(is, charset);
 		}
-		throw new IOException("No such file " + path);
+		throw new ResourceNotFoundException(path);
+	}
+
+	/**
+	 * The fingerprint is computed while the stream is decoded.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (m.group(1).equals(getSchema())) {
+				return loadResource(m.group(2), charset);
+			}
+			throw new ResourceNotFoundException(path);
+		}
+		InputStream is = openStream(path);
+		if (is == null) {
+			throw new ResourceNotFoundException(path);
+		}
+		ContentDigest digest = new ContentDigest();
+		String content = readStream(is, charset, digest);
+		return new LoadedResource(content, path, digest.digest());
+	}
+
+	/**
+	 * Loads a resource for a {@link TransformingResourceLoader}, which decodes
+	 * and transforms the content of the stream in one pass.
+	 */
+	LoadedResource load(String path, String charset,
+			TransformingResourceLoader transformer, boolean fingerprint)
+			throws IOException {
+		Matcher m = PATTERN.matcher(path);
+		if (m.matches()) {
+			if (m.group(1).equals(getSchema())) {
+				return load(m.group(2), charset, transformer, fingerprint);
+			}
+			throw new ResourceNotFoundException(path);
+		}
+		InputStream is = openStream(path);
+		if (is == null) {
+			throw new ResourceNotFoundException(path);
+		}
+		try {
+			return transformer.transform(path, Channels.newChannel(is),
+					charset, path, null, fingerprint);
+		} finally {
+			is.close();
+		}
 	}
 
 	protected String readStream(InputStream is, String charset)
 			throws IOException {
+		return readStream(is, charset, null);
+	}
+
+	private static String readStream(InputStream is, String charset,
+			ContentDigest digest) throws IOException {
 		Reader r = new InputStreamReader(is, charset);
-		StringWriter w = new StringWriter();
 		try {
+			StringBuilder sb = new StringBuilder(Math.max(is.available(), 16));
 			char[] b = new char[4096];
 			int c = 0;
 			while (c >= 0) {
 				c = r.read(b);
 				if (c > 0) {
-					w.write(b, 0, c);
+					sb.append(b, 0, c);
+					if (digest != null) {
+						digest.update(b, 0, c);
+					}
 				}
 			}
-			return w.toString();
+			return sb.toString();
 		} finally {
-			w.close();
 			r.close();
 		}
 	}
@@ -0,0 +1,375 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+import com.asual.lesscss.loader.ResourceTransformer.Transformation;
+
+/**
+ * A delegating {@link ResourceLoader} that applies a sequence of
+ * {@link ResourceTransformer}s to resource content.
+ * 
+ * All transformers run in a single pass over the content, chunk by chunk, so
+ * that stacking transformations does not copy the whole resource once per
+ * transformation. When the delegate is a {@link StreamResourceLoader} or a
+ * {@link ChainedResourceLoader} of them, the chunks are transformed as they
+ * are decoded from the underlying stream. Otherwise the content loaded by the
+ * delegate is transformed.
+ * 
+ * Optionally, the charset of a resource is sniffed from its byte order mark
+ * or its {@code @charset} rule, and the requested charset is only used when
+ * neither is present. Sniffing requires access to the undecoded content and
+ * is skipped for other delegates.
+ * 
+ * Asynchronous loads transform the content on the executor once the delegate
+ * has loaded it, without blocking if the delegate is an
+ * {@link AsyncResourceLoader}. With charset sniffing they load the resource
+ * synchronously on the executor instead.
+ */
+public class TransformingResourceLoader implements AsyncResourceLoader {
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final String CHARSET_RULE = "@charset \"";
+
+	private final ResourceLoader delegate;
+	private final ResourceTransformer[] transformers;
+	private volatile boolean charsetSniffing;
+
+	public TransformingResourceLoader(ResourceLoader delegate,
+			ResourceTransformer... transformers) {
+		this.delegate = delegate;
+		this.transformers = transformers.clone();
+	}
+
+	public boolean isCharsetSniffing() {
+		return charsetSniffing;
+	}
+
+	/**
+	 * Sets whether the charset is taken from the byte order mark or the
+	 * {@code @charset} rule of a resource, when it has one.
+	 */
+	public void setCharsetSniffing(boolean charsetSniffing) {
+		this.charsetSniffing = charsetSniffing;
+	}
+
+	@Override
+	public boolean exists(String path) throws IOException {
+		return delegate.exists(path);
+	}
+
+	@Override
+	public String load(String path, String charset) throws IOException {
+		return load(path, charset, false).getContent();
+	}
+
+	/**
+	 * The fingerprint of the transformed content is computed while it is
+	 * transformed. The version of the delegate's resource is kept.
+	 */
+	@Override
+	public LoadedResource loadResource(String path, String charset)
+			throws IOException {
+		return load(path, charset, true);
+	}
+
+	@Override
+	public CompletableFuture<LoadedResource> loadAsync(final String path,
+			final String charset, Executor executor) {
+		if (charsetSniffing || !(delegate instanceof AsyncResourceLoader)) {
+			final CompletableFuture<LoadedResource> future = new CompletableFuture<LoadedResource>();
+			AsyncResourceLoaderAdapter.execute(executor, future,
+					new Runnable() {
+						@Override
+						public void run() {
+							try {
+								future.complete(load(path, charset, true));
+							} catch (Throwable e) {
+								future.completeExceptionally(e);
+							}
+						}
+					});
+			return future;
+		}
+		return loadAsync((AsyncResourceLoader) delegate, path, charset,
+				executor);
+	}
+
+	/**
+	 * Loads a resource asynchronously with the given loader and transforms
+	 * it on the executor.
+	 */
+	CompletableFuture<LoadedResource> loadAsync(AsyncResourceLoader loader,
+			final String path, String charset, Executor executor) {
+		return loader.loadAsync(path, charset, executor).thenApplyAsync(
+				new Function<LoadedResource, LoadedResource>() {
+					@Override
+					public LoadedResource apply(LoadedResource resource) {
+						Pipeline pipeline = new Pipeline(path, resource
+								.getContent().length(), true);
+						pipeline.push(resource.getContent());
+						return pipeline.finish(resource.getLocation(),
+								resource.getVersion());
+					}
+				}, executor);
+	}
+
+	/**
+	 * Loads and transforms a resource.
+	 * 
+	 * @param fingerprint
+	 *            whether the fingerprint is computed while transforming.
+	 */
+	LoadedResource load(String path, String charset, boolean fingerprint)
+			throws IOException {
+		return load(delegate, path, charset, fingerprint);
+	}
+
+	/**
+	 * Loads and transforms a resource with the given loader, decoding and
+	 * transforming in one pass if the loader supports it.
+	 */
+	LoadedResource load(ResourceLoader loader, String path, String charset,
+			boolean fingerprint) throws IOException {
+		if (loader instanceof StreamResourceLoader) {
+			return ((StreamResourceLoader) loader).load(path, charset, this,
+					fingerprint);
+		}
+		if (loader instanceof ChainedResourceLoader) {
+			return ((ChainedResourceLoader) loader).load(path, charset, this,
+					fingerprint);
+		}
+		LoadedResource resource = fingerprint ? loader.loadResource(path,
+				charset) : new LoadedResource(loader.load(path, charset), path);
+		Pipeline pipeline = new Pipeline(path, resource.getContent().length(),
+				fingerprint);
+		pipeline.push(resource.getContent());
+		return pipeline.finish(resource.getLocation(), resource.getVersion());
+	}
+
+	/**
+	 * Transforms already decoded content.
+	 */
+	public String transform(String path, CharSequence content) {
+		Pipeline pipeline = new Pipeline(path, content.length(), false);
+		pipeline.push(content);
+		return pipeline.finish(path, null).getContent();
+	}
+
+	/**
+	 * Decodes and transforms the content of a channel in one pass.
+	 * 
+	 * @param location
+	 *            the resolved location of the resource.
+	 * @param version
+	 *            the version of the resource or {@code null}.
+	 * @param fingerprint
+	 *            whether the fingerprint is computed while transforming.
+	 */
+	LoadedResource transform(String path, ReadableByteChannel channel,
+			String charset, String location, String version,
+			boolean fingerprint) throws IOException {
+		ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE);
+		boolean eof = fill(channel, in);
+		in.flip();
+		CharsetDecoder decoder = (charsetSniffing ? sniff(in, charset) : Charset
+				.forName(charset)).newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		CharBuffer out = CharBuffer.allocate(CHUNK_SIZE);
+		Pipeline pipeline = new Pipeline(path,
+				channel instanceof FileChannel ? (int) Math.min(
+						((FileChannel) channel).size(), Integer.MAX_VALUE) : in
+						.remaining(), fingerprint);
+		while (true) {
+			CoderResult result = decoder.decode(in, out, eof);
+			if (result.isError()) {
+				result.throwException();
+			}
+			push(pipeline, out);
+			if (result.isUnderflow()) {
+				if (eof) {
+					break;
+				}
+				in.compact();
+				eof = fill(channel, in);
+				in.flip();
+			}
+		}
+		while (decoder.flush(out).isOverflow()) {
+			push(pipeline, out);
+		}
+		push(pipeline, out);
+		return pipeline.finish(location, version);
+	}
+
+	private static void push(Pipeline pipeline, CharBuffer out) {
+		out.flip();
+		pipeline.push(out, 0, out.remaining());
+		out.clear();
+	}
+
+	/**
+	 * Reads until the buffer is full or the end of the channel is reached.
+	 * 
+	 * @return {@code true} if the end of the channel was reached.
+	 */
+	private static boolean fill(ReadableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer) < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Detects the charset from a byte order mark or a {@code @charset} rule at
+	 * the beginning of the buffer, without consuming it.
+	 */
+	static Charset sniff(ByteBuffer in, String charset) {
+		int p = in.position();
+		int n = in.remaining();
+		if (n >= 3 && (in.get(p) & 0xff) == 0xef && (in.get(p + 1) & 0xff) == 0xbb
+				&& (in.get(p + 2) & 0xff) == 0xbf) {
+			return Charset.forName("UTF-8");
+		}
+		if (n >= 2 && (in.get(p) & 0xff) == 0xfe && (in.get(p + 1) & 0xff) == 0xff) {
+			return Charset.forName("UTF-16BE");
+		}
+		if (n >= 2 && (in.get(p) & 0xff) == 0xff && (in.get(p + 1) & 0xff) == 0xfe) {
+			return Charset.forName("UTF-16LE");
+		}
+		if (n > CHARSET_RULE.length()) {
+			int i = 0;
+			while (i < CHARSET_RULE.length()
+					&& in.get(p + i) == CHARSET_RULE.charAt(i)) {
+				i++;
+			}
+			if (i == CHARSET_RULE.length()) {
+				StringBuilder name = new StringBuilder();
+				for (; i < n && i < 64 && in.get(p + i) != '"'; i++) {
+					name.append((char) in.get(p + i));
+				}
+				try {
+					return Charset.forName(name.toString());
+				} catch (IllegalCharsetNameException e) {
+					// fall back to the requested charset
+				} catch (UnsupportedCharsetException e) {
+					// fall back to the requested charset
+				}
+			}
+		}
+		return Charset.forName(charset);
+	}
+
+	/**
+	 * Feeds chunks through the transformations of one resource. The output of
+	 * each transformation is kept in a buffer of about one chunk, only the
+	 * last one writes to the result.
+	 */
+	private final class Pipeline {
+
+		private final Transformation[] transformations;
+		private final StringBuilder[] buffers;
+		private final StringBuilder result;
+		private final ContentDigest digest;
+
+		public Pipeline(String path, int sizeHint, boolean fingerprint) {
+			transformations = new Transformation[transformers.length];
+			buffers = new StringBuilder[transformers.length];
+			for (int i = 0; i < transformers.length; i++) {
+				transformations[i] = transformers[i].start(path);
+				buffers[i] = i < transformers.length - 1 ? new StringBuilder(
+						CHUNK_SIZE) : null;
+			}
+			result = new StringBuilder(Math.max(sizeHint, 16));
+			digest = fingerprint ? new ContentDigest() : null;
+		}
+
+		public void push(CharSequence content) {
+			int length = content.length();
+			for (int i = 0; i < length; i += CHUNK_SIZE) {
+				push(content, i, Math.min(length, i + CHUNK_SIZE));
+			}
+		}
+
+		public void push(CharSequence in, int start, int end) {
+			push(0, in, start, end);
+		}
+
+		private void push(int index, CharSequence in, int start, int end) {
+			if (index == transformations.length) {
+				append(in, start, end);
+				return;
+			}
+			StringBuilder out = output(index);
+			int length = out.length();
+			transformations[index].transform(in, start, end, out);
+			if (out != result) {
+				push(index + 1, out, 0, out.length());
+			} else if (digest != null) {
+				digest.update(result, length, result.length());
+			}
+		}
+
+		private void append(CharSequence in, int start, int end) {
+			result.append(in, start, end);
+			if (digest != null) {
+				digest.update(in, start, end);
+			}
+		}
+
+		public LoadedResource finish(String location, String version) {
+			for (int i = 0; i < transformations.length; i++) {
+				StringBuilder out = output(i);
+				int length = out.length();
+				transformations[i].finish(out);
+				if (out != result) {
+					push(i + 1, out, 0, out.length());
+				} else if (digest != null) {
+					digest.update(result, length, result.length());
+				}
+			}
+			return new LoadedResource(result.toString(), location,
+					digest != null ? digest.digest() : null, version);
+		}
+
+		private StringBuilder output(int index) {
+			StringBuilder out = buffers[index];
+			if (out == null) {
+				return result;
+			}
+			out.setLength(0);
+			return out;
+		}
+	}
+
+}
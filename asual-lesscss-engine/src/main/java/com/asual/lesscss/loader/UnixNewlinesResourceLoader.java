@@ -14,29 +14,16 @@
 
 package com.asual.lesscss.loader;
 
-import java.io.IOException;
-
 /**
  * A delegating {@ResourceLoader} that removes \r characters
  * from resource content, thus converting Windows newlines to Unix ones.
  * 
  * @author Rafał Krzewski
+ * @see NewlineTransformer
  */
-public class UnixNewlinesResourceLoader implements ResourceLoader {
-
-	private final ResourceLoader delegate;
+public class UnixNewlinesResourceLoader extends TransformingResourceLoader {
 
 	public UnixNewlinesResourceLoader(ResourceLoader delegate) {
-		this.delegate = delegate;
-	}
-
-	@Override
-	public boolean exists(String path) throws IOException {
-		return delegate.exists(path);
-	}
-
-	@Override
-	public String load(String path, String charset) throws IOException {
-		return delegate.load(path, charset).replaceAll("\r", "");
+		super(delegate, new NewlineTransformer());
 	}
 }
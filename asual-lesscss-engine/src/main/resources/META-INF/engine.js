@@ -8,48 +8,109 @@ var basePath = function(path) {
 		return path.replace(/^(.*[\/\\])[^\/\\]*$/, '$1');
 	}
 	return '';
-}, compile = function(source, path, compress) {
-	var error = null, result = null, parser = new (window.less.Parser)({
+}, parseEnv = function(path, lessenv) {
+	var env = new (window.less.tree.parseEnv)({
 		optimization : lessenv.optimization,
 		paths : [ basePath(path) ],
 		filename : path,
 		dumpLineNumbers : lessenv.lineNumbers
 	});
-	window.less.Parser.importer = function(path, currentFileInfo, callback, env) {
-		if (!/^\//.test(path) && !/^\w+:/.test(path)
-				&& currentFileInfo.currentDirectory) {
-			path = currentFileInfo.currentDirectory + path;
-		}
-		if (path != null) {
-			try {
-				new (window.less.Parser)({
-					optimization : lessenv.optimization,
-					paths : [ basePath(path) ],
-					filename : path,
-					dumpLineNumbers : lessenv.lineNumbers
-				}).parse(String(lessenv.loader.load(path, lessenv.charset)),
-						function(e, root) {
-							if (e != null)
-								throw e;
-							callback(e, root, path);
-						});
-			} catch (e) {
-				error = e;
-				throw e;
+	env.lessenv = lessenv;
+	return env;
+}, fail = function(compilation, e) {
+	// Reports the details of a LESS error in a way every runtime understands
+	if (e != null && e.type != null && e.message != null) {
+		var extract = [];
+		if (e.extract != null) {
+			for (var i = 0; i < e.extract.length; i++) {
+				if (typeof e.extract[i] === 'string')
+					extract.push(e.extract[i]);
 			}
 		}
-	};
-	parser.parse(source, function(e, root) {
+		compilation.error(String(e.type), String(e.message),
+				e.filename != null ? String(e.filename) : null,
+				typeof e.line === 'number' ? e.line : -1,
+				typeof e.column === 'number' ? e.column : -1,
+				extract.length > 0 ? extract.join('\n') : null);
+	}
+	return e;
+}, hasImports = function(root) {
+	// The import visitor replaces the imports of a tree in place, so only
+	// trees without imports can be shared between compilations
+	var found = false;
+	new (window.less.tree.visitor)({
+		visitImport : function(node, visitArgs) {
+			found = true;
+			visitArgs.visitDeeper = false;
+			return node;
+		},
+		visitRule : function(node, visitArgs) {
+			visitArgs.visitDeeper = false;
+			return node;
+		}
+	}).visit(root);
+	return found;
+}, compile = function(source, path, compress) {
+	var lessenv = this.lessenv, compilation = lessenv.compilation, result = null;
+	compilation.start('PARSE');
+	new (window.less.Parser)(parseEnv(path, lessenv)).parse(source, function(e,
+			root) {
+		compilation.stop('PARSE');
 		if (e != null)
-			throw e;
-		result = root.toCSS();
-		if (compress)
+			throw fail(compilation, e);
+		compilation.start('TO_CSS');
+		try {
+			result = root.toCSS();
+		} catch (e) {
+			throw fail(compilation, e);
+		}
+		compilation.stop('TO_CSS');
+		if (compress) {
+			compilation.start('MINIFY');
 			result = exports.compressor.cssmin(result);
+			compilation.stop('MINIFY');
+		}
 	});
-	if (error != null)
-		throw error;
+	if (lessenv.error != null)
+		throw fail(compilation, lessenv.error);
 	if (result != null)
 		return result;
 	else
 		return '';
 };
+
+window.less.Parser.importer = function(path, currentFileInfo, callback, env) {
+	var lessenv = env.lessenv, compilation = lessenv.compilation, root = null;
+	if (!/^\//.test(path) && !/^\w+:/.test(path)
+			&& currentFileInfo.currentDirectory) {
+		path = currentFileInfo.currentDirectory + path;
+	}
+	if (path != null) {
+		compilation.startImport();
+		try {
+			var source = String(compilation.load(path));
+			root = compilation.getParsed(path);
+			if (root == null) {
+				// The imports of the parsed file are processed by the import
+				// visitor of the importing parser, so that parse trees only
+				// depend on their own source.
+				var importEnv = parseEnv(path, lessenv);
+				importEnv.processImports = false;
+				new (window.less.Parser)(importEnv).parse(source, function(e,
+						parsed) {
+					if (e != null)
+						throw e;
+					root = parsed;
+				});
+				if (!hasImports(root))
+					compilation.putParsed(path, root);
+			}
+			callback(null, root, path);
+		} catch (e) {
+			lessenv.error = e;
+			throw e;
+		} finally {
+			compilation.stopImport();
+		}
+	}
+};
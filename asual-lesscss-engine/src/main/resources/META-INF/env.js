@@ -1,8 +1,9 @@
+// The shell functions are only defined by Rhino
 var lessenv = {
-	print : print,
-	quit : quit,
-	readFile : readFile,
-	readUrl : readUrl
+	print : typeof print !== 'undefined' ? print : undefined,
+	quit : typeof quit !== 'undefined' ? quit : undefined,
+	readFile : typeof readFile !== 'undefined' ? readFile : undefined,
+	readUrl : typeof readUrl !== 'undefined' ? readUrl : undefined
 }, arguments = [ '' ], exports = {}, location = {
 	port : 0
 }, document = {
@@ -0,0 +1,95 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.net.URL;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Test;
+
+public class CompileStatisticsTest {
+
+	@Test
+	public void testStatistics() throws Exception {
+		CompileStatistics statistics = new CompileStatistics(1);
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		options.addCompileListener(statistics);
+		LessEngine engine = new LessEngine(options);
+		URL input = getClass().getClassLoader().getResource(
+				"META-INF/css/multiple-imports.css");
+		String css = engine.compile(input, true);
+		engine.compile("div { width: 1 + 1 }");
+		try {
+			engine.compile("div { width: @undefined }");
+		} catch (LessException e) {
+		}
+		assertEquals(2, statistics.getCompileCount());
+		assertEquals(1, statistics.getFailureCount());
+		assertTrue(statistics.getImportCount() > 0);
+		assertTrue(statistics.getInputLength() > css.length());
+		assertEquals(css.length() + "div {\n  width: 2;\n}\n".length(),
+				statistics.getOutputLength());
+		long count = 0;
+		for (long bucket : statistics.getHistogram()) {
+			count += bucket;
+		}
+		assertEquals(2, count);
+		assertEquals(statistics.getHistogramBounds().length + 1,
+				statistics.getPhaseHistogram("MINIFY").length);
+		assertEquals(1, statistics.getSlowestCompiles().size());
+		assertEquals(input.toString(), statistics.getSlowestCompiles().get(0)
+				.getLocation());
+		statistics.reset();
+		assertEquals(0, statistics.getCompileCount());
+		assertTrue(statistics.getSlowestCompiles().isEmpty());
+	}
+
+	@Test
+	public void testMBean() throws Exception {
+		CompileStatistics statistics = new CompileStatistics();
+		statistics.compiled("style.less", new LessEngine().compileWithResult(
+				"div { width: 1 + 1 }", "style.less", false));
+		ObjectName name = statistics.register("test");
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(1L, server.getAttribute(name, "CompileCount"));
+			CompositeData[] slowest = (CompositeData[]) server.getAttribute(
+					name, "SlowestCompiles");
+			assertEquals("style.less", slowest[0].get("location"));
+			long[] histogram = (long[]) server.invoke(name,
+					"getPhaseHistogram", new Object[] { "TO_CSS" },
+					new String[] { String.class.getName() });
+			long count = 0;
+			for (long bucket : histogram) {
+				count += bucket;
+			}
+			assertEquals(1, count);
+		} finally {
+			statistics.unregister();
+		}
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(
+				name));
+	}
+
+}
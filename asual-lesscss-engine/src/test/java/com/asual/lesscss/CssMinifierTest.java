@@ -0,0 +1,194 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.Random;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptableObject;
+
+public class CssMinifierTest {
+
+	private static final String[] FIXTURES = { "css/layout.css",
+			"css/multiple-imports.css", "css/library.css", "css/fonts.css",
+			"less/sample.less", "less/root.less", "less/import.less",
+			"less/img.less", "less/classpath.less",
+			"less/import-from-subdir.less", "less/subdir/import-from-root.less" };
+
+	private static final String[] SAMPLES = {
+			"",
+			"  a  {  color : red ;  }  ",
+			"/*! keep */ a { color: red } /* drop */",
+			"a > /**/ b { color: red }",
+			"/* mac hack \\*/ a { color: red } /* end */ b { color: blue }",
+			"a { content: \"/* not a comment */\"; font: 'x' }",
+			"a { content: \"unterminated; b { color: red }",
+			"a { content: 'a\\'b\\\\' } b { content: \"\\\"\" }",
+			"a { content: \"a\\\nb\" }",
+			"a { background: url( \"data:image/png;base64,AA BB\" ) }",
+			"a { background: url(data:image/png;base64,AAAA) }",
+			"a { background: url('data:x\\'y') }",
+			"a { color: rgb(51, 102, 153); border-color: RGB( 1,2,3 ) }",
+			"a { color: rgb(300,0,) }",
+			"a { color: #AABBCC; background: #aabbcd } #aabbcc { }",
+			"a { filter: chroma(color=\"#FFFFFF\"); color: #ffffff }",
+			"a { filter: progid:DXImageTransform.Microsoft.Alpha(Opacity=80) }",
+			"a { margin: 0px 0em 0% 0in; padding: 0 0 0 0; border: none }",
+			"a { background-position: 0; -webkit-transform-origin: 0 }",
+			"a { width: 0.5em; height: 00.50px; top: -0.1em }",
+			"a { BORDER-Top: None; outline: none; }",
+			"b:first-line{color:red} i:first-letter,u{color:blue}",
+			"a:hover , b :focus { color: red } :root { x: y } c d:e { }",
+			"@charset \"utf-8\"; a { b: c } @charset \"x\";",
+			"@media screen and(max-width: 100px) { a { b: c } }",
+			"a { b: c;; d: e;;; } e { } f {}",
+			"/* unterminated",
+			"/* a comment longer than its placeholder, which is replaced */"
+					+ " a { b: c } /* unterminated",
+			"a { b: \"x /* y \" } /* z */ c { d: \"/* w */\" }",
+			"a{b:c}\u2028\u00a0d { e : f }\ufeff",
+			"a { content: '$&$$$`$+$1' } /*!$'*/",
+			"a { content: '___YUICSSMIN_PRESERVED_TOKEN_0___' } /*! x */",
+			"/*a*//*b*/ c { d: e }",
+			"/*a*/*b*/ c { d: e }" };
+
+	private static final String[] FRAGMENTS = { " ", "  ", "\n", "\t", "a",
+			"b", "{", "}", ";", ":", ",", ">", "+", "(", ")", "[", "]", "!",
+			"/*", "*/", "/**/", "/*!", "\\", "\"", "'", "#", "#fff", "#AABBCC",
+			"#aabbcd", "=", "0", "0px", "0.5", "00.5em", "rgb(", "1,2,3",
+			"url(", "and(", "@charset \"x\";", "none", "border",
+			"background-position", ":first-line", "$", "$&", "$+", "\u00a0" };
+
+	private static Context cx;
+	private static ScriptableObject scope;
+	private static NativeObject compressor;
+	private static Function cssmin;
+
+	@BeforeClass
+	public static void setUp() throws Exception {
+		cx = Context.enter();
+		cx.setOptimizationLevel(-1);
+		scope = cx.initStandardObjects();
+		cx.evaluateString(scope, "var exports = {};", "setup", 1, null);
+		URL url = CssMinifierTest.class.getClassLoader().getResource(
+				"META-INF/cssmin.js");
+		Reader reader = new InputStreamReader(url.openStream(), "UTF-8");
+		try {
+			cx.evaluateReader(scope, reader, url.getFile(), 1, null);
+		} finally {
+			reader.close();
+		}
+		NativeObject exports = (NativeObject) scope.get("exports", scope);
+		compressor = (NativeObject) exports.get("compressor", exports);
+		cssmin = (Function) compressor.get("cssmin", compressor);
+	}
+
+	@AfterClass
+	public static void tearDown() {
+		Context.exit();
+	}
+
+	@Test
+	public void testFixtures() throws Exception {
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		LessEngine engine = new LessEngine(options);
+		for (String fixture : FIXTURES) {
+			URL url = getClass().getClassLoader().getResource(
+					"META-INF/" + fixture);
+			assertMinified(fixture, engine.compile(url, false));
+		}
+	}
+
+	@Test
+	public void testSamples() {
+		for (String sample : SAMPLES) {
+			assertMinified(sample, sample);
+		}
+	}
+
+	@Test
+	public void testRandomInput() {
+		Random random = new Random(2014);
+		for (int i = 0; i < 500; i++) {
+			StringBuilder sb = new StringBuilder();
+			int length = random.nextInt(40);
+			int backslashes = 0;
+			for (int j = 0; j < length; j++) {
+				String fragment = FRAGMENTS[random.nextInt(FRAGMENTS.length)];
+				// Backslashes in unterminated strings make cssmin.js
+				// backtrack exponentially
+				if (!"\\".equals(fragment) || ++backslashes < 8) {
+					sb.append(fragment);
+				}
+			}
+			// An unterminated comment after another comment makes cssmin.js
+			// loop forever
+			if (!hasUnterminatedComment(sb.toString())) {
+				assertMinified(sb.toString(), sb.toString());
+			}
+		}
+	}
+
+	@Test
+	public void testLineBreaks() {
+		String css = "a { b: c } d { e: f } g { h: i } j { k: l }";
+		assertEquals(cssmin(css, 10), CssMinifier.minify(css, 10));
+		assertEquals(cssmin(css, 0), CssMinifier.minify(css, 0));
+	}
+
+	@Test
+	public void testEngineMinifiers() throws Exception {
+		URL url = getClass().getClassLoader().getResource(
+				"META-INF/less/sample.less");
+		LessOptions options = new LessOptions();
+		options.setJsMinifier(true);
+		String expected = new LessEngine(options).compile(url, true);
+		CompileResult result = new LessEngine().compileWithResult(url, true);
+		assertEquals(expected, result.getCss());
+	}
+
+	private static boolean hasUnterminatedComment(String css) {
+		int start = 0;
+		while ((start = css.indexOf("/*", start)) >= 0) {
+			start = css.indexOf("*/", start + 2);
+			if (start < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void assertMinified(String message, String css) {
+		assertEquals(message, cssmin(css, -1), CssMinifier.minify(css));
+	}
+
+	private static String cssmin(String css, int linebreakpos) {
+		Object[] args = linebreakpos < 0 ? new Object[] { css }
+				: new Object[] { css, linebreakpos };
+		return Context.toString(cssmin.call(cx, scope, compressor, args));
+	}
+
+}
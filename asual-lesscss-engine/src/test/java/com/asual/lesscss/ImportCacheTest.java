@@ -0,0 +1,169 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImportCacheTest {
+
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		directory = File.createTempFile("lesscss-imports", "");
+		directory.delete();
+		directory.mkdirs();
+		write("variables.less", "@color: #111;");
+		write("mixins.less", ".colored() { color: @color; }");
+		write("a.less", "@import \"variables.less\";\n"
+				+ "@import \"mixins.less\";\na { .colored; }");
+		write("b.less", "@import \"variables.less\";\n"
+				+ "@import \"mixins.less\";\nb { .colored; }");
+	}
+
+	@After
+	public void after() {
+		delete(directory);
+	}
+
+	@Test
+	public void testCachedImports() throws Exception {
+		LessEngine engine = newEngine();
+		ImportCache cache = engine.getImportCache();
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, "a.less"));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+		assertEquals("b {\n  color: #111111;\n}\n", compile(engine, "b.less"));
+		assertEquals(2, cache.getHitCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testModifiedImport() throws Exception {
+		LessEngine engine = newEngine();
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, "a.less"));
+		write("variables.less", "@color: #222;");
+		assertEquals("a {\n  color: #222222;\n}\n", compile(engine, "a.less"));
+		assertEquals(1, engine.getImportCache().getHitCount());
+	}
+
+	@Test
+	public void testInvalidateAndEvict() throws Exception {
+		LessOptions options = new LessOptions();
+		options.setImportCacheSize(1);
+		LessEngine engine = new LessEngine(options);
+		ImportCache cache = engine.getImportCache();
+		compile(engine, "a.less");
+		assertEquals(1, cache.size());
+		assertEquals(1, cache.getEvictionCount());
+		cache.invalidate(new File(directory, "mixins.less")
+				.getAbsolutePath());
+		assertEquals(0, cache.size());
+	}
+
+	/**
+	 * Engines sharing a cache only reuse the trees parsed in their own scope.
+	 */
+	@Test
+	public void testSharedCache() throws Exception {
+		LessOptions options = new LessOptions();
+		ImportCache cache = new ImportCache(100);
+		LessEngine first = new LessEngine(options,
+				LessEngine.defaultResourceLoader(options), cache);
+		LessEngine second = new LessEngine(options,
+				LessEngine.defaultResourceLoader(options), cache);
+		compile(first, "a.less");
+		assertEquals("a {\n  color: #111111;\n}\n", compile(second, "a.less"));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(4, cache.size());
+		assertEquals("b {\n  color: #111111;\n}\n", compile(first, "b.less"));
+		assertEquals(2, cache.getHitCount());
+		first.invalidateImports();
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		LessEngine engine = new LessEngine();
+		assertEquals(null, engine.getImportCache());
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, "a.less"));
+	}
+
+	/**
+	 * Stylesheets with imports are not cached, as their imports are resolved
+	 * with the variables of the importing stylesheet.
+	 */
+	@Test
+	public void testInterpolatedNestedImports() throws Exception {
+		new File(directory, "red").mkdir();
+		new File(directory, "blue").mkdir();
+		write("red/colors.less", "@c: #f00;");
+		write("blue/colors.less", "@c: #00f;");
+		write("theme.less", "@import \"@{theme}/colors.less\";");
+		write("red.less", "@theme: \"red\";\n@import \"theme.less\";\n"
+				+ "x { color: @c; }");
+		write("blue.less", "@theme: \"blue\";\n@import \"theme.less\";\n"
+				+ "x { color: @c; }");
+		LessEngine engine = newEngine();
+		assertEquals("x{color:#f00}", engine.compile(new File(directory,
+				"red.less"), true));
+		assertEquals("x{color:#00f}", engine.compile(new File(directory,
+				"blue.less"), true));
+		assertEquals("x{color:#f00}", engine.compile(new File(directory,
+				"red.less"), true));
+		assertEquals(2, engine.getImportCache().size());
+	}
+
+	private LessEngine newEngine() {
+		LessOptions options = new LessOptions();
+		options.setImportCacheSize(100);
+		return new LessEngine(options);
+	}
+
+	private String compile(LessEngine engine, String name) throws LessException {
+		return engine.compile(new File(directory, name));
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+	private void write(String name, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(
+				directory, name)), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+}
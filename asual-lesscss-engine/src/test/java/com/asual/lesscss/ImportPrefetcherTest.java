@@ -0,0 +1,186 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.asual.lesscss.loader.ResourceLoader;
+import com.asual.lesscss.loader.ResourceNotFoundException;
+
+public class ImportPrefetcherTest {
+
+	private static final String MAIN = "@import \"a\";\n"
+			+ "@import url(/styles/b.less);\n"
+			+ "@import (less) 'c.css';\n"
+			+ "@import \"plain.css\";\n"
+			+ "@import \"sub/d.less\";\n"
+			+ "div { width: @a + @b + @c + @d + @e; }";
+
+	@Test
+	public void testPrefetch() throws LessException {
+		SlowResourceLoader loader = new SlowResourceLoader();
+		LessOptions options = new LessOptions();
+		options.setImportCacheSize(0);
+		String expected = new LessEngine(options, loader).compile(MAIN,
+				"/styles/main.less");
+		assertEquals(1, loader.maxConcurrency.get());
+		loader.loads.clear();
+		options.setImportPrefetchThreads(4);
+		LessEngine engine = new LessEngine(options, loader);
+		assertEquals(expected, engine.compile(MAIN, "/styles/main.less"));
+		assertEquals("@import \"plain.css\";\ndiv {\n  width: 15;\n}\n",
+				expected);
+		assertTrue(loader.maxConcurrency.get() > 1);
+		for (String path : loader.contents.keySet()) {
+			assertEquals(path, Integer.valueOf(1), loader.loads.get(path));
+		}
+		assertNull(loader.loads.get("/styles/plain.css"));
+	}
+
+	/**
+	 * Concurrent prefetches of the same imports load each path once.
+	 */
+	@Test
+	public void testConcurrentPrefetch() throws Exception {
+		SlowResourceLoader loader = new SlowResourceLoader();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final ImportPrefetcher prefetcher = new ImportPrefetcher(loader,
+					"UTF-8", executor);
+			final CountDownLatch start = new CountDownLatch(1);
+			Thread[] threads = new Thread[4];
+			for (int i = 0; i < threads.length; i++) {
+				threads[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							start.await();
+						} catch (InterruptedException e) {
+							return;
+						}
+						prefetcher.prefetch(MAIN, "/styles/main.less");
+					}
+				});
+				threads[i].start();
+			}
+			start.countDown();
+			for (Thread thread : threads) {
+				thread.join();
+			}
+			// e.less is prefetched once d.less is loaded
+			prefetcher.get("/styles/sub/d.less");
+			for (String path : loader.contents.keySet()) {
+				assertEquals(loader.contents.get(path), prefetcher.get(path)
+						.getContent());
+				assertEquals(path, Integer.valueOf(1), loader.loads.get(path));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testCancel() throws Exception {
+		SlowResourceLoader loader = new SlowResourceLoader();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			ImportPrefetcher prefetcher = new ImportPrefetcher(loader,
+					"UTF-8", executor);
+			prefetcher.cancel();
+			prefetcher.prefetch(MAIN, "/styles/main.less");
+			assertNull(prefetcher.get("/styles/a.less"));
+			assertTrue(loader.loads.isEmpty());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testMissingImport() {
+		LessOptions options = new LessOptions();
+		options.setImportPrefetchThreads(2);
+		LessEngine engine = new LessEngine(options, new SlowResourceLoader());
+		try {
+			engine.compile("@import \"missing\";", "/styles/main.less");
+			throw new AssertionError("Expected a LessException");
+		} catch (LessException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("missing.less"));
+		}
+	}
+
+	private static class SlowResourceLoader implements ResourceLoader {
+
+		private final Map<String, String> contents = new HashMap<String, String>();
+		private final ConcurrentMap<String, Integer> loads = new ConcurrentHashMap<String, Integer>();
+		private final AtomicInteger concurrency = new AtomicInteger();
+		private final AtomicInteger maxConcurrency = new AtomicInteger();
+
+		public SlowResourceLoader() {
+			contents.put("/styles/a.less", "@a: 1;");
+			contents.put("/styles/b.less", "@b: 2;");
+			contents.put("/styles/c.css", "@c: 3;");
+			contents.put("/styles/sub/d.less", "@import \"e\"; @d: 4;");
+			contents.put("/styles/sub/e.less", "@e: 5;");
+		}
+
+		@Override
+		public boolean exists(String path) {
+			return contents.containsKey(path);
+		}
+
+		@Override
+		public String load(String path, String charset) throws IOException {
+			int current = concurrency.incrementAndGet();
+			try {
+				while (true) {
+					int max = maxConcurrency.get();
+					if (current <= max
+							|| maxConcurrency.compareAndSet(max, current)) {
+						break;
+					}
+				}
+				Integer count = loads.putIfAbsent(path, 1);
+				if (count != null) {
+					loads.put(path, count + 1);
+				}
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				concurrency.decrementAndGet();
+			}
+			String content = contents.get(path);
+			if (content == null) {
+				throw new ResourceNotFoundException(path);
+			}
+			return content;
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class LessEnginePoolTest {
+
+	@Test
+	public void testAcquireAndRelease() throws InterruptedException {
+		LessEnginePool pool = new LessEnginePool(new LessOptions(), 2);
+		LessEngine first = pool.acquire();
+		LessEngine second = pool.acquire(1, TimeUnit.SECONDS);
+		assertNotNull(second);
+		assertNotSame(first, second);
+		assertEquals(2, pool.getActiveCount());
+		assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+		pool.release(first);
+		assertSame(first, pool.acquire(1, TimeUnit.SECONDS));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReleaseForeignEngine() {
+		new LessEnginePool(new LessOptions(), 1).release(new LessEngine());
+	}
+
+	@Test
+	public void testDoubleRelease() throws InterruptedException {
+		LessEnginePool pool = new LessEnginePool(new LessOptions(), 1);
+		LessEngine engine = pool.acquire();
+		pool.release(engine);
+		try {
+			pool.release(engine);
+			throw new AssertionError("Expected an IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals(0, pool.getActiveCount());
+		}
+		assertSame(engine, pool.acquire());
+		assertNull(pool.acquire(10, TimeUnit.MILLISECONDS));
+	}
+
+	@Test
+	public void testSharedImportCache() throws InterruptedException {
+		LessOptions options = new LessOptions();
+		options.setImportCacheSize(100);
+		LessEnginePool pool = new LessEnginePool(options, 2);
+		assertNotNull(pool.getImportCache());
+		assertSame(pool.getImportCache(), pool.acquire().getImportCache());
+		assertSame(pool.getImportCache(), pool.acquire().getImportCache());
+		assertNull(new LessEnginePool(new LessOptions(), 1).getImportCache());
+	}
+
+	@Test
+	public void testConcurrentCompiles() throws Exception {
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		final LessEnginePool pool = new LessEnginePool(options, 4);
+		final URL input = getClass().getClassLoader().getResource(
+				"META-INF/css/multiple-imports.css");
+		final String expected = pool.compile(input, false);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 32; i++) {
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						return pool.compile(input, false);
+					}
+				}));
+			}
+			for (Future<String> result : results) {
+				assertEquals(expected, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(0, pool.getActiveCount());
+	}
+
+	@Test
+	public void testCompileAll() throws Exception {
+		final Path directory = Files.createTempDirectory("lesscss-batch");
+		try {
+			List<Path> inputs = new ArrayList<Path>();
+			for (int i = 0; i < 6; i++) {
+				Path input = directory.resolve("style" + i + ".less");
+				Files.write(input, ("@w: " + i + "; div { width: @w + 1 }")
+						.getBytes("UTF-8"));
+				inputs.add(input);
+			}
+			Path broken = directory.resolve("broken.less");
+			Files.write(broken, "div { width: @undefined }".getBytes("UTF-8"));
+			inputs.add(broken);
+			BatchResult result = new LessEngine().compileAll(inputs,
+					new OutputMapper() {
+						@Override
+						public Path map(Path input) {
+							return directory.resolve("css").resolve(
+									input.getFileName().toString()
+											.replace(".less", ".css"));
+						}
+					}, 3, true);
+			assertFalse(result.isSuccessful());
+			assertEquals(6, result.getResults().size());
+			assertEquals(1, result.getFailures().size());
+			assertTrue(result.getFailures().containsKey(broken));
+			assertEquals("div{width:4}", new String(Files.readAllBytes(directory
+					.resolve("css/style3.css")), "UTF-8"));
+			assertTrue(result.getTime(CompileResult.Phase.TO_CSS) > 0);
+			assertTrue(result.getElapsedTime() > 0);
+		} finally {
+			delete(directory.toFile());
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -15,6 +15,7 @@
 package com.asual.lesscss;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 import java.io.BufferedReader;
@@ -23,7 +24,14 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -50,6 +58,112 @@ public class LessEngineTest {
 				engine.compile("div { width: 1 + 1 }"));
 	}
 
+	@Test
+	public void testCancellation() throws LessException {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		try {
+			engine.compileWithResult("div { width: 1 + 1 }", null, false, token);
+			throw new AssertionError("Expected a LessCancelledException");
+		} catch (LessCancelledException e) {
+			assertFalse(e.isTimedOut());
+		}
+		assertTimeout(engine);
+	}
+
+	@Test
+	public void testCancellationCompiled() throws LessException {
+		LessOptions options = new LessOptions();
+		options.setRhinoOptimization(9);
+		assertTimeout(new LessEngine(options));
+	}
+
+	private static void assertTimeout(LessEngine engine) throws LessException {
+		StringBuilder sb = new StringBuilder(".mixin(@a) { width: @a * 2; }\n");
+		for (int i = 0; i < 20000; i++) {
+			sb.append(".c").append(i).append(" { .mixin(").append(i)
+					.append("); }\n");
+		}
+		long time = System.nanoTime();
+		try {
+			engine.compileWithResult(sb.toString(), null, false,
+					new CancellationToken().cancelAfter(50,
+							TimeUnit.MILLISECONDS));
+			throw new AssertionError("Expected a LessCancelledException");
+		} catch (LessCancelledException e) {
+			assertTrue(e.isTimedOut());
+		}
+		assertTrue(System.nanoTime() - time < TimeUnit.SECONDS.toNanos(2));
+		assertEquals("div {\n  width: 2;\n}\n",
+				engine.compile("div { width: 1 + 1 }"));
+	}
+
+	@Test
+	public void testRecycle() throws Exception {
+		LessOptions options = new LessOptions();
+		options.setImportCacheSize(100);
+		options.setScopeRecycleCompiles(2);
+		LessEngine engine = new LessEngine(options);
+		String path = getResource("less/import.less").getPath();
+		String source = "@import url('" + path + "'); body { color: @color; }";
+		assertTrue(engine.estimateRetainedSize() > 0);
+		engine.compile(source);
+		engine.compile(source);
+		assertEquals(1, engine.getImportCache().size());
+		long time = System.nanoTime();
+		while (engine.getRecycleCount() == 0) {
+			assertEquals("body {\n  color: #f0f0f0;\n}\n",
+					engine.compile(source));
+			assertTrue(System.nanoTime() - time < TimeUnit.SECONDS.toNanos(30));
+			Thread.sleep(10);
+		}
+		// The import parsed by the previous scope is parsed again
+		assertEquals(1, engine.getScopeCompileCount());
+		assertEquals(2, engine.getImportCache().getMissCount());
+		assertTrue(engine.getLastRebuildTime() > 0);
+	}
+
+	@Test
+	public void testRecycleSize() throws Exception {
+		LessOptions options = new LessOptions();
+		options.setScopeRecycleSize(1);
+		LessEngine engine = new LessEngine(options);
+		long time = System.nanoTime();
+		while (engine.getRecycleCount() == 0) {
+			assertEquals("div {\n  width: 2;\n}\n",
+					engine.compile("div { width: 1 + 1 }"));
+			assertTrue(System.nanoTime() - time < TimeUnit.SECONDS.toNanos(30));
+		}
+	}
+
+	/**
+	 * A failed rebuild is not retried after every compilation.
+	 */
+	@Test
+	public void testRecycleFailure() throws Exception {
+		final AtomicInteger scopes = new AtomicInteger();
+		LessOptions options = new LessOptions();
+		options.setScopeRecycleCompiles(1);
+		options.setRuntime(new RhinoRuntime() {
+			@Override
+			public Scope createScope(LessOptions options, List<URL> scripts)
+					throws IOException {
+				if (scopes.incrementAndGet() > 1) {
+					throw new IOException("Unable to create the scope.");
+				}
+				return super.createScope(options, scripts);
+			}
+		});
+		LessEngine engine = new LessEngine(options);
+		for (int i = 0; i < 10; i++) {
+			assertEquals("div {\n  width: 2;\n}\n",
+					engine.compile("div { width: 1 + 1 }"));
+			Thread.sleep(20);
+		}
+		assertEquals(2, scopes.get());
+		assertEquals(0, engine.getRecycleCount());
+	}
+
 	@Test
 	public void testStringWithImport() throws LessException {
 		String path = getResource("less/import.less").getPath();
@@ -219,6 +333,110 @@ public class LessEngineTest {
 						.substring(0, 9));
 	}
 
+	@Test
+	public void testRhinoOptimization() throws LessException {
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		options.setRhinoOptimization(9);
+		LessEngine optimizedEngine = new LessEngine(options);
+		assertEquals(engine.compile(getResource("css/multiple-imports.css")),
+				optimizedEngine.compile(getResource("css/multiple-imports.css")));
+		assertEquals(engine.compile(getResource("less/sample.less"), true),
+				optimizedEngine.compile(getResource("less/sample.less"), true));
+	}
+
+	@Test
+	public void testCompilationIsolation() throws LessException {
+		try {
+			engine.compile(getResource("less/import-missing.less"));
+		} catch (LessException e) {
+			// expected
+		}
+		assertEquals("body {\n  color: #f0f0f0;\n}\n",
+				engine.compile(getResource("less/classpath.less")));
+		assertEquals("div {\n  width: 2;\n}\n",
+				engine.compile("@w: 1; div { width: @w + 1 }"));
+		assertEquals("div {\n  width: 2;\n}\n",
+				engine.compile("div { width: @w + 1 } @w: 1;"));
+	}
+
+	@Test
+	public void testLessVersions() throws LessException {
+		for (String version : new String[] { "1.4.2", "1.5.0", "1.5.1" }) {
+			LessOptions options = new LessOptions();
+			options.setCss(true);
+			options.setLess(getClass().getClassLoader().getResource(
+					"META-INF/less-" + version + ".js"));
+			assertEquals(
+					engine.compile(getResource("css/multiple-imports.css")),
+					new LessEngine(options).compile(getResource("css/multiple-imports.css")));
+		}
+	}
+
+	@Test
+	public void testCompileResult() throws LessException {
+		String path = getResource("less/import.less").getPath();
+		CompileResult result = engine.compileWithResult("@import url('"
+				+ path + "'); body { color: @color; }", null, true);
+		assertEquals("body{color:#f0f0f0}", result.getCss());
+		assertEquals(1, result.getImports().size());
+		assertTrue(result.getImports().get(0).endsWith("import.less"));
+		assertEquals(40, result.getImportHashes().values().iterator().next()
+				.length());
+		assertTrue(result.getTime(CompileResult.Phase.IMPORT) > 0);
+		assertTrue(result.getTime(CompileResult.Phase.TO_CSS) > 0);
+		assertTrue(result.getTime(CompileResult.Phase.MINIFY) > 0);
+		assertTrue(result.getTotalTime() >= result
+				.getTime(CompileResult.Phase.PARSE));
+		assertFalse(result.isCached());
+	}
+
+	@Test
+	public void testReaderAndWriter() throws LessException, IOException {
+		String path = getResource("less/import.less").getPath();
+		StringWriter writer = new StringWriter();
+		engine.compile(new StringReader("@import url('" + path
+				+ "'); body { color: @color; }"), null, writer, false);
+		assertEquals("body {\n  color: #f0f0f0;\n}\n", writer.toString());
+	}
+
+	@Test
+	public void testPath() throws LessException, IOException {
+		LessOptions options = new LessOptions();
+		options.setCharset("UTF-16");
+		Path input = Files.createTempFile("path", ".less");
+		Path output = Files.createTempFile("path", ".css");
+		try {
+			Files.write(input, "div:after { content: \"\u00e9\"; }"
+					.getBytes("UTF-16"));
+			new LessEngine(options).compile(input, output);
+			assertEquals("div:after {\n  content: \"\u00e9\";\n}\n",
+					new String(Files.readAllBytes(output), "UTF-16"));
+		} finally {
+			Files.delete(input);
+			Files.delete(output);
+		}
+	}
+
+	@Test
+	public void testResourceCache() throws LessException {
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		options.setResourceCacheSize(1024 * 1024);
+		LessEngine cachingEngine = new LessEngine(options);
+		assertEquals(engine.compile(getResource("css/multiple-imports.css")),
+				cachingEngine.compile(getResource("css/multiple-imports.css")));
+		assertEquals(engine.compile(getResource("css/multiple-imports.css")),
+				cachingEngine.compile(getResource("css/multiple-imports.css")));
+	}
+
+	@Test
+	public void testCssFileWithImports() throws LessException {
+		assertEquals(engine.compile(getResource("css/multiple-imports.css")),
+				engine.compile(new File(getResource("css/multiple-imports.css")
+						.getPath())));
+	}
+
 	private URL getResource(String path) {
 		return getClass().getClassLoader().getResource("META-INF/" + path);
 	}
@@ -0,0 +1,200 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.asual.lesscss.loader.LoadedResource;
+import com.asual.lesscss.loader.ResourceLoader;
+
+public class OutputCacheTest {
+
+	private File directory;
+	private File cacheDirectory;
+
+	@Before
+	public void before() throws IOException {
+		directory = File.createTempFile("lesscss-output", "");
+		directory.delete();
+		directory.mkdirs();
+		cacheDirectory = new File(directory, "cache");
+		write("variables.less", "@color: #111;");
+		write("main.less", "@import \"variables.less\";\na { color: @color; }");
+	}
+
+	@After
+	public void after() {
+		delete(directory);
+	}
+
+	@Test
+	public void testCachedOutput() throws Exception {
+		OutputCache cache = new OutputCache(10);
+		LessEngine engine = newEngine(cache);
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, false));
+		assertEquals("a{color:#111}", compile(engine, true));
+		assertEquals(0, cache.getHitCount());
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, false));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.size());
+		CompileResult result = engine.compileWithResult(new File(directory,
+				"main.less"), false);
+		assertTrue(result.isCached());
+		assertEquals(1, result.getImports().size());
+	}
+
+	@Test
+	public void testModifiedImport() throws Exception {
+		OutputCache cache = new OutputCache(10);
+		LessEngine engine = newEngine(cache);
+		assertEquals("a {\n  color: #111111;\n}\n", compile(engine, false));
+		write("variables.less", "@color: #222;");
+		assertEquals("a {\n  color: #222222;\n}\n", compile(engine, false));
+		assertEquals(0, cache.getHitCount());
+		assertEquals(2, cache.getMissCount());
+	}
+
+	@Test
+	public void testDiskTier() throws Exception {
+		assertEquals("a {\n  color: #111111;\n}\n",
+				compile(newEngine(new OutputCache(10, cacheDirectory)), false));
+		OutputCache cache = new OutputCache(10, cacheDirectory);
+		assertEquals("a {\n  color: #111111;\n}\n",
+				compile(newEngine(cache), false));
+		assertEquals(1, cache.getHitCount());
+		cache.invalidateAll();
+		assertEquals(0, new File(cacheDirectory, "v2").list().length);
+	}
+
+	/**
+	 * A cache file with an invalid length is ignored.
+	 */
+	@Test
+	public void testCorruptDiskTier() throws Exception {
+		compile(newEngine(new OutputCache(10, cacheDirectory)), false);
+		for (File file : new File(cacheDirectory, "v2").listFiles()) {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(
+					file));
+			try {
+				out.writeInt(0);
+				out.writeInt(Integer.MAX_VALUE);
+			} finally {
+				out.close();
+			}
+		}
+		OutputCache cache = new OutputCache(10, cacheDirectory);
+		assertEquals("a {\n  color: #111111;\n}\n",
+				compile(newEngine(cache), false));
+		assertEquals(0, cache.getHitCount());
+	}
+
+	/**
+	 * An import whose version is unchanged is not hashed again, one
+	 * whose version changed is compared by content.
+	 */
+	@Test
+	public void testVersionedImport() throws Exception {
+		VersionedResourceLoader loader = new VersionedResourceLoader();
+		OutputCache cache = new OutputCache(10);
+		LessOptions options = new LessOptions();
+		options.setOutputCache(cache);
+		LessEngine engine = new LessEngine(options, loader);
+		String source = "@import \"variables.less\";\na { color: @color; }";
+		loader.set("@color: #111;", "1");
+		assertEquals("a{color:#111}", engine.compile(source, "/main.less", true));
+		loader.set("@color: #222;", "1");
+		assertEquals("a{color:#111}", engine.compile(source, "/main.less", true));
+		assertEquals(1, cache.getHitCount());
+		loader.set("@color: #222;", "2");
+		assertEquals("a{color:#222}", engine.compile(source, "/main.less", true));
+		assertEquals(2, cache.getMissCount());
+		loader.set("@color: #222;", "3");
+		assertEquals("a{color:#222}", engine.compile(source, "/main.less", true));
+		assertEquals(2, cache.getHitCount());
+		loader.set("@color: #333;", "3");
+		assertEquals("a{color:#222}", engine.compile(source, "/main.less", true));
+		assertEquals(3, cache.getHitCount());
+	}
+
+	private LessEngine newEngine(OutputCache cache) {
+		LessOptions options = new LessOptions();
+		options.setOutputCache(cache);
+		return new LessEngine(options);
+	}
+
+	private String compile(LessEngine engine, boolean compress)
+			throws LessException {
+		return engine.compile(new File(directory, "main.less"), compress);
+	}
+
+	private void write(String name, String content) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(new File(
+				directory, name)), "UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static class VersionedResourceLoader implements ResourceLoader {
+
+		private volatile String content;
+		private volatile String version;
+
+		public void set(String content, String version) {
+			this.content = content;
+			this.version = version;
+		}
+
+		@Override
+		public boolean exists(String path) {
+			return true;
+		}
+
+		@Override
+		public String load(String path, String charset) {
+			return content;
+		}
+
+		@Override
+		public LoadedResource loadResource(String path, String charset) {
+			return new LoadedResource(content, path, null, version);
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.script.AbstractScriptEngine;
+import javax.script.Bindings;
+import javax.script.Invocable;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptEngineFactory;
+import javax.script.ScriptException;
+import javax.script.SimpleBindings;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.ScriptableObject;
+import org.mozilla.javascript.tools.shell.Global;
+
+/**
+ * A minimal JSR-223 engine over Rhino, registered for the tests as
+ * {@code "rhino-jsr223"}, so that {@link ScriptEngineRuntime} is tested on
+ * JVMs that do not ship Nashorn.
+ */
+public class RhinoScriptEngineFactory implements ScriptEngineFactory {
+
+	public static final String NAME = "rhino-jsr223";
+
+	@Override
+	public String getEngineName() {
+		return NAME;
+	}
+
+	@Override
+	public String getEngineVersion() {
+		return "1.7R4";
+	}
+
+	@Override
+	public List<String> getExtensions() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getMimeTypes() {
+		return Collections.emptyList();
+	}
+
+	@Override
+	public List<String> getNames() {
+		return Arrays.asList(NAME);
+	}
+
+	@Override
+	public String getLanguageName() {
+		return "ECMAScript";
+	}
+
+	@Override
+	public String getLanguageVersion() {
+		return "1.7";
+	}
+
+	@Override
+	public Object getParameter(String key) {
+		if (ScriptEngine.NAME.equals(key)) {
+			return NAME;
+		}
+		if (ScriptEngine.ENGINE.equals(key)) {
+			return getEngineName();
+		}
+		if (ScriptEngine.ENGINE_VERSION.equals(key)) {
+			return getEngineVersion();
+		}
+		if (ScriptEngine.LANGUAGE.equals(key)) {
+			return getLanguageName();
+		}
+		if (ScriptEngine.LANGUAGE_VERSION.equals(key)) {
+			return getLanguageVersion();
+		}
+		return null;
+	}
+
+	@Override
+	public String getMethodCallSyntax(String obj, String m, String... args) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getOutputStatement(String toDisplay) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public String getProgram(String... statements) {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public ScriptEngine getScriptEngine() {
+		return new RhinoScriptEngine(this);
+	}
+
+	/**
+	 * Evaluates scripts in one interpreted, unsealed scope. Only what
+	 * {@link ScriptEngineRuntime} uses is supported.
+	 */
+	private static class RhinoScriptEngine extends AbstractScriptEngine
+			implements Invocable {
+
+		private final ScriptEngineFactory factory;
+		private final ScriptableObject scope;
+
+		public RhinoScriptEngine(ScriptEngineFactory factory) {
+			this.factory = factory;
+			Context cx = Context.enter();
+			try {
+				Global global = new Global();
+				global.init(cx);
+				scope = (ScriptableObject) cx.initStandardObjects(global);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		@Override
+		public Object eval(Reader reader, ScriptContext context)
+				throws ScriptException {
+			Context cx = enter();
+			try {
+				Object name = get(FILENAME);
+				return cx.evaluateReader(scope, reader,
+						name != null ? name.toString() : "<eval>", 1, null);
+			} catch (IOException e) {
+				throw new ScriptException(e);
+			} catch (RhinoException e) {
+				throw scriptException(e);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		@Override
+		public Object eval(String script, ScriptContext context)
+				throws ScriptException {
+			return eval(new StringReader(script), context);
+		}
+
+		@Override
+		public Object invokeFunction(String name, Object... args)
+				throws ScriptException, NoSuchMethodException {
+			Context cx = enter();
+			try {
+				Object function = scope.get(name, scope);
+				if (!(function instanceof Function)) {
+					throw new NoSuchMethodException(name);
+				}
+				Object[] arguments = new Object[args.length];
+				for (int i = 0; i < args.length; i++) {
+					arguments[i] = Context.javaToJS(args[i], scope);
+				}
+				return Context.jsToJava(((Function) function).call(cx, scope,
+						scope, arguments), Object.class);
+			} catch (RhinoException e) {
+				throw scriptException(e);
+			} finally {
+				Context.exit();
+			}
+		}
+
+		@Override
+		public Object invokeMethod(Object thiz, String name, Object... args) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T> T getInterface(Class<T> clasz) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public <T> T getInterface(Object thiz, Class<T> clasz) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public Bindings createBindings() {
+			return new SimpleBindings();
+		}
+
+		@Override
+		public ScriptEngineFactory getFactory() {
+			return factory;
+		}
+
+		private static Context enter() {
+			Context cx = Context.enter();
+			cx.setOptimizationLevel(-1);
+			return cx;
+		}
+
+		private static ScriptException scriptException(RhinoException e) {
+			ScriptException exception = new ScriptException(e.getMessage());
+			exception.initCause(e);
+			return exception;
+		}
+	}
+
+}
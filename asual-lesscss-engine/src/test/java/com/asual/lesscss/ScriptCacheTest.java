@@ -0,0 +1,149 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Script;
+
+public class ScriptCacheTest {
+
+	private static boolean deserialized;
+
+	private File directory;
+
+	@Before
+	public void before() throws IOException {
+		directory = File.createTempFile("lesscss-scripts", "");
+		directory.delete();
+	}
+
+	@After
+	public void after() {
+		ScriptCache.clear();
+		delete(directory);
+	}
+
+	@Test
+	public void testInterpretedDiskCache() throws LessException {
+		assertDiskCache(-1);
+	}
+
+	@Test
+	public void testBytecodeDiskCache() throws LessException {
+		assertDiskCache(9);
+	}
+
+	@Test
+	public void testUnexpectedClass() throws IOException, LessException {
+		LessOptions options = new LessOptions();
+		options.setRhinoOptimization(-1);
+		options.setScriptCacheDirectory(directory);
+		new LessEngine(options);
+		for (File file : new File(directory, "v2").listFiles()) {
+			ObjectOutputStream out = new ObjectOutputStream(
+					new FileOutputStream(file));
+			try {
+				out.writeUTF("interpreted");
+				out.writeObject(new Unexpected());
+			} finally {
+				out.close();
+			}
+		}
+		ScriptCache.clear();
+		assertEquals("div{width:2}", new LessEngine(options).compile(
+				"div { width: 1 + 1 }", null, true));
+		assertFalse(deserialized);
+	}
+
+	@Test
+	public void testChangedScript() throws IOException {
+		directory.mkdirs();
+		File file = new File(directory, "script.js");
+		write(file, "1 + 1");
+		Context cx = Context.enter();
+		try {
+			cx.setOptimizationLevel(-1);
+			Script script = ScriptCache.getScript(cx, file.toURI().toURL(), null);
+			assertSame(script, ScriptCache.getScript(cx, file.toURI().toURL(), null));
+			write(file, "2 + 2");
+			file.setLastModified(file.lastModified() + 2000);
+			Script changed = ScriptCache.getScript(cx, file.toURI().toURL(), null);
+			assertNotSame(script, changed);
+			assertEquals(4, ((Number) changed.exec(cx, cx.initStandardObjects())).intValue());
+		} finally {
+			Context.exit();
+		}
+	}
+
+	private void assertDiskCache(int level) throws LessException {
+		LessOptions options = new LessOptions();
+		options.setRhinoOptimization(level);
+		options.setScriptCacheDirectory(directory);
+		String expected = new LessEngine(options)
+				.compile("div { width: 1 + 1 }", null, true);
+		assertTrue(new File(directory, "v2").list().length == 4);
+		ScriptCache.clear();
+		assertEquals(expected, new LessEngine(options).compile(
+				"div { width: 1 + 1 }", null, true));
+		assertEquals("div{width:2}", expected);
+	}
+
+	private static class Unexpected implements Serializable {
+
+		private static final long serialVersionUID = 1L;
+
+		private void readObject(ObjectInputStream in) throws IOException,
+				ClassNotFoundException {
+			deserialized = true;
+			in.defaultReadObject();
+		}
+	}
+
+	private static void write(File file, String content) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(content.getBytes("UTF-8"));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import com.asual.lesscss.loader.ResourceLoader;
+
+/**
+ * Compares a JSR-223 engine with the default runtime. Nashorn is only tested
+ * on JVMs that ship it, Rhino behind {@link RhinoScriptEngineFactory} on
+ * every JVM.
+ */
+@RunWith(Parameterized.class)
+public class ScriptEngineRuntimeTest {
+
+	private final String name;
+	private LessEngine rhino;
+	private LessEngine jsr223;
+
+	public ScriptEngineRuntimeTest(String name) {
+		this.name = name;
+	}
+
+	@Parameters
+	public static Collection<Object[]> engines() {
+		return Arrays.asList(new Object[][] {
+				{ RhinoScriptEngineFactory.NAME }, { "nashorn" } });
+	}
+
+	@Before
+	public void before() {
+		assumeTrue(ScriptEngineRuntime.isAvailable(name));
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		rhino = new LessEngine(options);
+		options = new LessOptions();
+		options.setCss(true);
+		options.setRuntime(new ScriptEngineRuntime(name));
+		jsr223 = new LessEngine(options);
+	}
+
+	@Test
+	public void testCompile() throws LessException {
+		String source = "@w: 1; .m(@p) { padding: @p; }\n"
+				+ "div { width: @w + 1; .m(2px); a { color: darken(#fff, 10%); } }";
+		assertEquals(rhino.compile(source), jsr223.compile(source));
+		assertEquals(rhino.compile(source, null, true),
+				jsr223.compile(source, null, true));
+	}
+
+	@Test
+	public void testImports() throws LessException {
+		URL input = getClass().getClassLoader().getResource(
+				"META-INF/css/multiple-imports.css");
+		assertEquals(rhino.compile(input), jsr223.compile(input));
+		assertEquals(rhino.compile(input), jsr223.compile(input));
+	}
+
+	@Test
+	public void testError() {
+		String source = "div {\n\twidth: @undefined;\n}";
+		assertEquals(message(rhino, source), message(jsr223, source));
+		assertEquals(message(rhino, "div { width: 1"),
+				message(jsr223, "div { width: 1"));
+		assertTrue(message(jsr223, "div { width: @undefined }").startsWith(
+				"Name Error: variable @undefined is undefined"));
+	}
+
+	@Test
+	public void testCancellation() throws LessException {
+		CancellationToken token = new CancellationToken();
+		token.cancel();
+		try {
+			jsr223.compileWithResult("div { width: 1 }", null, false, token);
+			throw new AssertionError("Expected a LessCancelledException");
+		} catch (LessCancelledException e) {
+			assertFalse(e.isTimedOut());
+		}
+	}
+
+	/**
+	 * The token is checked when the second import is loaded.
+	 */
+	@Test
+	public void testCancellationBetweenImports() throws LessException {
+		final CancellationToken token = new CancellationToken();
+		LessOptions options = new LessOptions();
+		options.setRuntime(new ScriptEngineRuntime(name));
+		LessEngine engine = new LessEngine(options, new ResourceLoader() {
+			@Override
+			public boolean exists(String path) {
+				return true;
+			}
+
+			@Override
+			public String load(String path, String charset) {
+				token.cancel();
+				return "@import \"next.less\"; div { width: 1 }";
+			}
+		});
+		try {
+			engine.compileWithResult("@import \"first.less\";", "/main.less",
+					false, token);
+			throw new AssertionError("Expected a LessCancelledException");
+		} catch (LessCancelledException e) {
+			assertFalse(e.isTimedOut());
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnavailable() {
+		new ScriptEngineRuntime("no-such-engine");
+	}
+
+	private static String message(LessEngine engine, String source) {
+		try {
+			engine.compile(source);
+			return "";
+		} catch (LessException e) {
+			return e.getMessage();
+		}
+	}
+
+}
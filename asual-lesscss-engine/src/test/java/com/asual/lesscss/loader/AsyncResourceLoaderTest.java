@@ -0,0 +1,206 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class AsyncResourceLoaderTest {
+
+	private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	@After
+	public void after() {
+		executor.shutdown();
+	}
+
+	@Test
+	public void testFilesystem() throws Exception {
+		File file = File.createTempFile("async", ".less");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 10000; i++) {
+				sb.append("a { content: \"é\"; }\n");
+			}
+			Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+			LoadedResource resource = new FilesystemResourceLoader().loadAsync(
+					"file:" + file.getPath(), "UTF-8", executor).get();
+			assertEquals(sb.toString(), resource.getContent());
+			assertEquals(file.getAbsolutePath(), resource.getLocation());
+			assertEquals(new LoadedResource(sb.toString(), null)
+					.getFingerprint(), resource.getFingerprint());
+			assertEquals(40, resource.getFingerprint().length());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testFilesystemMissing() throws Exception {
+		FilesystemResourceLoader loader = new FilesystemResourceLoader();
+		assertNotFound(loader.loadAsync("/no/such/file.less", "UTF-8",
+				executor));
+		assertNotFound(loader.loadAsync("http://host/file.less", "UTF-8",
+				executor));
+		assertNotFound(loader.loadAsync(
+				System.getProperty("java.io.tmpdir"), "UTF-8", executor));
+	}
+
+	@Test
+	public void testAdapter() throws Exception {
+		AsyncResourceLoader loader = new AsyncResourceLoaderAdapter(
+				new ResourceLoader() {
+					@Override
+					public boolean exists(String path) {
+						return path.equals("a.less");
+					}
+
+					@Override
+					public String load(String path, String charset)
+							throws IOException {
+						if (!exists(path)) {
+							throw new ResourceNotFoundException(path);
+						}
+						return "@a: 1;";
+					}
+				});
+		LoadedResource resource = loader.loadAsync("a.less", "UTF-8",
+				executor).get();
+		assertEquals("@a: 1;", resource.getContent());
+		assertEquals("a.less", resource.getLocation());
+		assertNotFound(loader.loadAsync("b.less", "UTF-8", executor));
+	}
+
+	/**
+	 * Synchronous loads keep the location and version of the delegate.
+	 */
+	@Test
+	public void testAdapterLoadResource() throws Exception {
+		File file = File.createTempFile("async", ".less");
+		try {
+			Files.write(file.toPath(), "@a: 1;".getBytes("UTF-8"));
+			LoadedResource resource = new AsyncResourceLoaderAdapter(
+					new FilesystemResourceLoader()).loadResource(file.getPath(),
+					"UTF-8");
+			assertEquals(file.getAbsolutePath(), resource.getLocation());
+			assertTrue(resource.getVersion().startsWith("file:"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testChain() throws Exception {
+		File file = File.createTempFile("async", ".less");
+		try {
+			Files.write(file.toPath(), "@b: 2;".getBytes("UTF-8"));
+			ChainedResourceLoader loader = new ChainedResourceLoader(
+					new FilesystemResourceLoader(), new MapResourceLoader());
+			assertEquals("@b: 2;", loader.loadAsync(file.getPath(), "UTF-8",
+					executor).get().getContent());
+			assertEquals("@a: 1;", loader.loadAsync("a.less", "UTF-8",
+					executor).get().getContent());
+			assertEquals("@a: 1;", loader.loadAsync("a.less", "UTF-8",
+					executor).get().getContent());
+			assertNotFound(loader.loadAsync("b.less", "UTF-8", executor));
+		} finally {
+			file.delete();
+		}
+	}
+
+	/**
+	 * The decorators of the default chain load asynchronously as well.
+	 */
+	@Test
+	public void testDecorators() throws Exception {
+		File file = File.createTempFile("async", ".less");
+		try {
+			Files.write(file.toPath(), "a {\r\n}\r\n".getBytes("UTF-8"));
+			CachingResourceLoader cache = new CachingResourceLoader(
+					new ChainedResourceLoader(new FilesystemResourceLoader(),
+							new MapResourceLoader()), 1024, 0);
+			AsyncResourceLoader loader = new UnixNewlinesResourceLoader(cache);
+			for (int i = 0; i < 2; i++) {
+				LoadedResource resource = loader.loadAsync(file.getPath(),
+						"UTF-8", executor).get();
+				assertEquals("a {\n}\n", resource.getContent());
+				assertEquals(new LoadedResource("a {\n}\n", null)
+						.getFingerprint(), resource.getFingerprint());
+			}
+			assertEquals(1, cache.getHitCount());
+			assertNotFound(loader.loadAsync("b.less", "UTF-8", executor));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCssFallback() throws Exception {
+		File file = File.createTempFile("async", ".css");
+		try {
+			Files.write(file.toPath(), "@import \"b.css\";".getBytes("UTF-8"));
+			String path = file.getPath().replaceFirst("\\.css$", ".less");
+			CssProcessingResourceLoader loader = new CssProcessingResourceLoader(
+					new FilesystemResourceLoader());
+			for (int i = 0; i < 2; i++) {
+				assertEquals("@import \"b.less\";", loader.loadAsync(path,
+						"UTF-8", executor).get().getContent());
+			}
+			assertNotFound(loader.loadAsync(path + ".less", "UTF-8", executor));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static class MapResourceLoader implements ResourceLoader {
+
+		@Override
+		public boolean exists(String path) {
+			return path.equals("a.less");
+		}
+
+		@Override
+		public String load(String path, String charset) throws IOException {
+			if (!exists(path)) {
+				throw new ResourceNotFoundException(path);
+			}
+			return "@a: 1;";
+		}
+	}
+
+	private static void assertNotFound(CompletableFuture<LoadedResource> future)
+			throws InterruptedException {
+		try {
+			future.get();
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(String.valueOf(e.getCause()),
+					e.getCause() instanceof ResourceNotFoundException);
+		}
+	}
+
+}
@@ -0,0 +1,234 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class CachingResourceLoaderTest {
+
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("caching", ".less");
+		write("@color: #111;");
+	}
+
+	@After
+	public void after() {
+		file.delete();
+	}
+
+	@Test
+	public void testFilesystem() throws IOException {
+		CountingResourceLoader delegate = new CountingResourceLoader(
+				new FilesystemResourceLoader());
+		CachingResourceLoader loader = new CachingResourceLoader(delegate,
+				1024, 0);
+		String path = file.getAbsolutePath();
+		assertEquals("@color: #111;", loader.load(path, "UTF-8"));
+		assertEquals("@color: #111;", loader.load(path, "UTF-8"));
+		assertEquals(1, delegate.loads);
+		assertEquals(1, loader.getHitCount());
+		assertEquals(1, loader.getRevalidationCount());
+		write("@color: #222222;");
+		assertEquals("@color: #222222;", loader.load(path, "UTF-8"));
+		assertEquals(2, delegate.loads);
+		assertEquals(2, loader.getMissCount());
+		loader.invalidate(path);
+		assertEquals(0, loader.getSize());
+	}
+
+	/**
+	 * Resources are validated at the location the delegate loaded them from.
+	 */
+	@Test
+	public void testDelegateVersion() throws IOException {
+		final FilesystemResourceLoader filesystem = new FilesystemResourceLoader();
+		final int[] loads = new int[1];
+		CachingResourceLoader loader = new CachingResourceLoader(
+				new ResourceLoader() {
+					@Override
+					public boolean exists(String path) throws IOException {
+						return true;
+					}
+
+					@Override
+					public String load(String path, String charset)
+							throws IOException {
+						return loadResource(path, charset).getContent();
+					}
+
+					@Override
+					public LoadedResource loadResource(String path,
+							String charset) throws IOException {
+						loads[0]++;
+						return filesystem.loadResource(file.getAbsolutePath(),
+								charset);
+					}
+				}, 1024, 0);
+		assertEquals("@color: #111;", loader.load("theme:a.less", "UTF-8"));
+		assertEquals("@color: #111;", loader.load("theme:a.less", "UTF-8"));
+		assertEquals(1, loads[0]);
+		write("@color: #222222;");
+		assertEquals("@color: #222222;", loader.load("theme:a.less", "UTF-8"));
+		assertEquals(2, loads[0]);
+	}
+
+	@Test
+	public void testClasspath() throws IOException {
+		CountingResourceLoader delegate = new CountingResourceLoader(
+				new ClasspathResourceLoader(getClass().getClassLoader()));
+		CachingResourceLoader loader = new CachingResourceLoader(delegate,
+				1024 * 1024, 0, getClass().getClassLoader());
+		// A resource packaged in the Rhino jar
+		String path = "classpath:org/mozilla/javascript/resources/Messages.properties";
+		String content = loader.load(path, "ISO-8859-1");
+		assertEquals(content, loader.load(path, "ISO-8859-1"));
+		assertEquals(1, delegate.loads);
+		assertEquals(1, loader.getHitCount());
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		CachingResourceLoader loader = new CachingResourceLoader(
+				new FilesystemResourceLoader(), 20, 0);
+		File other = File.createTempFile("caching", ".less");
+		try {
+			loader.load(file.getAbsolutePath(), "UTF-8");
+			loader.load(other.getAbsolutePath(), "UTF-8");
+			assertEquals(13, loader.getSize());
+			Files.write(other.toPath(), "@width: 100px;".getBytes("UTF-8"));
+			loader.load(other.getAbsolutePath(), "UTF-8");
+			assertEquals(1, loader.getEvictionCount());
+			assertEquals(14, loader.getSize());
+		} finally {
+			other.delete();
+		}
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		CountingResourceLoader delegate = new CountingResourceLoader(
+				new ResourceLoader() {
+					@Override
+					public boolean exists(String path) {
+						return true;
+					}
+
+					@Override
+					public String load(String path, String charset) {
+						return "@color: #333;";
+					}
+				});
+		CachingResourceLoader uncached = new CachingResourceLoader(delegate,
+				1024, 0);
+		uncached.load("jndi:/styles/a.less", "UTF-8");
+		uncached.load("jndi:/styles/a.less", "UTF-8");
+		assertEquals(2, delegate.loads);
+		CachingResourceLoader cached = new CachingResourceLoader(delegate,
+				1024, 50);
+		cached.load("jndi:/styles/a.less", "UTF-8");
+		cached.load("jndi:/styles/a.less", "UTF-8");
+		assertEquals(3, delegate.loads);
+		assertEquals(0, cached.getRevalidationCount());
+		Thread.sleep(100);
+		cached.load("jndi:/styles/a.less", "UTF-8");
+		assertEquals(4, delegate.loads);
+	}
+
+	@Test
+	public void testHttp() throws IOException {
+		final AtomicInteger gets = new AtomicInteger();
+		final String[] etag = { "\"1\"" };
+		HttpServer server = HttpServer.create(new InetSocketAddress(
+				"127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] content = ("@etag: " + etag[0] + ";").getBytes("UTF-8");
+				exchange.getResponseHeaders().set("ETag", etag[0]);
+				if ("HEAD".equals(exchange.getRequestMethod())) {
+					exchange.sendResponseHeaders(200, -1);
+				} else {
+					gets.incrementAndGet();
+					exchange.sendResponseHeaders(200, content.length);
+					OutputStream out = exchange.getResponseBody();
+					out.write(content);
+				}
+				exchange.close();
+			}
+		});
+		server.start();
+		try {
+			CachingResourceLoader loader = new CachingResourceLoader(
+					new HTTPResourceLoader(), 1024, 0);
+			String url = "http://127.0.0.1:" + server.getAddress().getPort()
+					+ "/a.less";
+			assertEquals("@etag: \"1\";", loader.load(url, "UTF-8"));
+			assertEquals("@etag: \"1\";", loader.load(url, "UTF-8"));
+			assertEquals(1, gets.get());
+			etag[0] = "\"2\"";
+			assertEquals("@etag: \"2\";", loader.load(url, "UTF-8"));
+			assertEquals(2, gets.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private void write(String content) throws IOException {
+		long modified = file.lastModified();
+		Files.write(file.toPath(), content.getBytes("UTF-8"));
+		// Make sure the change is visible with a coarse timestamp resolution
+		file.setLastModified(modified + 2000);
+	}
+
+	private static class CountingResourceLoader implements ResourceLoader {
+
+		private final ResourceLoader delegate;
+		private int loads;
+
+		public CountingResourceLoader(ResourceLoader delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public boolean exists(String path) throws IOException {
+			return delegate.exists(path);
+		}
+
+		@Override
+		public String load(String path, String charset) throws IOException {
+			loads++;
+			return delegate.load(path, charset);
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ChainedResourceLoaderTest {
+
+	@Test
+	public void testSingleOpen() throws IOException {
+		MapResourceLoader first = new MapResourceLoader("a.less");
+		MapResourceLoader second = new MapResourceLoader("b.less");
+		ChainedResourceLoader loader = new ChainedResourceLoader(first, second);
+		assertEquals("b.less", loader.load("b.less", "UTF-8"));
+		assertEquals(1, first.opens);
+		assertEquals(1, second.opens);
+		assertEquals("b.less", loader.load("b.less", "UTF-8"));
+		assertEquals(1, first.opens);
+		assertEquals(2, second.opens);
+	}
+
+	@Test
+	public void testResolutionInvalidated() throws IOException {
+		MapResourceLoader first = new MapResourceLoader();
+		MapResourceLoader second = new MapResourceLoader("a.less");
+		ChainedResourceLoader loader = new ChainedResourceLoader(first, second);
+		loader.load("a.less", "UTF-8");
+		second.contents.clear();
+		first.contents.put("a.less", "moved");
+		assertEquals("moved", loader.load("a.less", "UTF-8"));
+	}
+
+	@Test
+	public void testNegativeCache() throws IOException {
+		MapResourceLoader delegate = new MapResourceLoader();
+		ChainedResourceLoader loader = new ChainedResourceLoader(10, 60000,
+				delegate);
+		assertFalse(loader.exists("a.less"));
+		try {
+			loader.load("a.less", "UTF-8");
+		} catch (ResourceNotFoundException e) {
+			// expected
+		}
+		assertEquals(1, delegate.opens);
+		delegate.contents.put("a.less", "created");
+		assertFalse(loader.exists("a.less"));
+		loader.invalidate("a.less");
+		assertTrue(loader.exists("a.less"));
+		assertEquals("created", loader.load("a.less", "UTF-8"));
+	}
+
+	@Test
+	public void testLegacyLoader() throws IOException {
+		ResourceLoader legacy = new ResourceLoader() {
+			@Override
+			public boolean exists(String path) {
+				return false;
+			}
+
+			@Override
+			public String load(String path, String charset) throws IOException {
+				throw new IOException("No such file " + path);
+			}
+		};
+		ChainedResourceLoader loader = new ChainedResourceLoader(legacy,
+				new MapResourceLoader("a.less"));
+		assertEquals("a.less", loader.load("a.less", "UTF-8"));
+	}
+
+	@Test(expected = ResourceNotFoundException.class)
+	public void testJndiOutsideContainer() throws IOException {
+		new ChainedResourceLoader(new JNDIResourceLoader()).load(
+				"/missing.less", "UTF-8");
+	}
+
+	private static class MapResourceLoader extends StreamResourceLoader {
+
+		private final Map<String, String> contents = new HashMap<String, String>();
+		private int opens;
+
+		public MapResourceLoader(String... paths) {
+			for (String path : paths) {
+				contents.put(path, path);
+			}
+		}
+
+		@Override
+		protected String getSchema() {
+			return "map";
+		}
+
+		@Override
+		protected InputStream openStream(String path) throws IOException {
+			opens++;
+			String content = contents.get(path);
+			return content != null ? new ByteArrayInputStream(
+					content.getBytes("UTF-8")) : null;
+		}
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class CssProcessingResourceLoaderTest {
+
+	@Test
+	public void testRewriteImports() {
+		assertEquals("@import \"a.less\";\n@import 'b.less' screen;\n"
+				+ "@import url(c.less);\n@import url( \"d.less?v=1\" );\n"
+				+ "@IMPORT (less) \"e.less\";\n@import \"f.cssx\";",
+				CssImportRewriter.rewrite("@import \"a.css\";\n"
+						+ "@import 'b.css' screen;\n@import url(c.css);\n"
+						+ "@import url( \"d.css?v=1\" );\n"
+						+ "@IMPORT (less) \"e.css\";\n@import \"f.cssx\";"));
+	}
+
+	@Test
+	public void testKeepOtherCss() {
+		String content = "/* @import \"a.css\"; */\n"
+				+ ".css { background: url(img.css.png); }\n"
+				+ "a:after { content: \"@import 'b.css'\"; }\n"
+				+ "@import-like \"c.css\";";
+		assertSame(content, CssImportRewriter.rewrite(content));
+	}
+
+	@Test
+	public void testStrayApostrophe() {
+		assertEquals("// don't\n@import \"a.less\";",
+				CssImportRewriter.rewrite("// don't\n@import \"a.css\";"));
+	}
+
+	@Test
+	public void testFallback() throws IOException {
+		MapResourceLoader delegate = new MapResourceLoader();
+		delegate.contents.put("a.css", "@import \"b.css\";");
+		CssProcessingResourceLoader loader = new CssProcessingResourceLoader(
+				delegate);
+		assertTrue(loader.exists("a.less"));
+		assertEquals("@import \"b.less\";", loader.load("a.less", "UTF-8"));
+		assertEquals("@import \"b.less\";", loader.load("a.less", "UTF-8"));
+		assertNull(delegate.opens.get("a.less"));
+		assertEquals(2, (int) delegate.opens.get("a.css"));
+		delegate.contents.remove("a.css");
+		delegate.contents.put("a.less", "@a: 1;");
+		assertEquals("@a: 1;", loader.load("a.less", "UTF-8"));
+	}
+
+	private static class MapResourceLoader extends StreamResourceLoader {
+
+		private final Map<String, String> contents = new HashMap<String, String>();
+		private final Map<String, Integer> opens = new HashMap<String, Integer>();
+
+		@Override
+		protected String getSchema() {
+			return "map";
+		}
+
+		@Override
+		public boolean exists(String path) {
+			return contents.containsKey(path);
+		}
+
+		@Override
+		protected InputStream openStream(String path) throws IOException {
+			Integer count = opens.get(path);
+			opens.put(path, count == null ? 1 : count + 1);
+			String content = contents.get(path);
+			return content != null ? new ByteArrayInputStream(
+					content.getBytes("UTF-8")) : null;
+		}
+	}
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FilesystemResourceLoaderTest {
+
+	private final FilesystemResourceLoader loader = new FilesystemResourceLoader();
+	private File file;
+
+	@Before
+	public void before() throws IOException {
+		file = File.createTempFile("filesystem", ".less");
+	}
+
+	@After
+	public void after() {
+		file.delete();
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		write("a:after { content: \"é€\"; }", "UTF-8");
+		assertEquals("a:after { content: \"é€\"; }",
+				loader.load(file.getAbsolutePath(), "UTF-8"));
+		assertEquals("a:after { content: \"é€\"; }",
+				loader.load("file:" + file.getAbsolutePath(), "UTF-8"));
+		write("a:after { content: \"é€\"; }", "UTF-16");
+		assertEquals("a:after { content: \"é€\"; }",
+				loader.load(file.getAbsolutePath(), "UTF-16"));
+	}
+
+	@Test
+	public void testLoadResource() throws IOException {
+		write("a {\r\n  color: red;\r\n}\r\n", "UTF-8");
+		String path = file.getAbsolutePath();
+		LoadedResource resource = loader.loadResource(path, "UTF-8");
+		assertEquals(new LoadedResource(resource.getContent(), path)
+				.getFingerprint(), resource.getFingerprint());
+		assertEquals("file:" + file.lastModified() + ":" + file.length(),
+				resource.getVersion());
+		assertEquals(path, resource.getLocation());
+		LoadedResource chained = new ChainedResourceLoader(
+				new ClasspathResourceLoader(getClass().getClassLoader()),
+				loader).loadResource(path, "UTF-8");
+		assertEquals(resource.getFingerprint(), chained.getFingerprint());
+		assertEquals(resource.getVersion(), chained.getVersion());
+		LoadedResource unix = new UnixNewlinesResourceLoader(
+				new ChainedResourceLoader(loader)).loadResource(path, "UTF-8");
+		assertEquals("a {\n  color: red;\n}\n", unix.getContent());
+		assertEquals(new LoadedResource(unix.getContent(), path)
+				.getFingerprint(), unix.getFingerprint());
+		assertEquals(resource.getVersion(), unix.getVersion());
+		LoadedResource stream = new StreamResourceLoader() {
+			@Override
+			protected String getSchema() {
+				return "test";
+			}
+
+			@Override
+			protected InputStream openStream(String path) throws IOException {
+				return new FileInputStream(path);
+			}
+		}.loadResource(path, "UTF-8");
+		assertEquals(resource.getFingerprint(), stream.getFingerprint());
+	}
+
+	@Test
+	public void testLoadEmpty() throws IOException {
+		assertEquals("", loader.load(file.getAbsolutePath(), "UTF-8"));
+	}
+
+	@Test
+	public void testLoadLarge() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < 1024 * 1024; i++) {
+			sb.append(".r").append(i).append(" { content: \"é\"; }\n");
+		}
+		write(sb.toString(), "UTF-8");
+		assertEquals(sb.toString(),
+				loader.load(file.getAbsolutePath(), "UTF-8"));
+	}
+
+	@Test
+	public void testMalformedInput() throws IOException {
+		Files.write(file.toPath(), new byte[] { 'a', (byte) 0xff, 'b' });
+		assertEquals("a�b", loader.load(file.getAbsolutePath(), "UTF-8"));
+	}
+
+	@Test
+	public void testMissing() throws IOException {
+		String directory = file.getParentFile().getAbsolutePath();
+		assertFalse(loader.exists(directory));
+		assertFalse(loader.exists("classpath:" + file.getAbsolutePath()));
+		assertTrue(loader.exists(file.getAbsolutePath()));
+		for (String path : new String[] { directory,
+				file.getAbsolutePath() + ".missing",
+				"classpath:" + file.getAbsolutePath() }) {
+			try {
+				loader.load(path, "UTF-8");
+			} catch (ResourceNotFoundException e) {
+				continue;
+			}
+			throw new AssertionError("Expected a ResourceNotFoundException");
+		}
+	}
+
+	private void write(String content, String charset) throws IOException {
+		Files.write(file.toPath(), content.getBytes(charset));
+	}
+
+}
@@ -0,0 +1,267 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class HTTPResourceLoaderTest {
+
+	private HttpServer server;
+	private String base;
+	private File cacheDirectory;
+
+	private volatile String content = "@color: #111;";
+	private volatile String etag = "\"1\"";
+	private volatile String lastModified;
+	private volatile long delay;
+	private final List<Integer> codes = new ArrayList<Integer>();
+	private final Set<Integer> ports = new HashSet<Integer>();
+
+	@Before
+	public void before() throws IOException {
+		cacheDirectory = File.createTempFile("lesscss-http", "");
+		cacheDirectory.delete();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				handleRequest(exchange);
+			}
+		});
+		server.start();
+		base = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void after() {
+		server.stop(0);
+		delete(cacheDirectory);
+	}
+
+	private void handleRequest(HttpExchange exchange) throws IOException {
+		synchronized (ports) {
+			ports.add(exchange.getRemoteAddress().getPort());
+		}
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		int code;
+		byte[] body = content.getBytes("UTF-8");
+		if (exchange.getRequestURI().getPath().equals("/missing.less")) {
+			code = 404;
+			body = "Not Found".getBytes("UTF-8");
+		} else if (etag != null
+				&& etag.equals(exchange.getRequestHeaders().getFirst(
+						"If-None-Match"))) {
+			code = 304;
+		} else if (lastModified != null
+				&& lastModified.equals(exchange.getRequestHeaders().getFirst(
+						"If-Modified-Since"))) {
+			code = 304;
+		} else {
+			code = 200;
+		}
+		if (etag != null) {
+			exchange.getResponseHeaders().set("ETag", etag);
+		}
+		if (lastModified != null) {
+			exchange.getResponseHeaders().set("Last-Modified", lastModified);
+		}
+		synchronized (codes) {
+			codes.add(code);
+		}
+		if (code != 304 && !"HEAD".equals(exchange.getRequestMethod())) {
+			exchange.sendResponseHeaders(code, body.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(body);
+		} else {
+			exchange.sendResponseHeaders(code, -1);
+		}
+		exchange.close();
+	}
+
+	@Test
+	public void testLoadAsync() throws Exception {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		delay = 200;
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<CompletableFuture<LoadedResource>> futures = new ArrayList<CompletableFuture<LoadedResource>>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(loader.loadAsync(base + "/a.less", "UTF-8",
+						executor));
+			}
+			for (CompletableFuture<LoadedResource> future : futures) {
+				assertEquals("@color: #111;", future.get().getContent());
+				assertEquals(base + "/a.less", future.get().getLocation());
+			}
+			assertEquals(1, codes.size());
+			assertEquals("@color: #111;",
+					loader.loadAsync(base + "/a.less", "UTF-8", executor)
+							.get().getContent());
+			assertEquals(2, codes.size());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testLoad() throws IOException {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		assertEquals("@color: #111;", loader.load(base + "/a.less", "UTF-8"));
+		assertTrue(loader.exists(base + "/a.less"));
+		assertFalse(loader.exists(base + "/missing.less"));
+		assertFalse(loader.exists("/a.less"));
+		LoadedResource resource = loader.loadResource(base + "/a.less",
+				"UTF-8");
+		assertEquals("etag:\"1\"", resource.getVersion());
+		assertEquals(base + "/a.less", resource.getLocation());
+		assertEquals(new LoadedResource("@color: #111;", null)
+				.getFingerprint(), resource.getFingerprint());
+		try {
+			loader.load(base + "/missing.less", "UTF-8");
+			throw new AssertionError("Expected a ResourceNotFoundException");
+		} catch (ResourceNotFoundException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testKeepAlive() throws IOException {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		for (int i = 0; i < 5; i++) {
+			loader.load(base + "/a.less", "UTF-8");
+			try {
+				loader.load(base + "/missing.less", "UTF-8");
+			} catch (ResourceNotFoundException e) {
+				// the error response is drained as well
+			}
+		}
+		assertEquals(1, ports.size());
+	}
+
+	@Test
+	public void testConditionalGet() throws IOException {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		loader.setCacheDirectory(cacheDirectory);
+		assertEquals("@color: #111;", loader.load(base + "/a.less", "UTF-8"));
+		assertEquals("@color: #111;", loader.load(base + "/a.less", "UTF-8"));
+		content = "@color: #222;";
+		etag = "\"2\"";
+		assertEquals("@color: #222;", loader.load(base + "/a.less", "UTF-8"));
+		etag = null;
+		lastModified = "Mon, 01 Jan 2024 00:00:00 GMT";
+		loader.load(base + "/a.less", "UTF-8");
+		assertEquals("@color: #222;", loader.load(base + "/a.less", "UTF-8"));
+		assertEquals(codes(200, 304, 200, 200, 304), codes);
+	}
+
+	/**
+	 * A cached response with an invalid length is requested again.
+	 */
+	@Test
+	public void testCorruptCache() throws IOException {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		loader.setCacheDirectory(cacheDirectory);
+		loader.load(base + "/a.less", "UTF-8");
+		for (File dir : cacheDirectory.listFiles()) {
+			for (File file : dir.listFiles()) {
+				DataOutputStream out = new DataOutputStream(
+						new FileOutputStream(file));
+				try {
+					out.writeUTF(etag);
+					out.writeUTF("");
+					out.writeInt(-1);
+				} finally {
+					out.close();
+				}
+			}
+		}
+		assertEquals("@color: #111;", loader.load(base + "/a.less", "UTF-8"));
+		assertEquals(codes(200, 200), codes);
+	}
+
+	@Test
+	public void testOffline() throws IOException {
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		loader.setCacheDirectory(cacheDirectory);
+		loader.setOffline(true);
+		loader.load(base + "/a.less", "UTF-8");
+		server.stop(0);
+		assertEquals("@color: #111;", loader.load(base + "/a.less", "UTF-8"));
+		assertTrue(loader.exists(base + "/a.less"));
+		loader.setOffline(false);
+		try {
+			loader.load(base + "/a.less", "UTF-8");
+			throw new AssertionError("Expected an IOException");
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	@Test(expected = SocketTimeoutException.class)
+	public void testReadTimeout() throws IOException {
+		delay = 1000;
+		HTTPResourceLoader loader = new HTTPResourceLoader();
+		loader.setReadTimeout(100);
+		loader.load(base + "/a.less", "UTF-8");
+	}
+
+	private static List<Integer> codes(Integer... codes) {
+		List<Integer> list = new ArrayList<Integer>();
+		for (Integer code : codes) {
+			list.add(code);
+		}
+		return list;
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IndexedClasspathResourceLoaderTest {
+
+	private File directory;
+	private File jar;
+	private URLClassLoader classLoader;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("lesscss-classpath").toFile();
+		File classes = new File(directory, "classes");
+		new File(classes, "styles").mkdirs();
+		Files.write(new File(classes, "styles/site.less").toPath(),
+				"@a: 1;".getBytes("UTF-8"));
+		Files.write(new File(classes, "styles/site.txt").toPath(),
+				"text".getBytes("UTF-8"));
+		jar = new File(directory, "webjar.jar");
+		writeJar("META-INF/resources/webjars/bootstrap/less/variables.less",
+				"@b: 2;");
+		classLoader = new URLClassLoader(new URL[] { classes.toURI().toURL(),
+				jar.toURI().toURL() }, null);
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		classLoader.close();
+		delete(directory);
+	}
+
+	@Test
+	public void testIndex() throws IOException {
+		IndexedClasspathResourceLoader loader = new IndexedClasspathResourceLoader(
+				classLoader);
+		assertEquals(1, loader.getSize());
+		assertTrue(loader.exists("styles/site.less"));
+		assertTrue(loader.exists("classpath:styles/site.less"));
+		assertFalse(loader.exists("styles/missing.less"));
+		assertEquals("@a: 1;", loader.load("styles/site.less", "UTF-8"));
+		assertEquals("@b: 2;", loader.load(
+				"META-INF/resources/webjars/bootstrap/less/variables.less",
+				"UTF-8"));
+		assertEquals("text", loader.load("styles/site.txt", "UTF-8"));
+	}
+
+	@Test
+	public void testRebuild() throws Exception {
+		IndexedClasspathResourceLoader loader = new IndexedClasspathResourceLoader(
+				classLoader, 0, 0);
+		assertFalse(loader.exists("META-INF/resources/webjars/added.less"));
+		writeJar("META-INF/resources/webjars/added.less", "@c: 3;");
+		jar.setLastModified(jar.lastModified() + 2000);
+		assertTrue(loader.exists("META-INF/resources/webjars/added.less"));
+		assertEquals(1, loader.getSize());
+	}
+
+	@Test
+	public void testDirectoryChanges() throws Exception {
+		IndexedClasspathResourceLoader loader = new IndexedClasspathResourceLoader(
+				classLoader);
+		File classes = new File(directory, "classes");
+		File site = new File(classes, "styles/site.less");
+		assertEquals("@a: 1;", loader.load("styles/site.less", "UTF-8"));
+		Files.write(site.toPath(), "@a: 10;".getBytes("UTF-8"));
+		site.setLastModified(site.lastModified() + 2000);
+		assertEquals("@a: 10;", loader.load("styles/site.less", "UTF-8"));
+		assertFalse(loader.exists("styles/added.less"));
+		Files.write(new File(classes, "styles/added.less").toPath(),
+				"@c: 3;".getBytes("UTF-8"));
+		assertTrue(loader.exists("styles/added.less"));
+		assertEquals("@c: 3;", loader.load("styles/added.less", "UTF-8"));
+		site.delete();
+		assertFalse(loader.exists("styles/site.less"));
+	}
+
+	@Test
+	public void testUnindexedClassLoader() throws IOException {
+		IndexedClasspathResourceLoader loader = new IndexedClasspathResourceLoader(
+				new ClassLoader(classLoader) {
+				});
+		assertEquals(0, loader.getSize());
+		assertTrue(loader.exists("styles/site.less"));
+		assertEquals("@a: 1;", loader.load("styles/site.less", "UTF-8"));
+	}
+
+	private void writeJar(String name, String content) throws IOException {
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			out.putNextEntry(new ZipEntry(name));
+			out.write(content.getBytes("UTF-8"));
+			out.closeEntry();
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,157 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.loader;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.asual.lesscss.loader.ResourceTransformer.Transformation;
+
+public class TransformingResourceLoaderTest {
+
+	private static final String[] IMPORTS = {
+			"@import \"a.css\";\r\n@import 'b.css' screen;\n",
+			"@import url(c.css);\n@import url( \"d.css?v=1\" );\n",
+			"@IMPORT (less) \"e.css\";\n@import \"f.cssx\";",
+			"/* @import \"a.css\"; */\n.css { background: url(img.css.png); }\n",
+			"a:after { content: \"@import 'b.css'\"; }\n@import-like \"c.css\";",
+			"@media screen { a { b: c } }\n@import \"g.css\"",
+			"// don't\n@import \"a.css\";",
+			"@import\n  \"a.css\";\n@import\r\n url(b.css)\n screen;" };
+
+	@Test
+	public void testImportsInChunks() {
+		ResourceTransformer transformer = new CssImportTransformer();
+		for (String content : IMPORTS) {
+			assertEquals(content, CssImportRewriter.rewrite(content),
+					transform(transformer, content, content.length()));
+			assertEquals(content, CssImportRewriter.rewrite(content),
+					transform(transformer, content, 1));
+		}
+	}
+
+	@Test
+	public void testImportAcrossLines() {
+		String content = "@import\n  \"a.css\";";
+		assertEquals("@import\n  \"a.less\";",
+				transform(new CssImportTransformer(), content, 1));
+	}
+
+	@Test
+	public void testPipeline() {
+		TransformingResourceLoader loader = new TransformingResourceLoader(
+				null, new BomTransformer(), new NewlineTransformer(),
+				new CssImportTransformer());
+		char[] padding = new char[8190];
+		Arrays.fill(padding, ' ');
+		String content = "\uFEFF" + new String(padding)
+				+ "@import \"a.css\";\r\n@import \"b.css\";\r\n";
+		assertEquals(new String(padding)
+				+ "@import \"a.less\";\n@import \"b.less\";\n",
+				loader.transform("a.less", content));
+	}
+
+	@Test
+	public void testDecodeInChunks() throws IOException {
+		File file = File.createTempFile("transform", ".less");
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < 5000; i++) {
+				sb.append("a { content: \"é€\"; }\r\n");
+			}
+			Files.write(file.toPath(), sb.toString().getBytes("UTF-8"));
+			TransformingResourceLoader loader = new TransformingResourceLoader(
+					new ChainedResourceLoader(new FilesystemResourceLoader()),
+					new NewlineTransformer());
+			assertEquals(sb.toString().replace("\r", ""),
+					loader.load(file.getAbsolutePath(), "UTF-8"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testCharsetSniffing() throws IOException {
+		File file = File.createTempFile("transform", ".less");
+		try {
+			Files.write(file.toPath(),
+					"@charset \"ISO-8859-1\";\na { b: \"é\"; }"
+							.getBytes("ISO-8859-1"));
+			TransformingResourceLoader loader = new TransformingResourceLoader(
+					new FilesystemResourceLoader());
+			loader.setCharsetSniffing(true);
+			assertEquals("@charset \"ISO-8859-1\";\na { b: \"é\"; }",
+					loader.load(file.getAbsolutePath(), "UTF-8"));
+			Files.write(file.toPath(), "\uFEFFa { b: \"é\"; }"
+					.getBytes("UTF-16LE"));
+			loader = new TransformingResourceLoader(
+					new FilesystemResourceLoader(), new BomTransformer());
+			loader.setCharsetSniffing(true);
+			assertEquals("a { b: \"é\"; }",
+					loader.load(file.getAbsolutePath(), "UTF-8"));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testSniff() {
+		assertEquals("UTF-8", TransformingResourceLoader.sniff(
+				ByteBuffer.wrap(new byte[] { 'a' }), "UTF-8").name());
+		assertEquals("UTF-8", TransformingResourceLoader.sniff(
+				ByteBuffer.wrap("@charset \"unknown\";".getBytes()),
+				"UTF-8").name());
+		assertEquals("UTF-16BE", TransformingResourceLoader.sniff(
+				ByteBuffer.wrap(new byte[] { (byte) 0xfe, (byte) 0xff }),
+				"UTF-8").name());
+	}
+
+	@Test
+	public void testOtherDelegate() throws IOException {
+		TransformingResourceLoader loader = new TransformingResourceLoader(
+				new ResourceLoader() {
+					@Override
+					public boolean exists(String path) {
+						return true;
+					}
+
+					@Override
+					public String load(String path, String charset) {
+						return "a\r\nb";
+					}
+				}, new NewlineTransformer());
+		assertEquals("a\nb", loader.load("a.less", "UTF-8"));
+	}
+
+	private static String transform(ResourceTransformer transformer,
+			String content, int chunkSize) {
+		Transformation transformation = transformer.start("a.less");
+		StringBuilder out = new StringBuilder();
+		for (int i = 0; i < content.length(); i += chunkSize) {
+			transformation.transform(content, i,
+					Math.min(content.length(), i + chunkSize), out);
+		}
+		transformation.finish(out);
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.LessEngine;
+import com.asual.lesscss.LessException;
+import com.asual.lesscss.LessOptions;
+
+/**
+ * Measures compilations on a warm engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CompileBenchmark {
+
+	private static final String SMALL = "@w: 1; .m(@p) { padding: @p; }\n"
+			+ "div { width: @w + 1; .m(2px); a { color: darken(#fff, 10%); } }";
+
+	@Param({ "20" })
+	public int files;
+
+	@Param({ "4" })
+	public int depth;
+
+	@Param({ "50" })
+	public int rules;
+
+	private Corpus corpus;
+	private LessEngine engine;
+	private LessEngine cssEngine;
+	private URL css;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new Corpus(files, depth, rules);
+		engine = new LessEngine();
+		LessOptions options = new LessOptions();
+		options.setCss(true);
+		cssEngine = new LessEngine(options);
+		css = corpus.getDirectory().resolve("css/main.css").toUri().toURL();
+	}
+
+	@TearDown
+	public void tearDown() {
+		corpus.delete();
+	}
+
+	@Benchmark
+	public String small() throws LessException {
+		return engine.compile(SMALL);
+	}
+
+	@Benchmark
+	public String smallCompressed() throws LessException {
+		return engine.compile(SMALL, null, true);
+	}
+
+	/**
+	 * Compiles {@code main.less}, which imports the whole corpus.
+	 */
+	@Benchmark
+	public String imports() throws LessException {
+		return engine.compile(corpus.getMain().toFile());
+	}
+
+	@Benchmark
+	public String importsCompressed() throws LessException {
+		return engine.compile(corpus.getMain().toFile(), true);
+	}
+
+	/**
+	 * Compiles {@code css/main.css} in CSS mode, like the
+	 * {@code multiple-imports.css} fixture, so every import goes through the
+	 * {@code .less} to {@code .css} fallback.
+	 */
+	@Benchmark
+	public String cssImports() throws LessException {
+		return cssEngine.compile(css);
+	}
+
+}
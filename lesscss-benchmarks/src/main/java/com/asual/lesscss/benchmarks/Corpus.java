@@ -0,0 +1,132 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A generated set of stylesheets.
+ *
+ * The corpus consists of {@code files} stylesheets named
+ * {@code style<n>.less}, each defining a variable, a mixin and {@code rules}
+ * nested rules that use them. The stylesheets are arranged in chains of
+ * {@code depth} files where each file imports the next one, and
+ * {@code main.less} imports the head of every chain. The same content is also
+ * written with {@code .css} extensions to the {@code css} subdirectory, where
+ * the CSS processing loader has to fall back from {@code .less} to
+ * {@code .css} for every import.
+ */
+public class Corpus {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final Path directory;
+	private final List<Path> files = new ArrayList<Path>();
+	private final Path main;
+
+	public Corpus(int files, int depth, int rules) throws IOException {
+		if (files < 1 || depth < 1 || rules < 0) {
+			throw new IllegalArgumentException("Invalid corpus size");
+		}
+		directory = Files.createTempDirectory("lesscss-corpus");
+		Files.createDirectory(directory.resolve("css"));
+		StringBuilder main = new StringBuilder();
+		for (int i = 0; i < files; i++) {
+			if (i % depth == 0) {
+				main.append("@import \"style").append(i).append(".less\";\n");
+			}
+			boolean last = i % depth == depth - 1 || i == files - 1;
+			String content = stylesheet(i, last ? -1 : i + 1, rules);
+			this.files.add(write("style" + i + ".less", content));
+			write("css/style" + i + ".css", content.replace(".less", ".css"));
+		}
+		main.append("body { width: @w0 * 2; .m0(); }\n");
+		this.main = write("main.less", main.toString());
+		write("css/main.css", main.toString().replace(".less", ".css"));
+	}
+
+	private static String stylesheet(int index, int next, int rules) {
+		StringBuilder sb = new StringBuilder();
+		if (next >= 0) {
+			sb.append("@import \"style").append(next).append(".less\";\n");
+		}
+		sb.append("@c").append(index).append(": #")
+				.append(Integer.toHexString((int) (0x100000 + index * 2654435L
+						% 0xefffff)))
+				.append(";\n");
+		sb.append("@w").append(index).append(": ").append(index % 100 + 1)
+				.append("px;\n");
+		sb.append(".m").append(index).append("(@p: 1) {\n")
+				.append("  color: darken(@c").append(index).append(", 10%);\n")
+				.append("  padding: @p * 2px;\n}\n");
+		for (int r = 0; r < rules; r++) {
+			sb.append(".s").append(index).append("-").append(r).append(" {\n")
+					.append("  width: @w").append(index).append(" + ")
+					.append(r).append(";\n")
+					.append("  .m").append(index).append("(").append(r % 7)
+					.append(");\n")
+					.append("  a:hover { background: lighten(@c")
+					.append(index).append(", ").append(r % 50)
+					.append("%); }\n}\n");
+		}
+		return sb.toString();
+	}
+
+	private Path write(String name, String content) throws IOException {
+		Path path = directory.resolve(name);
+		Files.write(path, content.getBytes(UTF8));
+		return path;
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Returns the entry stylesheet importing the whole corpus.
+	 */
+	public Path getMain() {
+		return main;
+	}
+
+	/**
+	 * Returns the generated {@code .less} stylesheets, without
+	 * {@code main.less}.
+	 */
+	public List<Path> getFiles() {
+		return files;
+	}
+
+	public void delete() {
+		delete(directory.toFile());
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
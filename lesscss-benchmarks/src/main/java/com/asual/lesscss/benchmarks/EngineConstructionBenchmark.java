@@ -0,0 +1,106 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.LessEngine;
+import com.asual.lesscss.LessOptions;
+import com.asual.lesscss.ScriptCache;
+
+/**
+ * Measures the construction of an engine, which evaluates {@code env.js},
+ * {@code less.js}, {@code cssmin.js} and {@code engine.js} in a new scope.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class EngineConstructionBenchmark {
+
+	private LessOptions options;
+	private LessOptions diskOptions;
+	private File directory;
+
+	@Setup
+	public void setup() throws IOException {
+		options = new LessOptions();
+		directory = Files.createTempDirectory("lesscss-scripts").toFile();
+		diskOptions = new LessOptions();
+		diskOptions.setScriptCacheDirectory(directory);
+		ScriptCache.clear();
+		new LessEngine(diskOptions);
+	}
+
+	@TearDown
+	public void tearDown() {
+		delete(directory);
+	}
+
+	/**
+	 * Compiles every runtime script from source.
+	 */
+	@Benchmark
+	public LessEngine cold() {
+		ScriptCache.clear();
+		return new LessEngine(options);
+	}
+
+	/**
+	 * Loads the runtime scripts compiled by a previous process from the
+	 * script cache directory.
+	 */
+	@Benchmark
+	public LessEngine disk() {
+		ScriptCache.clear();
+		return new LessEngine(diskOptions);
+	}
+
+	/**
+	 * Reuses the runtime scripts compiled by a previous engine.
+	 */
+	@Benchmark
+	public LessEngine warm() {
+		return new LessEngine(options);
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
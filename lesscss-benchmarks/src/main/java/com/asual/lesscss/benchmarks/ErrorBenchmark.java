@@ -0,0 +1,76 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.LessEngine;
+import com.asual.lesscss.LessException;
+
+/**
+ * Measures failing compilations, including the translation of the JavaScript
+ * error into a {@link LessException}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ErrorBenchmark {
+
+	private LessEngine engine;
+
+	@Setup
+	public void setup() {
+		engine = new LessEngine();
+	}
+
+	@Benchmark
+	public LessException parseError() {
+		return compile("div { width: 1 ");
+	}
+
+	@Benchmark
+	public LessException nameError() {
+		return compile("div { width: @undefined; }");
+	}
+
+	@Benchmark
+	public LessException missingImport() {
+		return compile("@import \"missing.less\";");
+	}
+
+	private LessException compile(String input) {
+		try {
+			engine.compile(input);
+		} catch (LessException e) {
+			return e;
+		}
+		throw new IllegalStateException("Expected a LessException");
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.asual.lesscss.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Function;
+import org.mozilla.javascript.NativeObject;
+import org.mozilla.javascript.ScriptableObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.CssMinifier;
+import com.asual.lesscss.LessEngine;
+import com.asual.lesscss.LessException;
+
+/**
+ * Measures the minification of the compiled corpus by {@link CssMinifier}
+ * and by {@code cssmin.js} in Rhino.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MinifierBenchmark {
+
+	@Param({ "20" })
+	public int files;
+
+	@Param({ "4" })
+	public int depth;
+
+	@Param({ "50" })
+	public int rules;
+
+	private String css;
+	private ScriptableObject scope;
+	private NativeObject compressor;
+	private Function cssmin;
+
+	@Setup
+	public void setup() throws IOException, LessException {
+		Corpus corpus = new Corpus(files, depth, rules);
+		try {
+			css = new LessEngine().compile(corpus.getMain().toFile());
+		} finally {
+			corpus.delete();
+		}
+		Context cx = Context.enter();
+		try {
+			cx.setOptimizationLevel(9);
+			scope = cx.initStandardObjects();
+			cx.evaluateString(scope, "var exports = {};", "setup", 1, null);
+			URL url = LessEngine.class.getClassLoader().getResource(
+					"META-INF/cssmin.js");
+			Reader reader = new InputStreamReader(url.openStream(), "UTF-8");
+			try {
+				cx.evaluateReader(scope, reader, url.getFile(), 1, null);
+			} finally {
+				reader.close();
+			}
+			NativeObject exports = (NativeObject) scope.get("exports", scope);
+			compressor = (NativeObject) exports.get("compressor", exports);
+			cssmin = (Function) compressor.get("cssmin", compressor);
+		} finally {
+			Context.exit();
+		}
+	}
+
+	@Benchmark
+	public String java() {
+		return CssMinifier.minify(css);
+	}
+
+	@Benchmark
+	public String js() {
+		Context cx = Context.enter();
+		try {
+			return Context.toString(cssmin.call(cx, scope, compressor,
+					new Object[] { css }));
+		} finally {
+			Context.exit();
+		}
+	}
+
+}
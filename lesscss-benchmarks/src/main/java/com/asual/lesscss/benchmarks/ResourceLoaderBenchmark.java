@@ -0,0 +1,176 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.loader.ChainedResourceLoader;
+import com.asual.lesscss.loader.ClasspathResourceLoader;
+import com.asual.lesscss.loader.CssProcessingResourceLoader;
+import com.asual.lesscss.loader.FilesystemResourceLoader;
+import com.asual.lesscss.loader.HTTPResourceLoader;
+import com.asual.lesscss.loader.JNDIResourceLoader;
+import com.asual.lesscss.loader.ResourceLoader;
+import com.asual.lesscss.loader.UnixNewlinesResourceLoader;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Measures loading a corpus stylesheet through each {@link ResourceLoader}.
+ *
+ * Classpath loading reads the engine's own {@code less.js}, HTTP
+ * loading goes to a local server. {@link JNDIResourceLoader} is only measured
+ * as the miss it is outside of a servlet container, as part of the default
+ * chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ResourceLoaderBenchmark {
+
+	private static final String CHARSET = "UTF-8";
+	private static final String CLASSPATH = "META-INF/less-1.6.0.js";
+
+	@Param({ "200" })
+	public int rules;
+
+	private Corpus corpus;
+	private HttpServer server;
+	private String file;
+	private String url;
+	private String css;
+
+	private ResourceLoader filesystem;
+	private ResourceLoader classpath;
+	private ResourceLoader http;
+	private ResourceLoader chained;
+	private ResourceLoader unixNewlines;
+	private ResourceLoader cssProcessing;
+
+	@Setup
+	public void setup() throws IOException {
+		corpus = new Corpus(1, 1, rules);
+		final Path path = corpus.getFiles().get(0);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] content = Files.readAllBytes(path);
+				exchange.sendResponseHeaders(200, content.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(content);
+				out.close();
+			}
+		});
+		server.start();
+		file = path.toString();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/"
+				+ path.getFileName();
+		css = corpus.getDirectory().resolve("css/style0.less").toString();
+
+		filesystem = new FilesystemResourceLoader();
+		classpath = new ClasspathResourceLoader(getClass().getClassLoader());
+		http = new HTTPResourceLoader();
+		chained = new ChainedResourceLoader(new FilesystemResourceLoader(),
+				new ClasspathResourceLoader(getClass().getClassLoader()),
+				new JNDIResourceLoader(), new HTTPResourceLoader());
+		unixNewlines = new UnixNewlinesResourceLoader(chained);
+		cssProcessing = new CssProcessingResourceLoader(filesystem);
+	}
+
+	@TearDown
+	public void tearDown() {
+		server.stop(0);
+		corpus.delete();
+	}
+
+	@Benchmark
+	public String filesystem() throws IOException {
+		return filesystem.load(file, CHARSET);
+	}
+
+	@Benchmark
+	public boolean filesystemExists() throws IOException {
+		return filesystem.exists(file);
+	}
+
+	@Benchmark
+	public String classpath() throws IOException {
+		return classpath.load(CLASSPATH, CHARSET);
+	}
+
+	@Benchmark
+	public String http() throws IOException {
+		return http.load(url, CHARSET);
+	}
+
+	@Benchmark
+	public String chainedFilesystem() throws IOException {
+		return chained.load(file, CHARSET);
+	}
+
+	/**
+	 * Falls through the filesystem loader before reaching the classpath.
+	 */
+	@Benchmark
+	public String chainedClasspath() throws IOException {
+		return chained.load(CLASSPATH, CHARSET);
+	}
+
+	/**
+	 * Falls through every other loader, including the JNDI one, before
+	 * reaching HTTP.
+	 */
+	@Benchmark
+	public String chainedHttp() throws IOException {
+		return chained.load(url, CHARSET);
+	}
+
+	@Benchmark
+	public String unixNewlines() throws IOException {
+		return unixNewlines.load(file, CHARSET);
+	}
+
+	/**
+	 * Falls back from the missing {@code .less} file to the {@code .css} one.
+	 */
+	@Benchmark
+	public String cssProcessing() throws IOException {
+		return cssProcessing.load(css, CHARSET);
+	}
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *	  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.asual.lesscss.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.asual.lesscss.LessEngine;
+import com.asual.lesscss.LessException;
+import com.asual.lesscss.LessOptions;
+import com.asual.lesscss.ScriptEngineRuntime;
+
+/**
+ * Runs the same compilations on each JavaScript runtime. {@code rhino} is
+ * interpreted Rhino, {@code rhino-compiled} Rhino at optimization level 9,
+ * any other value is the name of a {@code javax.script} engine. JMH cannot
+ * skip a parameter, so only the runtimes available on every JVM run by
+ * default; add e.g. {@code -p runtime=rhino,nashorn} on a JVM that ships
+ * Nashorn (8 to 14).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RuntimeBenchmark {
+
+	private static final String SMALL = "@w: 1; .m(@p) { padding: @p; }\n"
+			+ "div { width: @w + 1; .m(2px); a { color: darken(#fff, 10%); } }";
+
+	@Param({ "rhino", "rhino-compiled" })
+	public String runtime;
+
+	@Param({ "20" })
+	public int files;
+
+	@Param({ "4" })
+	public int depth;
+
+	@Param({ "50" })
+	public int rules;
+
+	private Corpus corpus;
+	private LessEngine engine;
+
+	@Setup
+	public void setup() throws IOException {
+		LessOptions options = new LessOptions();
+		if ("rhino-compiled".equals(runtime)) {
+			options.setRhinoOptimization(9);
+		} else if (!"rhino".equals(runtime)) {
+			if (!ScriptEngineRuntime.isAvailable(runtime)) {
+				throw new IllegalStateException("The " + runtime
+						+ " script engine is not available on this JVM.");
+			}
+			options.setRuntime(new ScriptEngineRuntime(runtime));
+		}
+		corpus = new Corpus(files, depth, rules);
+		engine = new LessEngine(options);
+	}
+
+	@TearDown
+	public void tearDown() {
+		corpus.delete();
+	}
+
+	@Benchmark
+	public String small() throws LessException {
+		return engine.compile(SMALL);
+	}
+
+	@Benchmark
+	public String imports() throws LessException {
+		return engine.compile(corpus.getMain().toFile());
+	}
+
+	@Benchmark
+	public String importsCompressed() throws LessException {
+		return engine.compile(corpus.getMain().toFile(), true);
+	}
+
+}